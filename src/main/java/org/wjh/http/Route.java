@@ -0,0 +1,73 @@
+package org.wjh.http;
+
+import java.net.URI;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.lang.Nullable;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/**
+ * A route, as configured by {@code [METHOD ]pattern}, e.g. {@code GET /echo} or {@code /echo/**}: an optional method,
+ * and a path pattern.
+ */
+public final class Route {
+
+    private static final PathPatternParser PARSER = new PathPatternParser();
+
+    private final String spec;
+    @Nullable
+    private final HttpMethod method;
+    private final PathPattern pattern;
+
+    private Route(String spec, @Nullable HttpMethod method, PathPattern pattern) {
+        this.spec = spec;
+        this.method = method;
+        this.pattern = pattern;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the method is unknown, or the pattern is invalid
+     */
+    public static Route parse(String spec) {
+        String route = spec.trim();
+        int space = route.indexOf(' ');
+        HttpMethod method = space > 0 ? HttpMethod.resolve(route.substring(0, space)) : null;
+        if (space > 0 && method == null) {
+            throw new IllegalArgumentException("Unknown method of the route: " + route);
+        }
+        PathPattern pattern = PARSER.parse(space > 0 ? route.substring(space + 1).trim() : route);
+        return new Route(route, method, pattern);
+    }
+
+    /**
+     * @return the path of the URI, parsed once to be matched against several routes
+     */
+    public static PathContainer path(URI uri) {
+        return PathContainer.parsePath(uri.getRawPath());
+    }
+
+    public boolean matches(@Nullable HttpMethod method, PathContainer path) {
+        return (this.method == null || this.method == method) && pattern.matches(path);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Route && spec.equals(((Route) other).spec);
+    }
+
+    @Override
+    public int hashCode() {
+        return spec.hashCode();
+    }
+
+    /**
+     * @return the route as configured
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,123 @@
+package org.wjh.http.capture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+
+/**
+ * Read the captured exchanges of a capture file, one at a time, as written by {@link CaptureWriter}.
+ */
+public class CaptureReader implements Closeable {
+
+    private final DataInputStream in;
+    private final long startEpochMillis;
+
+    public CaptureReader(Path file) throws IOException {
+        this(open(file));
+    }
+
+    CaptureReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+
+        byte[] magic = new byte[CaptureWriter.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, CaptureWriter.MAGIC)) {
+            throw new IOException("Not a capture file");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != CaptureWriter.VERSION) {
+            throw new IOException("Unsupported capture file version: " + version);
+        }
+        this.startEpochMillis = this.in.readLong();
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, 64 * 1024) : in;
+    }
+
+    /**
+     * @return the start of the capture, in epoch millis
+     */
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * @return the next captured exchange, or {@code null} at the end of the file
+     * @throws EOFException
+     *             if the last record is truncated, e.g. the capture was not closed
+     */
+    @Nullable
+    public CapturedExchange read() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        long offsetMicros = readVarLong(first);
+        long durationMicros = readVarLong();
+        String method = readString();
+        String uri = readString();
+        String traceId = readString();
+
+        HttpHeaders headers = new HttpHeaders();
+        for (long count = readVarLong(); count > 0; count--) {
+            headers.add(readString(), readString());
+        }
+
+        byte[] body = readBytes();
+        int status = (int) readVarLong();
+        long responseLength = readVarLong();
+
+        return new CapturedExchange(offsetMicros, durationMicros, method, uri, traceId.isEmpty() ? null : traceId, headers, body,
+                status, responseLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readString() throws IOException {
+        return new String(readBytes(), UTF_8);
+    }
+
+    private byte[] readBytes() throws IOException {
+        long length = readVarLong();
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Corrupted capture file, length: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private long readVarLong() throws IOException {
+        return readVarLong(in.readUnsignedByte());
+    }
+
+    private long readVarLong(int first) throws IOException {
+        long value = first & 0x7F;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 63) {
+                throw new IOException("Corrupted capture file, varint too long");
+            }
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
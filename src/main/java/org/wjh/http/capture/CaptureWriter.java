@@ -0,0 +1,103 @@
+package org.wjh.http.capture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Write the captured exchanges in the capture file format:
+ *
+ * <pre>
+ * file     := magic("ECAP") version(1 byte) start(8 bytes, epoch millis) record*
+ * record   := offset duration method uri traceId headers body status responseLength
+ * headers  := count (name value)*      one entry per value
+ * string   := length UTF-8 bytes       an empty trace ID means none
+ * body     := length bytes
+ * </pre>
+ *
+ * where the numbers (but the start) are unsigned varints, i.e. 7 bits per byte, low bits first. A file whose name ends
+ * with {@code .gz} is gzipped.
+ */
+public class CaptureWriter implements Closeable {
+
+    static final byte[] MAGIC = { 'E', 'C', 'A', 'P' };
+    static final int VERSION = 1;
+
+    private final DataOutputStream out;
+
+    public CaptureWriter(Path file, long startEpochMillis) throws IOException {
+        this(open(file), startEpochMillis);
+    }
+
+    CaptureWriter(OutputStream out, long startEpochMillis) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeLong(startEpochMillis);
+    }
+
+    private static OutputStream open(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+
+    public void write(CapturedExchange exchange) throws IOException {
+        writeVarLong(exchange.getOffsetMicros());
+        writeVarLong(exchange.getDurationMicros());
+        writeString(exchange.getMethod());
+        writeString(exchange.getUri());
+        writeString(exchange.getTraceId() != null ? exchange.getTraceId() : "");
+
+        int count = 0;
+        for (List<String> values : exchange.getHeaders().values()) {
+            count += values.size();
+        }
+        writeVarLong(count);
+        for (Map.Entry<String, List<String>> header : exchange.getHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                writeString(header.getKey());
+                writeString(value);
+            }
+        }
+
+        writeBytes(exchange.getBody());
+        writeVarLong(exchange.getStatus());
+        writeVarLong(exchange.getResponseLength());
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeString(String value) throws IOException {
+        writeBytes(value.getBytes(UTF_8));
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+}
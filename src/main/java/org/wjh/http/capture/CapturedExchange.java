@@ -0,0 +1,86 @@
+package org.wjh.http.capture;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+
+/**
+ * One captured server exchange: the request as received, with its timing, and the outcome of the response.
+ */
+public class CapturedExchange {
+
+    private final long offsetMicros;
+    private final long durationMicros;
+    private final String method;
+    private final String uri;
+    @Nullable
+    private final String traceId;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    private final int status;
+    private final long responseLength;
+
+    /**
+     * @param offsetMicros
+     *            the arrival of the request, since the start of the capture
+     * @param durationMicros
+     *            the time from the arrival of the request to the completion of the response
+     * @param uri
+     *            the raw path and query of the request
+     * @param responseLength
+     *            the length of the captured response body
+     */
+    public CapturedExchange(long offsetMicros, long durationMicros, String method, String uri, @Nullable String traceId,
+            HttpHeaders headers, byte[] body, int status, long responseLength) {
+        this.offsetMicros = offsetMicros;
+        this.durationMicros = durationMicros;
+        this.method = method;
+        this.uri = uri;
+        this.traceId = traceId;
+        this.headers = headers;
+        this.body = body;
+        this.status = status;
+        this.responseLength = responseLength;
+    }
+
+    public long getOffsetMicros() {
+        return offsetMicros;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    @Nullable
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getResponseLength() {
+        return responseLength;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri + " -> " + status + " (+" + offsetMicros + " us, " + durationMicros + " us)";
+    }
+}
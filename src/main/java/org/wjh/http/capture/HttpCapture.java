@@ -0,0 +1,131 @@
+package org.wjh.http.capture;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Capture the server exchanges seen by the logging stage into a capture file (see {@link CaptureWriter}), to be replayed
+ * by the {@link ReplayDriver}.
+ * <p>
+ * The records are written by a single thread off the I/O threads, through a bounded queue: when the queue is full, the
+ * exchanges are dropped (and counted) rather than holding back the traffic.
+ */
+@Component
+@ConditionalOnProperty("http.capture.file")
+public class HttpCapture implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpCapture.class);
+
+    private final Path file;
+    private final long startNanos = System.nanoTime();
+    private final CaptureWriter writer;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean failed;
+
+    HttpCapture(@Value("${http.capture.file}") String file, //@formatter:off
+            @Value("${http.capture.queue-capacity:10000}") int queueCapacity) throws IOException { //@formatter:on
+        this.file = Paths.get(file);
+        this.writer = new CaptureWriter(this.file, System.currentTimeMillis());
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "http-capture");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        logger.info("Capturing the server exchanges into {}", this.file.toAbsolutePath());
+    }
+
+    /**
+     * Start the capture of an exchange, as the request is received.
+     */
+    public ExchangeCapture start(ServerHttpRequest request) {
+        return new ExchangeCapture(request);
+    }
+
+    private void write(CapturedExchange exchange) {
+        if (failed) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    writer.write(exchange);
+                    captured.incrementAndGet();
+                    if (executor.getQueue().isEmpty()) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                    logger.error("Capture stopped, failed to write into {}", file, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Capture not drained in time, the last exchanges are lost.");
+            executor.shutdownNow();
+        }
+        writer.close();
+        logger.info("Captured {} exchange(s) into {}, dropped {}", captured.get(), file, dropped.get());
+    }
+
+    /**
+     * The capture of one exchange, started as the request is received, and written once the exchange is logged.
+     */
+    public class ExchangeCapture {
+
+        private final long offsetNanos;
+        private final String method;
+        private final String uri;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        ExchangeCapture(ServerHttpRequest request) {
+            this.offsetNanos = System.nanoTime() - startNanos;
+            this.method = request.getMethodValue();
+            String query = request.getURI().getRawQuery();
+            this.uri = query == null ? request.getURI().getRawPath() : request.getURI().getRawPath() + '?' + query;
+            this.headers.putAll(request.getHeaders());
+        }
+
+        /**
+         * The bodies are written raw as they are, off the calling thread: they must not be changed afterwards, which holds
+         * for the captured bodies of an exchange (the logging redacts a copy of them).
+         *
+         * @param requestBody
+         *            the captured request body, empty if the body was not captured
+         * @param responseBody
+         *            the captured response body, empty if the body was not captured
+         */
+        public void complete(@Nullable String traceId, byte[] requestBody, int status, byte[] responseBody, long durationNanos) {
+            write(new CapturedExchange(TimeUnit.NANOSECONDS.toMicros(offsetNanos), TimeUnit.NANOSECONDS.toMicros(durationNanos), method,
+                    uri, traceId, headers, requestBody, status, responseBody.length));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.wjh.http.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClient.RequestBodySpec;
+import org.springframework.web.reactive.function.client.WebClient.RequestHeadersSpec;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Re-issue the exchanges of a capture file against a (local) instance, at the captured pace ({@code 1x}), N times
+ * faster ({@code Nx}), or as fast as the concurrency allows ({@code max}), then report the outcome: the status
+ * mismatches against the capture, the late starts, and the latency percentiles.
+ * <p>
+ * Usage: {@code ReplayDriver <capture-file> [base-url] [speed] [concurrency]}, e.g.
+ * {@code ReplayDriver capture.ecap.gz http://localhost:8080 2x 256}.
+ */
+public class ReplayDriver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplayDriver.class);
+
+    /** The headers set by the transport, or tied to the captured connection. */
+    private static final Set<String> SKIPPED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        SKIPPED_HEADERS.addAll(Arrays.asList("Host", "Content-Length", "Transfer-Encoding", "Connection", "Keep-Alive", "Upgrade",
+                "Expect"));
+    }
+
+    /** A start later than scheduled by more than this is counted as late. */
+    private static final long LATE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final WebClient client;
+    private final String baseUrl;
+    private final double speed;
+    private final int concurrency;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong mismatched = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+
+    // The pace is relative to the first exchange, as the capture starts before the traffic does
+    private long firstOffsetMicros;
+
+    /**
+     * @param speed
+     *            the speed factor over the captured pace, or {@code 0} for the max speed
+     */
+    ReplayDriver(WebClient client, String baseUrl, double speed, int concurrency) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.speed = speed;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @return {@code 1x} or {@code 1} as 1, {@code max} as 0
+     */
+    static double parseSpeed(String speed) {
+        String value = speed.trim().toLowerCase(Locale.ROOT);
+        if ("max".equals(value)) {
+            return 0;
+        }
+        double factor = Double.parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+        if (factor <= 0) {
+            throw new IllegalArgumentException("The speed must be positive: " + speed);
+        }
+        return factor;
+    }
+
+    /**
+     * @return the latencies of the replayed exchanges, in nanos, sorted
+     */
+    long[] replay(Path file) {
+        long start = System.nanoTime();
+        Flux<CapturedExchange> exchanges = Flux.using(() -> new CaptureReader(file), ReplayDriver::readAll, reader -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close {}", file, e);
+            }
+        });
+
+        long[] latencies = exchanges//@formatter:off
+                .index()
+                .flatMap(indexed -> schedule(indexed.getT2(), indexed.getT1() == 0, start), concurrency)
+                .collectList()
+                .map(list -> list.stream().mapToLong(Long::longValue).sorted().toArray())
+                .block(); //@formatter:on
+
+        logger.info("Replayed {} exchange(s) in {} ms: {} failed, {} status mismatch(es), {} late start(s)", sent.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed.get(), mismatched.get(), late.get());
+        if (latencies != null && latencies.length > 0) {
+            logger.info("Latency (ms): p50 {}, p90 {}, p99 {}, max {}", millis(latencies, 0.5), millis(latencies, 0.9),
+                    millis(latencies, 0.99), millis(latencies, 1));
+        }
+        return latencies;
+    }
+
+    private static Flux<CapturedExchange> readAll(CaptureReader reader) {
+        return Flux.generate(sink -> {
+            try {
+                CapturedExchange exchange = reader.read();
+                if (exchange != null) {
+                    sink.next(exchange);
+                } else {
+                    sink.complete();
+                }
+            } catch (IOException e) {
+                sink.error(new UncheckedIOException(e));
+            }
+        });
+    }
+
+    private Mono<Long> schedule(CapturedExchange exchange, boolean first, long start) {
+        if (first) {
+            firstOffsetMicros = exchange.getOffsetMicros();
+        }
+        if (speed == 0) {
+            return send(exchange);
+        }
+
+        long due = start + (long) (TimeUnit.MICROSECONDS.toNanos(exchange.getOffsetMicros() - firstOffsetMicros) / speed);
+        long delay = due - System.nanoTime();
+        if (delay <= 0) {
+            if (-delay > LATE_NANOS) {
+                late.incrementAndGet();
+            }
+            return send(exchange);
+        }
+        return Mono.delay(Duration.ofNanos(delay)).flatMap(tick -> send(exchange));
+    }
+
+    private Mono<Long> send(CapturedExchange exchange) {
+        HttpMethod method = HttpMethod.resolve(exchange.getMethod());
+        if (method == null) {
+            failed.incrementAndGet();
+            return Mono.empty();
+        }
+
+        // The captured URI is raw, i.e. already encoded, so it is not taken as a template
+        RequestBodySpec request = client.method(method).uri(URI.create(baseUrl + exchange.getUri())).headers(headers -> {
+            exchange.getHeaders().forEach((name, values) -> {
+                if (!SKIPPED_HEADERS.contains(name)) {
+                    headers.put(name, values);
+                }
+            });
+        });
+        RequestHeadersSpec<?> spec = exchange.getBody().length > 0 ? request.body(BodyInserters.fromValue(exchange.getBody())) : request;
+
+        return Mono.defer(() -> {
+            long sentAt = System.nanoTime();
+            sent.incrementAndGet();
+            return spec.exchange().flatMap(response -> response.bodyToFlux(DataBuffer.class)//@formatter:off
+                    .doOnNext(DataBufferUtils::release)
+                    .then(Mono.fromCallable(() -> {
+                        if (response.rawStatusCode() != exchange.getStatus()) {
+                            mismatched.incrementAndGet();
+                            logger.debug("Status {} instead of {}: {}", response.rawStatusCode(), exchange.getStatus(), exchange);
+                        }
+                        return System.nanoTime() - sentAt;
+                    }))); //@formatter:on
+        }).onErrorResume(e -> {
+            failed.incrementAndGet();
+            logger.debug("Failed to replay {}", exchange, e);
+            return Mono.empty();
+        });
+    }
+
+    private static String millis(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        long nanos = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayDriver <capture-file> [base-url] [1x|Nx|max] [concurrency]");
+            System.exit(2);
+        }
+        String baseUrl = args.length > 1 ? args[1] : "http://localhost:8080";
+        double speed = args.length > 2 ? parseSpeed(args[2]) : 1;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+
+        new ReplayDriver(WebClient.create(), baseUrl, speed, concurrency).replay(Paths.get(args[0]));
+    }
+}
@@ -1,12 +1,10 @@
 package org.wjh.http.client;
 
-import static org.wjh.http.logging.HttpLogger.EMPTY_BODY_MONO;
 import static org.wjh.http.logging.HttpLogger.MessageDirection.Inbound;
 import static org.wjh.http.logging.HttpLogger.MessageDirection.Outbound;
 import static org.wjh.tracing.TracingUtils.executeInContext;
 
 import java.net.URI;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import org.reactivestreams.Publisher;
@@ -21,10 +19,19 @@ import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
 import org.springframework.http.client.reactive.ClientHttpResponse;
 import org.springframework.http.client.reactive.ClientHttpResponseDecorator;
 import org.springframework.lang.Nullable;
-import org.springframework.util.Assert;
+import org.wjh.http.logging.ExchangeState;
 import org.wjh.http.logging.HttpLogger;
+import org.wjh.http.logging.HttpLogger.BodyMode;
+import org.wjh.http.logging.HttpLogger.MessageDirection;
+import org.wjh.http.logging.LoggingControl;
+import org.wjh.http.logging.LoggingControl.Direction;
+import org.wjh.http.logging.LoggingControl.Mode;
+import org.wjh.http.logging.Protocol;
 import org.wjh.http.logging.WiretapRecorder;
-import org.wjh.tracing.TracingUtils.TracingContext;
+import org.wjh.http.recent.RecentExchanges;
+import org.wjh.http.recent.RecentExchanges.Side;
+import org.wjh.http.slo.LatencySlo;
+import org.wjh.http.stats.TrafficStats;
 
 import brave.Span;
 import brave.Tracing;
@@ -38,12 +45,40 @@ class ClientHttpLoggingConnector implements ClientHttpConnector {
 
     private final ClientHttpConnector delegate;
     private final HttpLogger httpLogger;
+    private final LoggingControl control;
+    private final Protocol protocol;
+
+    @Nullable
+    private final RecentExchanges recentExchanges;
+    @Nullable
+    private final TrafficStats trafficStats;
+    @Nullable
+    private final LatencySlo latencySlo;
 
     private Extractor<HttpHeaders> extractor;
 
-    ClientHttpLoggingConnector(ClientHttpConnector delegate, HttpLogger httpLogger) {
+    /**
+     * @param control
+     *            the runtime switch of the logging, read once per exchange
+     * @param protocol
+     *            the protocol the delegate connects with, as logged for the requests (whose HTTP/2 stream is not known
+     *            as they are sent)
+     * @param recentExchanges
+     *            the ring buffer which the summaries of the logged exchanges are recorded into, or {@code null}
+     * @param trafficStats
+     *            the statistics which all the exchanges (logged or not) are recorded into, or {@code null}
+     * @param latencySlo
+     *            the latency SLO which all the exchanges (logged or not) are recorded against, or {@code null}
+     */
+    ClientHttpLoggingConnector(ClientHttpConnector delegate, HttpLogger httpLogger, LoggingControl control, Protocol protocol,
+            @Nullable RecentExchanges recentExchanges, @Nullable TrafficStats trafficStats, @Nullable LatencySlo latencySlo) {
         this.delegate = delegate;
         this.httpLogger = httpLogger;
+        this.control = control;
+        this.protocol = protocol;
+        this.recentExchanges = recentExchanges;
+        this.trafficStats = trafficStats;
+        this.latencySlo = latencySlo;
     }
 
     private Extractor<HttpHeaders> extractor() {
@@ -59,105 +94,228 @@ class ClientHttpLoggingConnector implements ClientHttpConnector {
 
     @Override
     public Mono<ClientHttpResponse> connect(HttpMethod method, URI uri, Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
-        if (httpLogger.shouldLog(method, uri)) {
-            TracingContext context = new TracingContext();
+        Mode mode = control.modeOf(Direction.CLIENT, method, uri);
+        if (mode != Mode.OFF && httpLogger.shouldLog(method, uri)) {
+            LoggingExchange exchange = new LoggingExchange(mode == Mode.BODIES);
 
             return delegate //@formatter:off
-                    .connect(method, uri, request -> requestCallback.apply(new LoggingClientHttpRequest(request, context)))
-                    .map(response -> new LoggingClientHttpResponse(response, context))
-                    .map(LoggingClientHttpResponse::triggerLogging); //@formatter:on
+                    .connect(method, uri, request -> requestCallback.apply(exchange.decorateRequest(request)))
+                    .map(exchange::decorateResponse); //@formatter:on
+        } else if (trafficStats != null || latencySlo != null) {
+            return new CountedExchange(method, uri).connect(requestCallback);
         } else {
             return delegate.connect(method, uri, requestCallback);
         }
     }
 
-    private void logRequest(LoggingClientHttpRequest request) {
+    private void logRequest(LoggingClientHttpRequest request, Protocol protocol, byte[] body) {
         logger.trace("Calling logRequest({}) ...", request);
 
-        HttpHeaders headers = request.getHeaders();
-        boolean shouldLogBody = httpLogger.shouldLogRequestBody(request.getMethod(), headers);
-        Mono<byte[]> bodyMono = shouldLogBody ? request.getRecorder().getContent().checkpoint("LoggingClientHttpRequest") : EMPTY_BODY_MONO;
-
-        bodyMono.subscribe(body -> executeInContext(request.getTracingContext(), //@formatter:off
-                () -> httpLogger.logRequest(Outbound, request.getMethod().name(), request.getURI(), headers, body)
-                )); //@formatter:on
+        httpLogger.logRequest(Outbound, request.getMethod().name(), request.getURI(), protocol, request.getHeaders(), body);
     }
 
-    private void logResponse(LoggingClientHttpResponse response) {
+    private void logResponse(LoggingClientHttpResponse response, byte[] body) {
         logger.trace("Calling logResponse({}) ...", response);
 
-        HttpHeaders headers = response.getHeaders();
-        int statusCode = response.getRawStatusCode();
-        boolean shouldLogBody = httpLogger.shouldLogResponseBody(statusCode, headers);
-        Mono<byte[]> bodyMono = shouldLogBody ? response.getRecorder().getContent().checkpoint("LoggingClientHttpResponse") : EMPTY_BODY_MONO;
+        httpLogger.logResponse(Inbound, protocolOf(response), response.getRawStatusCode(), null, response.getHeaders(), body);
+    }
 
-        bodyMono.subscribe(body -> executeInContext(response.getTracingContext(), //@formatter:off
-                () -> httpLogger.logResponse(Inbound, statusCode, null, headers, body)
-                )); //@formatter:on
+    /**
+     * @return the protocol of the response, as per its stream ID if HTTP/2, else the protocol of the connector
+     */
+    private Protocol protocolOf(LoggingClientHttpResponse response) {
+        return Protocol.of(response.getHeaders(), protocol);
     }
 
     /**
-     * ClientHttpRequestDecorator that intercepts and saves the request body.
+     * A not logged exchange, recorded into the statistics as its response arrives, with the body sizes as per the
+     * {@code Content-Length} headers, and against the latency SLO.
      */
-    class LoggingClientHttpRequest extends ClientHttpRequestDecorator {
+    private class CountedExchange {
 
-        private final TracingContext context;
+        private final long start = System.nanoTime();
+        private final HttpMethod method;
+        private final URI uri;
 
         @Nullable
-        private WiretapRecorder recorder;
+        private ClientHttpRequest request;
 
-        public LoggingClientHttpRequest(ClientHttpRequest delegate, TracingContext context) {
-            super(delegate);
-            this.context = context;
+        CountedExchange(HttpMethod method, URI uri) {
+            this.method = method;
+            this.uri = uri;
+        }
+
+        Mono<ClientHttpResponse> connect(Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+            return delegate //@formatter:off
+                    .connect(method, uri, request -> {
+                        this.request = request;
+                        return requestCallback.apply(request);
+                    })
+                    .doOnNext(this::record); //@formatter:on
+        }
+
+        private void record(ClientHttpResponse response) {
+            long durationNanos = System.nanoTime() - start;
+            if (trafficStats != null) {
+                long requestSize = request != null ? request.getHeaders().getContentLength() : -1;
+                trafficStats.record(Outbound, method, uri, response.getRawStatusCode(), durationNanos, requestSize,
+                        response.getHeaders().getContentLength());
+            }
+            if (latencySlo != null) {
+                latencySlo.record(Outbound, method, uri, response.getRawStatusCode(), durationNanos);
+            }
+        }
+    }
+
+    /**
+     * Per-exchange logging state, which is also the tracing context shared by the request and response decorators.
+     */
+    class LoggingExchange extends ExchangeState {
+
+        @Nullable
+        private LoggingClientHttpRequest request;
+        @Nullable
+        private LoggingClientHttpResponse response;
+
+        private final boolean bodies;
+
+        /**
+         * @param bodies
+         *            whether the bodies are logged, or the message heads only
+         */
+        LoggingExchange(boolean bodies) {
+            this.bodies = bodies;
+        }
+
+        LoggingClientHttpRequest decorateRequest(ClientHttpRequest request) {
+            this.request = new LoggingClientHttpRequest(request, this);
+            return this.request;
+        }
+
+        LoggingClientHttpResponse decorateResponse(ClientHttpResponse response) {
+            this.response = new LoggingClientHttpResponse(response, this);
+            headersWritten(RESPONSE);
+            return this.response;
+        }
+
+        /**
+         * @return the recorder tapping into the request body, or {@code null} if the body should not be recorded
+         */
+        @Nullable
+        private WiretapRecorder triggerRequestLogging(LoggingClientHttpRequest request, @Nullable Publisher<? extends DataBuffer> publisher,
+                @Nullable Publisher<? extends Publisher<? extends DataBuffer>> nestedPublisher) {
+
+            if (!headersWritten(REQUEST)) {
+                logger.debug("Suppressed to trigger request logging more than once.");
+                return null;
+            }
+
+            span = currentSpan(request.getHeaders());
+
+            boolean hasBody = publisher != null || nestedPublisher != null;
+            if (hasBody && bodies && httpLogger.shouldLogRequestBody(request.getMethod(), request.getHeaders())) {
+                return recordBody(REQUEST, request.getHeaders().getContentLength(), publisher, nestedPublisher, httpLogger);
+            }
+
+            noBody(REQUEST);
+            return null;
+        }
+
+        @Override
+        protected void log(int message, byte[] body) {
+            if (httpLogger.bodyMode() == BodyMode.TRIGGERED) {
+                return; // the exchange is logged as a whole once complete
+            }
+            if (message == REQUEST) {
+                executeInContext(this, () -> logRequest(request, protocol, body));
+            } else {
+                executeInContext(this, () -> logResponse(response, body));
+            }
         }
 
-        public TracingContext getTracingContext() {
-            return context;
+        @Override
+        protected void exchangeLogged() {
+            if (httpLogger.bodyMode() == BodyMode.TRIGGERED) {
+                executeInContext(this, this::logTriggered);
+            }
+            if (recentExchanges != null) {
+                // A digest is no payload to be redacted
+                boolean digest = httpLogger.bodyMode() == BodyMode.DIGEST;
+                recentExchanges.record(Side.CLIENT, startMillis, durationNanos(), request.getMethodValue(), request.getURI(),
+                        response.getRawStatusCode(), bodySize(REQUEST, request.getHeaders()), bodySize(RESPONSE, response.getHeaders()),
+                        traceId(), digest ? HttpHeaders.EMPTY : request.getHeaders(), capturedBody(REQUEST),
+                        digest ? HttpHeaders.EMPTY : response.getHeaders(), capturedBody(RESPONSE));
+            }
+            if (trafficStats != null) {
+                trafficStats.record(Outbound, request.getMethod(), request.getURI(), response.getRawStatusCode(), durationNanos(),
+                        bodySize(REQUEST, request.getHeaders()), bodySize(RESPONSE, response.getHeaders()));
+            }
+            if (latencySlo != null) {
+                latencySlo.record(Outbound, request.getMethod(), request.getURI(), response.getRawStatusCode(), durationNanos());
+            }
         }
 
-        public WiretapRecorder getRecorder() {
-            Assert.notNull(recorder, "No Wiretap: was the client request written?");
-            return recorder;
+        private void logTriggered() {
+            long durationNanos = durationNanos();
+            int status = response.getRawStatusCode();
+            if (httpLogger.shouldLogInFull(Outbound, request.getMethod(), request.getURI(), status, durationNanos)) {
+                logRequest(request, protocol, capturedBody(REQUEST));
+                logResponse(response, capturedBody(RESPONSE));
+            } else {
+                httpLogger.logSummary(Outbound, request.getMethodValue(), request.getURI(), protocolOf(response), status, durationNanos,
+                        bodySize(REQUEST, request.getHeaders()), bodySize(RESPONSE, response.getHeaders()));
+            }
+        }
+
+        @Override
+        protected void logChunk(int message, int sequence, byte[] chunk) {
+            MessageDirection dir = message == REQUEST ? Outbound : Inbound;
+            HttpHeaders headers = message == REQUEST ? request.getHeaders() : response.getHeaders();
+            executeInContext(this, () -> httpLogger.logBodyChunk(dir, traceId(), sequence, headers, chunk));
+        }
+
+        @Override
+        protected void logTrailer(int message, int chunks, long totalBytes, long loggedBytes) {
+            MessageDirection dir = message == REQUEST ? Outbound : Inbound;
+            executeInContext(this, () -> httpLogger.logBodyTrailer(dir, traceId(), chunks, totalBytes, loggedBytes));
+        }
+    }
+
+    /**
+     * ClientHttpRequestDecorator that intercepts and saves the request body.
+     */
+    class LoggingClientHttpRequest extends ClientHttpRequestDecorator {
+
+        private final LoggingExchange exchange;
+
+        LoggingClientHttpRequest(ClientHttpRequest delegate, LoggingExchange exchange) {
+            super(delegate);
+            this.exchange = exchange;
         }
 
         @Override
         public Mono<Void> writeWith(Publisher<? extends DataBuffer> publisher) {
             logger.trace("Calling writeWith({}) ...", publisher);
 
-            recorder = new WiretapRecorder(publisher, null);
-            triggerLogging();
-            return super.writeWith(recorder.getPublisher());
+            WiretapRecorder recorder = exchange.triggerRequestLogging(this, publisher, null);
+            return super.writeWith(recorder != null ? recorder.getPublisher() : publisher);
         }
 
         @Override
         public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> publisher) {
             logger.trace("Calling writeAndFlushWith({}) ...", publisher);
 
-            recorder = new WiretapRecorder(null, publisher);
-            triggerLogging();
-            return super.writeAndFlushWith(recorder.getNestedPublisher());
+            WiretapRecorder recorder = exchange.triggerRequestLogging(this, null, publisher);
+            return super.writeAndFlushWith(recorder != null ? recorder.getNestedPublisher() : publisher);
         }
 
         @Override
         public Mono<Void> setComplete() {
             logger.trace("Calling setComplete() ...");
 
-            recorder = new WiretapRecorder(null, null);
-            triggerLogging();
+            exchange.triggerRequestLogging(this, null, null);
             return super.setComplete();
         }
-
-        private AtomicInteger triggeredCount = new AtomicInteger(0);
-
-        private void triggerLogging() {
-            if (triggeredCount.getAndIncrement() == 0) {
-
-                context.span = currentSpan(getHeaders());
-                executeInContext(context, () -> logRequest(this));
-            } else {
-                logger.debug("Suppressed to trigger logging (Triggered Count: {}).", triggeredCount.get());
-            }
-        }
     }
 
     /**
@@ -165,34 +323,26 @@ class ClientHttpLoggingConnector implements ClientHttpConnector {
      */
     class LoggingClientHttpResponse extends ClientHttpResponseDecorator {
 
-        private final TracingContext context;
-
+        @Nullable
         private final WiretapRecorder recorder;
 
-        public LoggingClientHttpResponse(ClientHttpResponse delegate, TracingContext context) {
+        LoggingClientHttpResponse(ClientHttpResponse delegate, LoggingExchange exchange) {
             super(delegate);
-            this.context = context;
-            this.recorder = new WiretapRecorder(super.getBody(), null);
-        }
-
-        public TracingContext getTracingContext() {
-            return context;
-        }
 
-        public WiretapRecorder getRecorder() {
-            return recorder;
+            if (exchange.bodies && httpLogger.shouldLogResponseBody(delegate.getRawStatusCode(), delegate.getHeaders())) {
+                this.recorder = exchange.recordBody(ExchangeState.RESPONSE, delegate.getHeaders().getContentLength(), delegate.getBody(), null,
+                        httpLogger);
+            } else {
+                this.recorder = null;
+                exchange.noBody(ExchangeState.RESPONSE);
+            }
         }
 
         @Override
         public Flux<DataBuffer> getBody() {
             logger.trace("Calling getBody() ...");
 
-            return Flux.from(recorder.getPublisher());
-        }
-
-        public LoggingClientHttpResponse triggerLogging() {
-            executeInContext(context, () -> logResponse(this));
-            return this;
+            return recorder != null ? Flux.from(recorder.getPublisher()) : super.getBody();
         }
     }
 
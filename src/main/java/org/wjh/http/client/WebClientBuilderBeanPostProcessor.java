@@ -1,23 +1,48 @@
 package org.wjh.http.client;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanPostProcessor;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.client.reactive.ClientHttpConnector;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.wjh.http.logging.HttpLogger;
+import org.wjh.http.logging.LoggingControl;
+import org.wjh.http.logging.Protocol;
+import org.wjh.http.recent.RecentExchanges;
+import org.wjh.http.slo.LatencySlo;
+import org.wjh.http.stats.TrafficStats;
 
+/**
+ * Decorate the web clients with the logging connector, always: whether an exchange is logged is switched at runtime by
+ * the {@link LoggingControl}.
+ */
 @Component
-@ConditionalOnProperty(value = "client.http.logging", havingValue = "true", matchIfMissing = false)
 public class WebClientBuilderBeanPostProcessor implements BeanPostProcessor {
 
-    private final ClientHttpConnector connector;
-    private final HttpLogger httpLogger;
+    // Resolved only as a web client is decorated, so that the connector and the logger are not created (with their
+    // dependencies) at the registration of the post processors
+    private final ObjectProvider<ClientHttpConnector> connector;
+    private final ObjectProvider<HttpLogger> httpLogger;
+    private final ObjectProvider<LoggingControl> control;
+    private final ObjectProvider<RecentExchanges> recentExchanges;
+    private final ObjectProvider<TrafficStats> trafficStats;
+    private final ObjectProvider<LatencySlo> latencySlo;
 
-    private WebClientBuilderBeanPostProcessor(ClientHttpConnector connector, HttpLogger httpLogger) {
+    private final Protocol protocol;
+
+    private WebClientBuilderBeanPostProcessor(ObjectProvider<ClientHttpConnector> connector, ObjectProvider<HttpLogger> httpLogger,
+            ObjectProvider<LoggingControl> control, ObjectProvider<RecentExchanges> recentExchanges,
+            ObjectProvider<TrafficStats> trafficStats, ObjectProvider<LatencySlo> latencySlo,
+            @Value("${echo.http2.client:false}") boolean h2c) {
         this.connector = connector;
         this.httpLogger = httpLogger;
+        this.control = control;
+        this.recentExchanges = recentExchanges;
+        this.trafficStats = trafficStats;
+        this.latencySlo = latencySlo;
+        this.protocol = h2c ? Protocol.HTTP_2 : Protocol.HTTP_1_1;
     }
 
     @Override
@@ -34,7 +59,8 @@ public class WebClientBuilderBeanPostProcessor implements BeanPostProcessor {
 
     private WebClient.Builder decorate(WebClient.Builder webClientBuilder) {
         return webClientBuilder //@formatter:off
-                .clientConnector(new ClientHttpLoggingConnector(connector, httpLogger))
+                .clientConnector(new ClientHttpLoggingConnector(connector.getObject(), httpLogger.getObject(), control.getObject(),
+                        protocol, recentExchanges.getIfAvailable(), trafficStats.getIfAvailable(), latencySlo.getIfAvailable()))
                 ; //@formatter:on
     }
 }
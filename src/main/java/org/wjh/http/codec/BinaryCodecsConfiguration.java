@@ -0,0 +1,32 @@
+package org.wjh.http.codec;
+
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * The binary JSON codecs, for both the server and the web clients: Smile is registered by default as soon as
+ * jackson-dataformat-smile is on the classpath, while CBOR has to be registered as a custom codec.
+ */
+@Configuration(proxyBeanMethods = false)
+public class BinaryCodecsConfiguration {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    @Bean
+    CodecCustomizer cborCodecCustomizer(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper mapper = builder.factory(new CBORFactory()).build();
+        return configurer -> {
+            configurer.customCodecs().decoder(new Jackson2CborDecoder(mapper));
+            configurer.customCodecs().encoder(new Jackson2CborEncoder(mapper));
+        };
+    }
+}
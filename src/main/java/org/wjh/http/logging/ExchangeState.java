@@ -0,0 +1,331 @@
+package org.wjh.http.logging;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.wjh.http.logging.HttpLogger.EMPTY_BODY;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import org.wjh.http.logging.HttpLogger.BodyMode;
+import org.wjh.reactor.DigestCaptureSink;
+import org.wjh.reactor.StreamingCaptureSink;
+import org.wjh.reactor.StreamingCaptureSink.ChunkListener;
+import org.wjh.tracing.TracingUtils.TracingContext;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Lock-free per-exchange state machine, which coordinates the logging of the request and the response message.
+ * <p>
+ * Each message owns 4 bits of the single {@code state} field: headers written, body complete, logged, and (capture
+ * buffer) released. Whichever thread completes both the headers and the body of a message claims the logged bit, and
+ * delivers the captured body straight to {@link #log(int, byte[])}, exactly once, regardless of any race between
+ * cancel, complete and error.
+ * <p>
+ * In the {@link BodyMode#STREAMING streaming} body mode, the message head is logged as soon as the headers are written,
+ * then the body is logged in chunks as the bytes flow, followed by a trailer with the totals. In the
+ * {@link BodyMode#DIGEST digest} body mode, the body is not retained: its digest and size, computed as the bytes flow,
+ * are delivered as the captured body.
+ * <p>
+ * Once both messages are logged (and their streamed bodies ended), {@link #exchangeLogged()} is called, e.g. to record a
+ * summary of the whole exchange, timed to the completion of the response whatever the body mode; in the
+ * {@link BodyMode#TRIGGERED triggered} body mode, the messages are logged there, as a whole.
+ */
+public abstract class ExchangeState extends TracingContext {
+
+    /** Bit offset of the request message in the state. */
+    public static final int REQUEST = 0;
+    /** Bit offset of the response message in the state. */
+    public static final int RESPONSE = 4;
+
+    static final int HEADERS_WRITTEN = 1;
+    static final int BODY_COMPLETE = 1 << 1;
+    static final int LOGGED = 1 << 2;
+    static final int RELEASED = 1 << 3;
+
+    private static final int READY = HEADERS_WRITTEN | BODY_COMPLETE;
+
+    private static final AtomicIntegerFieldUpdater<ExchangeState> STATE = //@formatter:off
+            AtomicIntegerFieldUpdater.newUpdater(ExchangeState.class, "state"); //@formatter:on
+
+    private static final AtomicIntegerFieldUpdater<ExchangeState> PENDING_STEPS = //@formatter:off
+            AtomicIntegerFieldUpdater.newUpdater(ExchangeState.class, "pendingSteps"); //@formatter:on
+
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final Scheduler LOGGING_SCHEDULER = Schedulers.newSingle("http-log");
+
+    // Accessed through STATE only
+    private volatile int state;
+
+    // The messages to be logged, and the streamed bodies to be ended, before the exchange is; through PENDING_STEPS only
+    private volatile int pendingSteps = 2;
+
+    /** The start of the exchange, in epoch millis. */
+    protected final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    // Written before the response is logged, or its streamed body ended
+    private long durationNanos = -1;
+    // Written before the response head is logged
+    private boolean responseStreamed;
+
+    // Written before BODY_COMPLETE is set, read after LOGGED is claimed
+    @Nullable
+    private byte[] requestBody;
+    @Nullable
+    private byte[] responseBody;
+    // The sizes of the digested bodies, -1 if not digested
+    private long requestDigested = -1;
+    private long responseDigested = -1;
+
+    /**
+     * Tap into the body of the message, as per the body mode of the logger.
+     *
+     * @param contentLength
+     *            the length of the body, or {@code -1} if unknown, to size the capture buffer upfront
+     */
+    public final WiretapRecorder recordBody(int message, long contentLength, @Nullable Publisher<? extends DataBuffer> publisher,
+            @Nullable Publisher<? extends Publisher<? extends DataBuffer>> nestedPublisher, HttpLogger httpLogger) {
+
+        if (httpLogger.bodyMode() == BodyMode.STREAMING) {
+            // The body is logged separately, so the head is logged once the headers are written, and the exchange once
+            // the body ended
+            PENDING_STEPS.incrementAndGet(this);
+            if (message == RESPONSE) {
+                responseStreamed = true;
+            }
+            transition(message, BODY_COMPLETE);
+            return new WiretapRecorder(publisher, nestedPublisher, this, message, new StreamingCaptureSink(httpLogger.bodyBudget(),
+                    new ChunkListener() {
+
+                        @Override
+                        public void chunk(int sequence, byte[] chunk) {
+                            bodyChunk(message, sequence, chunk);
+                        }
+
+                        @Override
+                        public void end(int chunks, long totalBytes, long capturedBytes) {
+                            bodyEnd(message, chunks, totalBytes, capturedBytes);
+                        }
+                    }));
+        }
+        if (httpLogger.bodyMode() == BodyMode.DIGEST) {
+            return new WiretapRecorder(publisher, nestedPublisher, this, message, new DigestCaptureSink(DIGEST_ALGORITHM,
+                    (digest, length) -> bodyDigested(message, digest, length)));
+        }
+        return new WiretapRecorder(publisher, nestedPublisher, this, message, contentLength);
+    }
+
+    /**
+     * Mark the headers of the message as written (or received).
+     *
+     * @return {@code true} if the headers were not marked before, i.e. this is the first call
+     */
+    public final boolean headersWritten(int message) {
+        return transition(message, HEADERS_WRITTEN);
+    }
+
+    /**
+     * Mark the message as having no body to be captured.
+     */
+    public final void noBody(int message) {
+        transition(message, BODY_COMPLETE | RELEASED);
+    }
+
+    /**
+     * Claim the capture buffer of the message for release, which must precede {@link #bodyComplete(int, byte[])}.
+     *
+     * @return {@code true} if the buffer was not claimed before, i.e. the caller is the one to release it
+     */
+    public final boolean claimRelease(int message) {
+        return transition(message, RELEASED);
+    }
+
+    public final boolean isReleased(int message) {
+        return (state & (RELEASED << message)) != 0;
+    }
+
+    /**
+     * Mark the body of the message as complete, with the captured content.
+     */
+    public final void bodyComplete(int message, byte[] body) {
+        if (message == REQUEST) {
+            requestBody = body;
+        } else {
+            responseBody = body;
+        }
+        transition(message, BODY_COMPLETE);
+    }
+
+    /**
+     * Mark the body of the message as complete, with its digest (rendered as the captured content) and its size: an
+     * empty body is delivered as {@link HttpLogger#EMPTY_BODY}, as when not digested, to be told apart as such.
+     */
+    final void bodyDigested(int message, byte[] digest, long length) {
+        if (message == REQUEST) {
+            requestDigested = length;
+        } else {
+            responseDigested = length;
+        }
+        bodyComplete(message, length == 0 ? EMPTY_BODY : renderDigest(digest, length));
+    }
+
+    /**
+     * @return e.g. {@code [1234 byte(s), sha-256=9f86d08...]}
+     */
+    static byte[] renderDigest(byte[] digest, long length) {
+        StringBuilder builder = new StringBuilder(32 + 2 * digest.length);
+        builder.append('[').append(length).append(" byte(s), sha-256=");
+        for (byte b : digest) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.append(']').toString().getBytes(US_ASCII);
+    }
+
+    /**
+     * Log a chunk of the streamed body of the message.
+     */
+    final void bodyChunk(int message, int sequence, byte[] chunk) {
+        LOGGING_SCHEDULER.schedule(() -> logChunk(message, sequence, chunk));
+    }
+
+    /**
+     * Log the trailer of the streamed body of the message, must follow {@link #claimRelease(int)}.
+     */
+    final void bodyEnd(int message, int chunks, long totalBytes, long loggedBytes) {
+        if (message == RESPONSE) {
+            durationNanos = System.nanoTime() - startNanos;
+        }
+        LOGGING_SCHEDULER.schedule(() -> {
+            logTrailer(message, chunks, totalBytes, loggedBytes);
+            stepDone();
+        });
+    }
+
+    /**
+     * Wait for the logging tasks scheduled so far to run, e.g. on shutdown, as they run in order on a single thread.
+     *
+     * @return {@code true} if they ran within the timeout
+     */
+    public static boolean flushLogging(Duration timeout) throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        LOGGING_SCHEDULER.schedule(flushed::countDown);
+        return flushed.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public final boolean isLogged(int message) {
+        return (state & (LOGGED << message)) != 0;
+    }
+
+    /**
+     * @return {@code true} if this call changed the state
+     */
+    private boolean transition(int message, int flags) {
+        for (;;) {
+            int current = state;
+            int next = current | (flags << message);
+            boolean ready = ((next >>> message) & (READY | LOGGED)) == READY;
+            if (ready) {
+                next |= LOGGED << message;
+            }
+            if (next == current) {
+                return false;
+            }
+            if (STATE.compareAndSet(this, current, next)) {
+                if (ready) {
+                    dispatch(message);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void dispatch(int message) {
+        if (message == RESPONSE && !responseStreamed) {
+            // Complete with its body, unless streamed, i.e. ended later
+            durationNanos = System.nanoTime() - startNanos;
+        }
+
+        byte[] body = message == REQUEST ? requestBody : responseBody;
+        if (body == null) {
+            log(message, EMPTY_BODY);
+            stepDone();
+        } else {
+            // Rendering the captured body is kept off the I/O threads
+            LOGGING_SCHEDULER.schedule(() -> {
+                log(message, body);
+                stepDone();
+            });
+        }
+    }
+
+    private void stepDone() {
+        if (PENDING_STEPS.decrementAndGet(this) == 0) {
+            exchangeLogged();
+        }
+    }
+
+    /**
+     * @return the captured body of the message, or {@link HttpLogger#EMPTY_BODY} if not captured, as logged (i.e. the
+     *         rendered digest in the {@link BodyMode#DIGEST digest} body mode)
+     */
+    protected final byte[] capturedBody(int message) {
+        byte[] body = message == REQUEST ? requestBody : responseBody;
+        return body != null ? body : EMPTY_BODY;
+    }
+
+    /**
+     * @return the size of the body of the message: as digested or captured, or else as declared by the headers
+     *         ({@code -1} if unknown)
+     */
+    protected final long bodySize(int message, HttpHeaders headers) {
+        long digested = message == REQUEST ? requestDigested : responseDigested;
+        if (digested >= 0) {
+            return digested;
+        }
+        byte[] body = message == REQUEST ? requestBody : responseBody;
+        return body != null ? body.length : headers.getContentLength();
+    }
+
+    /**
+     * @return the time from the start of the exchange to the completion of the response (the end of its body, streamed
+     *         or not), or {@code -1} if the response is not complete yet
+     */
+    protected final long durationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Log the message, called exactly once per message.
+     *
+     * @param message
+     *            {@link #REQUEST} or {@link #RESPONSE}
+     * @param body
+     *            the captured body, or {@link HttpLogger#EMPTY_BODY} if the body was not captured
+     */
+    protected abstract void log(int message, byte[] body);
+
+    /**
+     * Log a chunk of the streamed body of the message, in the order of the chunks.
+     */
+    protected abstract void logChunk(int message, int sequence, byte[] chunk);
+
+    /**
+     * Log the trailer of the streamed body of the message, after all the chunks.
+     */
+    protected abstract void logTrailer(int message, int chunks, long totalBytes, long loggedBytes);
+
+    /**
+     * Called once both the request and the response are logged, and their streamed bodies (if any) ended, with the
+     * captured bodies (if any) and the duration available; no-op by default.
+     */
+    protected void exchangeLogged() {
+    }
+}
@@ -5,8 +5,6 @@ import java.net.URI;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 
-import reactor.core.publisher.Mono;
-
 public interface HttpLogger {
 
     boolean shouldLog(HttpMethod method, URI uri);
@@ -15,29 +13,108 @@ public interface HttpLogger {
      * @param dir
      * @param httpMethod
      * @param url
+     * @param protocol
+     *            the HTTP version, and the stream ID of an HTTP/2 request
      * @param headers
      * @param body
      *            the request body, will be logged if and only if it is not {@code null}
      */
-    void logRequest(MessageDirection dir, String httpMethod, URI url, HttpHeaders headers, byte[] body);
+    void logRequest(MessageDirection dir, String httpMethod, URI url, Protocol protocol, HttpHeaders headers, byte[] body);
 
     boolean shouldLogRequestBody(HttpMethod method, HttpHeaders headers);
 
     /**
      * @param dir
+     * @param protocol
+     *            the HTTP version, and the stream ID of an HTTP/2 response
      * @param statusCode
      * @param statusText
      * @param headers
      * @param body
      *            the response body, will be logged if and only if it is not {@code null}
      */
-    void logResponse(MessageDirection dir, int statusCode, String statusText, HttpHeaders headers, byte[] body);
+    void logResponse(MessageDirection dir, Protocol protocol, int statusCode, String statusText, HttpHeaders headers, byte[] body);
 
     boolean shouldLogResponseBody(int statusCode, HttpHeaders headers);
 
+    BodyMode bodyMode();
+
+    /**
+     * @return the max number of body bytes to be logged per message in the {@link BodyMode#STREAMING} mode
+     */
+    int bodyBudget();
+
+    /**
+     * @param dir
+     * @param traceId
+     *            the trace ID of the exchange, may be {@code null}
+     * @param sequence
+     *            the sequence number of the chunk, starting from 1
+     * @param headers
+     *            the headers of the message
+     * @param chunk
+     */
+    void logBodyChunk(MessageDirection dir, String traceId, int sequence, HttpHeaders headers, byte[] chunk);
+
+    /**
+     * @param dir
+     * @param traceId
+     *            the trace ID of the exchange, may be {@code null}
+     * @param chunks
+     *            the number of chunks logged
+     * @param totalBytes
+     *            the total number of body bytes
+     * @param loggedBytes
+     *            the number of body bytes logged, at most {@link #bodyBudget()}
+     */
+    void logBodyTrailer(MessageDirection dir, String traceId, int chunks, long totalBytes, long loggedBytes);
+
+    /**
+     * In the {@link BodyMode#TRIGGERED} body mode, decide whether the completed exchange is logged in full (e.g. slow or
+     * failed), or summarized; a query, with no side effect.
+     *
+     * @param dir
+     *            the direction of the request
+     * @param durationNanos
+     *            the time from the start of the exchange to the completion of the response
+     */
+    boolean shouldLogInFull(MessageDirection dir, HttpMethod method, URI uri, int statusCode, long durationNanos);
+
+    /**
+     * Log the one-line summary of an exchange, in the {@link BodyMode#TRIGGERED} body mode.
+     *
+     * @param dir
+     *            the direction of the request
+     * @param protocol
+     *            the HTTP version, and the stream ID of an HTTP/2 exchange
+     * @param requestSize
+     *            the size of the request body, or {@code -1} if unknown
+     * @param responseSize
+     *            the size of the response body, or {@code -1} if unknown
+     */
+    void logSummary(MessageDirection dir, String httpMethod, URI url, Protocol protocol, int statusCode, long durationNanos,
+            long requestSize, long responseSize);
+
     enum MessageDirection {
         Inbound, Outbound
     }
 
-    Mono<byte[]> EMPTY_BODY_MONO = Mono.just(new byte[0]).cache();
+    enum BodyMode {
+        /** The body is logged as a whole, with the message head, once complete. */
+        BUFFERED,
+        /** The message head is logged immediately, then the body in chunks (up to the budget) as it flows. */
+        STREAMING,
+        /**
+         * The body is captured as in {@link #BUFFERED}, but the exchange is logged once complete: in full if slow or
+         * failed, as a one-line summary otherwise.
+         */
+        TRIGGERED,
+        /**
+         * The body is not retained, but logged as its size and SHA-256 digest, computed as it flows: for the high-volume
+         * paths, where the bodies are too large or too many to be kept, but must still be told apart.
+         */
+        DIGEST
+    }
+
+    byte[] EMPTY_BODY = new byte[0];
 }
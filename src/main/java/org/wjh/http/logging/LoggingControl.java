@@ -0,0 +1,199 @@
+package org.wjh.http.logging;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.wjh.http.Route;
+
+/**
+ * The runtime switch of the HTTP logging, per direction ({@code server} or {@code client}) and per route: the logging
+ * decorators are always installed, and read the settings of their direction once per exchange (a single volatile
+ * read), so that an {@link Mode#OFF off} direction costs next to nothing.
+ * <p>
+ * The initial modes are configured by {@code server.http.logging} and {@code client.http.logging}, where {@code true}
+ * stands for {@link Mode#BODIES} and {@code false} for {@link Mode#OFF}.
+ */
+@Component
+public class LoggingControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingControl.class);
+
+    public enum Direction {
+        SERVER, CLIENT
+    }
+
+    public enum Mode {
+        /** Not logged. */
+        OFF,
+        /** The message heads are logged, without the bodies. */
+        HEADERS,
+        /** The message heads and bodies are logged, as per the body mode. */
+        BODIES,
+        /** A sample of the exchanges is logged with the bodies, the others are not logged. */
+        SAMPLED;
+
+        static Mode parse(String mode) {
+            String value = mode.trim().toUpperCase(Locale.ROOT);
+            if ("TRUE".equals(value)) {
+                return BODIES;
+            } else if ("FALSE".equals(value)) {
+                return OFF;
+            }
+            return valueOf(value);
+        }
+    }
+
+    private final Settings initialServer;
+    private final Settings initialClient;
+
+    private volatile Settings server;
+    private volatile Settings client;
+
+    LoggingControl(@Value("${server.http.logging:false}") String server, //@formatter:off
+            @Value("${client.http.logging:false}") String client,
+            @Value("${http.logging.sample-rate:0.01}") double sampleRate) { //@formatter:on
+        this(new Settings(Mode.parse(server), sampleRate, Collections.emptyMap()),
+                new Settings(Mode.parse(client), sampleRate, Collections.emptyMap()));
+    }
+
+    private LoggingControl(Settings server, Settings client) {
+        this.initialServer = server;
+        this.initialClient = client;
+        this.server = server;
+        this.client = client;
+    }
+
+    /**
+     * @return the control with the given modes for all the routes, e.g. for the benchmarks
+     */
+    public static LoggingControl of(Mode server, Mode client) {
+        return new LoggingControl(new Settings(server, 1, Collections.emptyMap()), new Settings(client, 1, Collections.emptyMap()));
+    }
+
+    /**
+     * @return the mode of the exchange: {@link Mode#OFF}, {@link Mode#HEADERS} or {@link Mode#BODIES}, as sampled
+     */
+    public Mode modeOf(Direction direction, @Nullable HttpMethod method, URI uri) {
+        return settings(direction).modeOf(method, uri);
+    }
+
+    public Settings settings(Direction direction) {
+        return direction == Direction.SERVER ? server : client;
+    }
+
+    /**
+     * Switch the mode of the direction, or of one route of the direction if a route is given.
+     *
+     * @param sampleRate
+     *            the share of the exchanges logged in the {@link Mode#SAMPLED} mode, or {@code null} to keep it
+     */
+    public synchronized void configure(Direction direction, Mode mode, @Nullable String route, @Nullable Double sampleRate) {
+        Settings current = settings(direction);
+        double rate = sampleRate != null ? sampleRate : current.sampleRate;
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("The sample rate must be within [0, 1]: " + rate);
+        }
+
+        Settings next;
+        if (route == null) {
+            next = new Settings(mode, rate, current.routes);
+        } else {
+            Map<Route, Mode> routes = new LinkedHashMap<>(current.routes);
+            routes.put(Route.parse(route), mode);
+            next = new Settings(current.mode, rate, routes);
+        }
+        set(direction, next);
+        logger.info("HTTP logging of the {} switched to {}", direction.name().toLowerCase(Locale.ROOT), next);
+    }
+
+    /**
+     * Remove the mode of one route of the direction, or reset the direction to its initial settings if no route is
+     * given.
+     */
+    public synchronized void reset(Direction direction, @Nullable String route) {
+        Settings current = settings(direction);
+        Settings next;
+        if (route == null) {
+            next = direction == Direction.SERVER ? initialServer : initialClient;
+        } else {
+            Map<Route, Mode> routes = new LinkedHashMap<>(current.routes);
+            routes.remove(Route.parse(route));
+            next = new Settings(current.mode, current.sampleRate, routes);
+        }
+        set(direction, next);
+        logger.info("HTTP logging of the {} reset to {}", direction.name().toLowerCase(Locale.ROOT), next);
+    }
+
+    private void set(Direction direction, Settings settings) {
+        if (direction == Direction.SERVER) {
+            server = settings;
+        } else {
+            client = settings;
+        }
+    }
+
+    /**
+     * The immutable settings of a direction: the mode, overridden per route (the first match wins).
+     */
+    public static final class Settings {
+
+        private final Mode mode;
+        private final double sampleRate;
+        private final Map<Route, Mode> routes;
+
+        Settings(Mode mode, double sampleRate, Map<Route, Mode> routes) {
+            this.mode = mode;
+            this.sampleRate = sampleRate;
+            this.routes = Collections.unmodifiableMap(routes);
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        public Map<Route, Mode> getRoutes() {
+            return routes;
+        }
+
+        Mode modeOf(@Nullable HttpMethod method, URI uri) {
+            if (routes.isEmpty()) {
+                return sample(mode);
+            }
+            PathContainer path = Route.path(uri);
+            for (Map.Entry<Route, Mode> route : routes.entrySet()) {
+                if (route.getKey().matches(method, path)) {
+                    return sample(route.getValue());
+                }
+            }
+            return sample(mode);
+        }
+
+        private Mode sample(Mode mode) {
+            if (mode != Mode.SAMPLED) {
+                return mode;
+            }
+            return ThreadLocalRandom.current().nextDouble() < sampleRate ? Mode.BODIES : Mode.OFF;
+        }
+
+        @Override
+        public String toString() {
+            return mode + (mode == Mode.SAMPLED || routes.containsValue(Mode.SAMPLED) ? " (sample rate " + sampleRate + ")" : "")
+                    + (routes.isEmpty() ? "" : ", routes " + routes);
+        }
+    }
+}
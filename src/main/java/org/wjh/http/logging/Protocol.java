@@ -0,0 +1,63 @@
+package org.wjh.http.logging;
+
+import org.springframework.http.HttpHeaders;
+
+import io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames;
+
+/**
+ * The protocol of a logged message: the HTTP version, and the stream ID of an HTTP/2 (h2 or h2c) message.
+ * <p>
+ * Reactor Netty converts the HTTP/2 frames of a stream into HTTP/1.1 objects, so the version of a message is told by
+ * the {@code x-http2-stream-id} extension header, which it adds to the converted heads.
+ */
+public final class Protocol {
+
+    private static final String STREAM_ID = ExtensionHeaderNames.STREAM_ID.text().toString();
+
+    public static final Protocol HTTP_1_1 = new Protocol("HTTP/1.1", -1);
+    /** HTTP/2, of a message whose stream ID is not known (yet). */
+    public static final Protocol HTTP_2 = new Protocol("HTTP/2.0", -1);
+
+    private final String version;
+    private final int streamId;
+
+    private Protocol(String version, int streamId) {
+        this.version = version;
+        this.streamId = streamId;
+    }
+
+    /**
+     * @param otherwise
+     *            the protocol if the headers do not tell an HTTP/2 stream
+     */
+    public static Protocol of(HttpHeaders headers, Protocol otherwise) {
+        String streamId = headers.getFirst(STREAM_ID);
+        if (streamId == null) {
+            return otherwise;
+        }
+        try {
+            return new Protocol(HTTP_2.version, Integer.parseInt(streamId.trim()));
+        } catch (NumberFormatException e) {
+            return HTTP_2;
+        }
+    }
+
+    /**
+     * @return the version, as in a start or status line, e.g. {@code HTTP/1.1}
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the ID of the HTTP/2 stream, or {@code -1} if not known, or not HTTP/2
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+
+    @Override
+    public String toString() {
+        return streamId < 0 ? version : version + " (stream " + streamId + ")";
+    }
+}
@@ -2,62 +2,94 @@ package org.wjh.http.logging;
 
 import org.reactivestreams.Publisher;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferFactory;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
+import org.wjh.reactor.BufferCaptureSink;
+import org.wjh.reactor.Capture;
+import org.wjh.reactor.CaptureSink;
+import org.wjh.reactor.SerializedCaptureSink;
 
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
-import reactor.core.publisher.MonoProcessor;
-import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.publisher.SignalType;
 
 /**
- * Tap into a Publisher of data buffers to save the content.
+ * Tap into a Publisher of data buffers with a {@link Capture}, and deliver the content captured by the sink of the body
+ * mode to the exchange state on completion.
  */
 public class WiretapRecorder {
 
-    private static final DataBufferFactory BUFFER_FACTORY = new DefaultDataBufferFactory();
-
-    private static final Scheduler LOGGING_SCHEDULER = Schedulers.newSingle("http-log");
-
     @Nullable
     private final Flux<? extends DataBuffer> publisher;
 
     @Nullable
     private final Flux<? extends Publisher<? extends DataBuffer>> nestedPublisher;
 
-    private final DataBuffer buffer = BUFFER_FACTORY.allocateBuffer();
-
-    private final MonoProcessor<byte[]> content = MonoProcessor.create();
-
-    public WiretapRecorder(@Nullable Publisher<? extends DataBuffer> publisher,
-            @Nullable Publisher<? extends Publisher<? extends DataBuffer>> nestedPublisher) {
+    private final ExchangeState state;
+    private final int message;
+    private final CaptureSink<DataBuffer> sink;
+
+    /**
+     * Capture the whole body into a buffer.
+     *
+     * @param state
+     *            the exchange state which the captured content is delivered to
+     * @param message
+     *            {@link ExchangeState#REQUEST} or {@link ExchangeState#RESPONSE}
+     * @param contentLength
+     *            the length of the body, or {@code -1} if unknown, to size the capture buffer upfront
+     */
+    WiretapRecorder(@Nullable Publisher<? extends DataBuffer> publisher,
+            @Nullable Publisher<? extends Publisher<? extends DataBuffer>> nestedPublisher, ExchangeState state, int message,
+            long contentLength) {
+
+        this(publisher, nestedPublisher, state, message, new BufferCaptureSink(contentLength, Integer.MAX_VALUE,
+                body -> state.bodyComplete(message, body.length == 0 ? HttpLogger.EMPTY_BODY : body)));
+    }
 
-        if (publisher != null && nestedPublisher != null) {
-            throw new IllegalArgumentException("At most one publisher expected");
+    /**
+     * @param sink
+     *            the sink of the body, terminated once the capture buffer of the message is claimed for release, and never
+     *            while a data buffer is being handed to it (e.g. on the cancel of an exchange racing with a body chunk)
+     */
+    WiretapRecorder(@Nullable Publisher<? extends DataBuffer> publisher,
+            @Nullable Publisher<? extends Publisher<? extends DataBuffer>> nestedPublisher, ExchangeState state, int message,
+            CaptureSink<DataBuffer> sink) {
+
+        if ((publisher == null) == (nestedPublisher == null)) {
+            throw new IllegalArgumentException("Exactly one publisher expected");
         }
 
-        this.publisher = publisher == null ? null : //@formatter:off
-                Flux.from(publisher)
-                        .doOnNext(this.buffer::write)
-                        .doOnError(this::handleOnError)
-                        .doOnCancel(this::handleOnComplete)
-                        .doOnComplete(this::handleOnComplete)
-                ; //@formatter:on
-
-        this.nestedPublisher = nestedPublisher == null ? null : //@formatter:off
-                Flux.from(nestedPublisher)
-                        .map(p -> Flux.from(p).doOnNext(this.buffer::write).doOnError(this::handleOnError))
-                        .doOnError(this::handleOnError)
-                        .doOnCancel(this::handleOnComplete)
-                        .doOnComplete(this::handleOnComplete)
-                ; //@formatter:on
-
-        if (publisher == null && nestedPublisher == null) {
-            this.content.onComplete();
-        }
+        this.state = state;
+        this.message = message;
+        this.sink = new SerializedCaptureSink<>(sink);
+
+        this.publisher = publisher == null ? null : Capture.tap(publisher, new CaptureSink<DataBuffer>() {
+
+            @Override
+            public void onNext(DataBuffer dataBuffer) {
+                capture(dataBuffer);
+            }
+
+            @Override
+            public void onTerminate(SignalType signal, @Nullable Throwable error) {
+                complete();
+            }
+        });
+
+        // The inner publishers are captured as they flow, and the capture completes with the outer one
+        this.nestedPublisher = nestedPublisher == null ? null : Capture.tap(//@formatter:off
+                Flux.from(nestedPublisher).map(p -> Capture.tap(p, this::capture)),
+                new CaptureSink<Publisher<? extends DataBuffer>>() {
+
+                    @Override
+                    public void onNext(Publisher<? extends DataBuffer> inner) {
+                    }
+
+                    @Override
+                    public void onTerminate(SignalType signal, @Nullable Throwable error) {
+                        complete();
+                    }
+                }); //@formatter:on
     }
 
     public Publisher<? extends DataBuffer> getPublisher() {
@@ -70,26 +102,18 @@ public class WiretapRecorder {
         return nestedPublisher;
     }
 
-    public Mono<byte[]> getContent() {
-        return Mono.defer(() -> content).publishOn(LOGGING_SCHEDULER);
-    }
-
-    private void handleOnError(Throwable ex) {
-        if (content.isTerminated()) {
-            return;
+    /**
+     * Complete the recording of a body which is not (or no longer) consumed, e.g. the request body of an exchange which
+     * was rejected upfront; no-op if the recording is already complete.
+     */
+    public void complete() {
+        // Whatever captured so far is logged, on an error or a cancel too
+        if (state.claimRelease(message)) {
+            sink.onTerminate(SignalType.ON_COMPLETE, null);
         }
-
-        content.onError(ex);
     }
 
-    private void handleOnComplete() {
-        if (content.isTerminated()) {
-            return;
-        }
-
-        byte[] bytes = new byte[buffer.readableByteCount()];
-        buffer.read(bytes);
-        content.onNext(bytes);
-        content.onComplete();
+    private void capture(DataBuffer dataBuffer) {
+        sink.onNext(dataBuffer);
     }
 }
@@ -0,0 +1,68 @@
+package org.wjh.http.logging.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Rendering of the binary JSON (CBOR, Smile) bodies for logging: the captured bytes are transcoded token by token into
+ * JSON text, without binding them to any object tree.
+ */
+abstract class BinaryJson {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final JsonFactory CBOR_FACTORY = new CBORFactory();
+    private static final JsonFactory SMILE_FACTORY = new SmileFactory();
+
+    /**
+     * @return {@code true} if the content type is a binary JSON that can be rendered
+     */
+    static boolean isBinaryJson(@Nullable MediaType contentType) {
+        return factoryOf(contentType) != null;
+    }
+
+    /**
+     * Transcode the body (must be {@link #isBinaryJson(MediaType) binary JSON}) into UTF-8 JSON text.
+     *
+     * @throws IOException
+     *             if the body is not well formed
+     */
+    static byte[] toJson(MediaType contentType, byte[] body) throws IOException {
+        JsonFactory factory = factoryOf(contentType);
+        if (factory == null) {
+            throw new IllegalArgumentException("Not a binary JSON: " + contentType);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 2);
+        try (JsonParser parser = factory.createParser(body); JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            // Multiple root values, if any, are separated by a space
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Nullable
+    private static JsonFactory factoryOf(@Nullable MediaType contentType) {
+        if (contentType == null || !"application".equals(contentType.getType())) {
+            return null;
+        }
+        String subtype = contentType.getSubtype();
+        if ("cbor".equals(subtype) || subtype.endsWith("+cbor")) {
+            return CBOR_FACTORY;
+        }
+        if ("x-jackson-smile".equals(subtype) || subtype.endsWith("+smile")) {
+            return SMILE_FACTORY;
+        }
+        return null;
+    }
+}
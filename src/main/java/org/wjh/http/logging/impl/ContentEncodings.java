@@ -0,0 +1,140 @@
+package org.wjh.http.logging.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.brotli.dec.BrotliInputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+
+/**
+ * Lazy decoding of the captured (compressed) bodies for logging: the bodies are captured as they are on the wire, and
+ * only inflated, with a size cap, when they are actually rendered.
+ */
+abstract class ContentEncodings {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The result of decoding a body.
+     */
+    static class Decoded {
+        final byte[] bytes;
+        final boolean truncated;
+        /** The encoding which is not supported, or {@code null} if the body is decoded. */
+        final String unsupported;
+
+        private Decoded(byte[] bytes, boolean truncated, String unsupported) {
+            this.bytes = bytes;
+            this.truncated = truncated;
+            this.unsupported = unsupported;
+        }
+    }
+
+    /**
+     * @return {@code true} if the body is encoded as per the {@code Content-Encoding} header
+     */
+    static boolean isEncoded(HttpHeaders headers) {
+        List<String> values = headers.get(HttpHeaders.CONTENT_ENCODING);
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            for (String coding : StringUtils.commaDelimitedListToStringArray(value)) {
+                if (!isIdentity(coding)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode the body as per the {@code Content-Encoding} header (must be {@link #isEncoded(HttpHeaders) encoded}), the
+     * decoded bytes are capped at {@code maxBytes} so that a decompression bomb cannot blow up the memory.
+     */
+    static Decoded decode(HttpHeaders headers, byte[] body, int maxBytes) {
+        String[] codings = StringUtils.commaDelimitedListToStringArray(String.join(",", headers.get(HttpHeaders.CONTENT_ENCODING)));
+
+        byte[] bytes = body;
+        boolean truncated = false;
+        // The codings are listed in the order they were applied, so they are decoded in the reverse order
+        for (int i = codings.length - 1; i >= 0; i--) {
+            String coding = codings[i].trim().toLowerCase(Locale.ROOT);
+            if (isIdentity(coding)) {
+                continue;
+            }
+            if (truncated) {
+                // A truncated stream cannot be decoded further
+                return new Decoded(bytes, true, coding);
+            }
+            try (InputStream in = decoder(coding, bytes)) {
+                if (in == null) {
+                    return new Decoded(bytes, truncated, coding);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBytes, Math.max(BUFFER_SIZE, bytes.length * 4)));
+                truncated = copy(in, out, maxBytes);
+                bytes = out.toByteArray();
+            } catch (IOException e) {
+                return new Decoded(bytes, truncated, coding + " (" + e.getMessage() + ")");
+            }
+        }
+        return new Decoded(bytes, truncated, null);
+    }
+
+    private static boolean isIdentity(String coding) {
+        String trimmed = coding.trim();
+        return trimmed.isEmpty() || "identity".equalsIgnoreCase(trimmed);
+    }
+
+    private static InputStream decoder(String coding, byte[] bytes) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        switch (coding) {
+        case "gzip":
+        case "x-gzip":
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        case "deflate":
+            // Per the RFC, 'deflate' is zlib wrapped, yet some implementations send the raw deflate stream
+            return new InflaterInputStream(in, new Inflater(!hasZlibHeader(bytes)), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end(); // not ended by the stream, as it is not the default inflater
+                }
+            };
+        case "br":
+            return new BrotliInputStream(in);
+        default:
+            return null;
+        }
+    }
+
+    private static boolean hasZlibHeader(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0x0F) == 8 && ((bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF)) % 31 == 0;
+    }
+
+    /**
+     * @return {@code true} if the input is truncated at {@code maxBytes}
+     */
+    private static boolean copy(InputStream in, ByteArrayOutputStream out, int maxBytes) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int remaining = maxBytes;
+        int read;
+        while ((read = in.read(buffer, 0, Math.min(buffer.length, remaining + 1))) != -1) {
+            if (read > remaining) {
+                out.write(buffer, 0, remaining);
+                return true;
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return false;
+    }
+}
@@ -1,28 +1,34 @@
 package org.wjh.http.logging.impl;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.wjh.http.logging.HttpLogger;
+import org.wjh.http.logging.Protocol;
+import org.wjh.http.slo.LatencySlo;
 
 @Service
 public class DefaultHttpLogger implements HttpLogger {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultHttpLogger.class);
 
-    private static final String HTTP_VERSION = "HTTP/1.1";
     private static final String SPACE = " ";
     private static final String COLON = ": ";
     private static final String INDENT = "\t";
@@ -37,6 +43,31 @@ public class DefaultHttpLogger implements HttpLogger {
             + "|(?:x-www-form-urlencoded)"
             + "$");//@formatter:on
 
+    @Value("${http.logging.body-mode:BUFFERED}")
+    private BodyMode bodyMode = BodyMode.BUFFERED;
+
+    @Value("${http.logging.body-budget:65536}")
+    private int bodyBudget = 65536;
+
+    @Value("${http.logging.decoded-body-limit:1048576}")
+    private int decodedBodyLimit = 1048576;
+
+    @Autowired(required = false)
+    private Redactor redactor = Redactor.NONE;
+
+    @Autowired(required = false)
+    private LatencySlo latencySlo;
+
+    @Override
+    public BodyMode bodyMode() {
+        return bodyMode;
+    }
+
+    @Override
+    public int bodyBudget() {
+        return bodyBudget;
+    }
+
     @Override
     public boolean shouldLog(HttpMethod method, URI uri) {
         return true; // TODO
@@ -75,8 +106,8 @@ public class DefaultHttpLogger implements HttpLogger {
     private boolean isTextBody(HttpHeaders headers) {
         MediaType contentType = headers.getContentType();
         if (contentType != null) {
-            if ("text".equals(contentType.getType())) {
-                return true;
+            if ("text".equals(contentType.getType()) || BinaryJson.isBinaryJson(contentType)) {
+                return true; // a binary JSON is rendered as JSON text
             }
             String subtype = contentType.getSubtype();
             if (subtype != null) {
@@ -87,11 +118,12 @@ public class DefaultHttpLogger implements HttpLogger {
     }
 
     @Override
-    public void logRequest(MessageDirection dir, String httpMethod, URI url, HttpHeaders headers, byte[] body) {
-        StringBuilder builder = new StringBuilder(dir.name()).append(" HTTP Request:").append(NEW_LINE);
+    public void logRequest(MessageDirection dir, String httpMethod, URI url, Protocol protocol, HttpHeaders headers, byte[] body) {
+        StringBuilder builder = new StringBuilder(dir.name()).append(" HTTP Request");
+        appendStream(builder, protocol).append(":").append(NEW_LINE);
 
         // Start line::<method> <URL> HTTP/<version>
-        builder.append(INDENT).append(httpMethod).append(SPACE).append(url).append(SPACE).append(HTTP_VERSION).append(NEW_LINE);
+        builder.append(INDENT).append(httpMethod).append(SPACE).append(url).append(SPACE).append(protocol.getVersion()).append(NEW_LINE);
 
         appendHeadersAndBody(builder, headers, body);
 
@@ -99,17 +131,82 @@ public class DefaultHttpLogger implements HttpLogger {
     }
 
     @Override
-    public void logResponse(MessageDirection dir, int statusCode, String statusText, HttpHeaders headers, byte[] body) {
-        StringBuilder builder = new StringBuilder(dir.name()).append(" HTTP Response:").append(NEW_LINE);
+    public void logResponse(MessageDirection dir, Protocol protocol, int statusCode, String statusText, HttpHeaders headers, byte[] body) {
+        StringBuilder builder = new StringBuilder(dir.name()).append(" HTTP Response");
+        appendStream(builder, protocol).append(":").append(NEW_LINE);
 
         // Status line::HTTP/<version> <status code> <status text>
-        builder.append(INDENT).append(HTTP_VERSION).append(SPACE).append(statusCode).append(text(statusCode, statusText)).append(NEW_LINE);
+        builder.append(INDENT).append(protocol.getVersion()).append(SPACE).append(statusCode).append(text(statusCode, statusText)).append(NEW_LINE);
 
         appendHeadersAndBody(builder, headers, body);
 
         logger.info(builder.toString());
     }
 
+    @Override
+    public boolean shouldLogInFull(MessageDirection dir, HttpMethod method, URI uri, int statusCode, long durationNanos) {
+        // The exchanges are recorded against the SLO as they complete, logged or not; without an SLO, none is slow
+        boolean slow = latencySlo != null && latencySlo.isSlow(dir, method, uri, durationNanos);
+        return slow || statusCode >= 400;
+    }
+
+    @Override
+    public void logSummary(MessageDirection dir, String httpMethod, URI url, Protocol protocol, int statusCode, long durationNanos,
+            long requestSize, long responseSize) {
+        StringBuilder builder = new StringBuilder(dir.name()).append(" HTTP Exchange");
+        appendStream(builder, protocol).append(": ");
+        builder.append(httpMethod).append(SPACE).append(url).append(SPACE).append(protocol.getVersion()).append(" -> ").append(statusCode);
+        builder.append(" in ").append(String.format(Locale.ROOT, "%.3f", durationNanos / 1e6)).append(" ms");
+        builder.append(", request ").append(size(requestSize)).append(", response ").append(size(responseSize));
+
+        logger.info(builder.toString());
+    }
+
+    /**
+     * The stream ID of an HTTP/2 message, which tells apart the exchanges multiplexed over a connection.
+     */
+    private static StringBuilder appendStream(StringBuilder builder, Protocol protocol) {
+        return protocol.getStreamId() < 0 ? builder : builder.append(" [stream ").append(protocol.getStreamId()).append("]");
+    }
+
+    private static String size(long size) {
+        return size < 0 ? "? byte(s)" : size + " byte(s)";
+    }
+
+    @Override
+    public void logBodyChunk(MessageDirection dir, String traceId, int sequence, HttpHeaders headers, byte[] chunk) {
+        StringBuilder builder = new StringBuilder(dir.name()).append(" HTTP Body Chunk #").append(sequence);
+        builder.append(" [").append(traceId).append("]:").append(NEW_LINE);
+
+        if (ContentEncodings.isEncoded(headers)) {
+            // A chunk of a compressed stream cannot be decoded on its own
+            builder.append(INDENT).append("[").append(chunk.length).append(" byte(s) of encoded body]").append(NEW_LINE);
+        } else if (BinaryJson.isBinaryJson(headers.getContentType())) {
+            // Nor can a chunk of a binary JSON be transcoded
+            builder.append(INDENT).append("[").append(chunk.length).append(" byte(s) of ").append(headers.getContentType())
+                    .append(" body]").append(NEW_LINE);
+        } else {
+            // A multi-byte character may be split between two chunks, as may be a field to redact (best effort)
+            builder.append(INDENT);
+            appendText(builder, headers, chunk, false); // a chunk is copied for the logging only
+            builder.append(NEW_LINE);
+        }
+
+        logger.info(builder.toString());
+    }
+
+    @Override
+    public void logBodyTrailer(MessageDirection dir, String traceId, int chunks, long totalBytes, long loggedBytes) {
+        StringBuilder builder = new StringBuilder(dir.name()).append(" HTTP Body End");
+        builder.append(" [").append(traceId).append("]: ");
+        builder.append(chunks).append(" chunk(s), ").append(totalBytes).append(" byte(s)");
+        if (loggedBytes < totalBytes) {
+            builder.append(", truncated to ").append(loggedBytes).append(" byte(s)");
+        }
+
+        logger.info(builder.toString());
+    }
+
     private String text(int statusCode, String statusText) {
         if (statusText == null || statusText.isEmpty()) {
             HttpStatus status = HttpStatus.resolve(statusCode);
@@ -122,12 +219,69 @@ public class DefaultHttpLogger implements HttpLogger {
         // HTTP headers::one single line for each header
         // <header name>: <header values>
         headers.forEach((String name, List<String> values) -> {
-            builder.append(INDENT).append(name).append(COLON).append(String.join(",", values)).append(NEW_LINE);
+            builder.append(INDENT).append(name).append(COLON);
+            builder.append(redactor.isRedactedHeader(name) ? Redactor.MASK : String.join(",", values)).append(NEW_LINE);
         });
 
         // Body::optional
         if (!isEmpty(body)) {
-            builder.append(NEW_LINE).append(INDENT).append(new String(body, determineCharset(headers))).append(NEW_LINE);
+            builder.append(NEW_LINE).append(INDENT);
+            if (bodyMode == BodyMode.DIGEST) {
+                // The size and the digest of the body as sent, i.e. still encoded if it is
+                builder.append(new String(body, US_ASCII));
+            } else if (ContentEncodings.isEncoded(headers)) {
+                appendEncodedBody(builder, headers, body);
+            } else {
+                appendText(builder, headers, body, true);
+            }
+            builder.append(NEW_LINE);
+        }
+    }
+
+    private void appendEncodedBody(StringBuilder builder, HttpHeaders headers, byte[] body) {
+        // The body is decoded only now, as it is actually rendered
+        ContentEncodings.Decoded decoded = ContentEncodings.decode(headers, body, decodedBodyLimit);
+        if (decoded.unsupported != null) {
+            builder.append("[").append(body.length).append(" byte(s) of ").append(decoded.unsupported).append(" encoded body]");
+            return;
+        }
+
+        appendText(builder, headers, decoded.bytes, decoded.bytes == body);
+        if (decoded.truncated) {
+            builder.append(" ... [decoded body truncated at ").append(decoded.bytes.length).append(" byte(s)]");
+        }
+    }
+
+    /**
+     * Append the (decoded) body as text, redacted; a binary JSON is transcoded into JSON text first.
+     *
+     * @param shared
+     *            whether the bytes are the captured body, still owned by the exchange (e.g. to be captured to a file, or
+     *            kept by the recent exchanges), which must then not be redacted in place
+     */
+    private void appendText(StringBuilder builder, HttpHeaders headers, byte[] bytes, boolean shared) {
+        MediaType contentType = headers.getContentType();
+        Charset charset = determineCharset(headers);
+        if (BinaryJson.isBinaryJson(contentType)) {
+            try {
+                bytes = BinaryJson.toJson(contentType, bytes);
+            } catch (IOException e) {
+                builder.append("[").append(bytes.length).append(" byte(s) of malformed ").append(contentType).append(" body]");
+                return;
+            }
+            contentType = MediaType.APPLICATION_JSON;
+            charset = UTF_8;
+            shared = false;
+        }
+        if (shared && redactor.redactsBody(contentType)) {
+            bytes = bytes.clone();
+        }
+
+        int length = redactor.redactBody(contentType, charset, bytes, bytes.length);
+        if (length < 0) {
+            builder.append("[").append(bytes.length).append(" byte(s) of redacted body]");
+        } else {
+            builder.append(new String(bytes, 0, length, charset));
         }
     }
 
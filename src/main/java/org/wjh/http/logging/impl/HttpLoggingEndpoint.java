@@ -0,0 +1,93 @@
+package org.wjh.http.logging.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.wjh.http.logging.LoggingControl;
+import org.wjh.http.logging.LoggingControl.Direction;
+import org.wjh.http.logging.LoggingControl.Mode;
+import org.wjh.http.logging.LoggingControl.Settings;
+
+/**
+ * The runtime control of the HTTP logging, e.g. {@code POST /actuator/httplogging} with
+ * {@code {"direction": "server", "mode": "headers", "route": "GET /echo"}}; the logging levels are controlled by the
+ * standard {@code loggers} endpoint.
+ */
+@Component
+@Endpoint(id = "httplogging")
+public class HttpLoggingEndpoint {
+
+    private final LoggingControl control;
+
+    private HttpLoggingEndpoint(LoggingControl control) {
+        this.control = control;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        for (Direction direction : Direction.values()) {
+            settings.put(direction.name().toLowerCase(Locale.ROOT), describe(control.settings(direction)));
+        }
+        return settings;
+    }
+
+    /**
+     * @param direction
+     *            {@code server} or {@code client}
+     * @param mode
+     *            {@code off}, {@code headers}, {@code bodies} or {@code sampled}
+     * @param route
+     *            the {@code [METHOD ]pattern} the mode applies to, or {@code null} for the whole direction
+     * @param sampleRate
+     *            the share of the exchanges logged in the {@code sampled} mode, or {@code null} to keep it
+     */
+    @WriteOperation
+    public Map<String, Object> configure(String direction, String mode, @Nullable String route, @Nullable Double sampleRate) {
+        try {
+            control.configure(parse(Direction.class, direction), parse(Mode.class, mode), route, sampleRate);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+        return settings();
+    }
+
+    /**
+     * Remove the mode of a route, or reset the direction to its initial settings if no route is given.
+     */
+    @DeleteOperation
+    public Map<String, Object> reset(String direction, @Nullable String route) {
+        try {
+            control.reset(parse(Direction.class, direction), route);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+        return settings();
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + type.getSimpleName().toLowerCase(Locale.ROOT) + ": " + value);
+        }
+    }
+
+    private static Map<String, Object> describe(Settings settings) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("mode", settings.getMode());
+        description.put("sampleRate", settings.getSampleRate());
+        Map<String, Mode> routes = new LinkedHashMap<>();
+        settings.getRoutes().forEach((route, mode) -> routes.put(route.toString(), mode));
+        description.put("routes", routes);
+        return description;
+    }
+}
@@ -0,0 +1,389 @@
+package org.wjh.http.logging.impl;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redaction engine compiled from the configuration once: a case-insensitive header denylist (and optional allowlist),
+ * plus JSON field/path and form field masking, done by a streaming tokenizer in place over the body bytes, or forward
+ * into another array.
+ * <p>
+ * A field is either a name, which matches at any depth (e.g. {@code password}), or a dotted path from the root of the
+ * JSON document (e.g. {@code $.user.password}); form fields are matched by name.
+ * <p>
+ * Besides the logger, the redaction serves the bodies kept in memory (e.g. by the recent exchanges) through
+ * {@link #redactedCopy(HttpHeaders, byte[], byte[])}.
+ */
+@Component
+public class Redactor {
+
+    static final String MASK = "***";
+
+    public static final Redactor NONE = new Redactor(new String[0], new String[0], new String[0]);
+
+    private static final byte[] QUOTED_MASK = ("\"" + MASK + "\"").getBytes(US_ASCII);
+    private static final byte[] PLAIN_MASK = MASK.getBytes(US_ASCII);
+
+    private static final int MAX_DEPTH = 64;
+
+    private final Set<String> deniedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private final Set<String> allowedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    /** Lower-cased names matching at any depth. */
+    private final byte[][] names;
+    /** Lower-cased paths from the root, one name per segment. */
+    private final byte[][][] paths;
+
+    public Redactor(@Value("${http.logging.redact.headers:Authorization,Proxy-Authorization,Cookie,Set-Cookie}") String[] deniedHeaders,
+            @Value("${http.logging.redact.allowed-headers:}") String[] allowedHeaders,
+            @Value("${http.logging.redact.fields:}") String[] fields) {
+
+        addAll(this.deniedHeaders, deniedHeaders);
+        addAll(this.allowedHeaders, allowedHeaders);
+
+        List<byte[]> names = new ArrayList<>();
+        List<byte[][]> paths = new ArrayList<>();
+        for (String field : fields) {
+            String spec = field.trim().toLowerCase(Locale.ROOT);
+            if (spec.isEmpty()) {
+                continue;
+            }
+            if (spec.startsWith("$.")) {
+                String[] segments = spec.substring(2).split("\\.");
+                byte[][] path = new byte[segments.length][];
+                for (int i = 0; i < segments.length; i++) {
+                    path[i] = segments[i].getBytes(US_ASCII);
+                }
+                paths.add(path);
+            } else {
+                names.add(spec.getBytes(US_ASCII));
+            }
+        }
+        this.names = names.toArray(new byte[0][]);
+        this.paths = paths.toArray(new byte[0][][]);
+    }
+
+    private static void addAll(Set<String> set, String[] values) {
+        for (String value : values) {
+            if (!value.trim().isEmpty()) {
+                set.add(value.trim());
+            }
+        }
+    }
+
+    boolean isRedactedHeader(String name) {
+        return deniedHeaders.contains(name) || (!allowedHeaders.isEmpty() && !allowedHeaders.contains(name));
+    }
+
+    boolean hasBodyRules() {
+        return names.length > 0 || paths.length > 0;
+    }
+
+    /**
+     * Copy the body, redacted, into the target, truncated to its length; the body itself is left unchanged, and not
+     * copied otherwise. With body rules, a body which cannot be redacted (encoded, binary JSON, or in a charset the
+     * tokenizers do not handle) is not copied at all.
+     *
+     * @return the number of bytes copied
+     */
+    public int redactedCopy(HttpHeaders headers, byte[] body, byte[] target) {
+        if (body.length > 0 && hasBodyRules()) {
+            MediaType contentType = headers.getContentType();
+            if (ContentEncodings.isEncoded(headers) || BinaryJson.isBinaryJson(contentType)) {
+                return 0;
+            }
+            if (redactsBody(contentType)) {
+                // The whole body is tokenized, as a truncated one may not be, but written up to the target length only
+                return Math.max(0, redactBody(contentType, charset(contentType), body, body.length, target, target.length));
+            }
+        }
+        int length = Math.min(body.length, target.length);
+        System.arraycopy(body, 0, target, 0, length);
+        return length;
+    }
+
+    private static Charset charset(MediaType contentType) {
+        try {
+            Charset charset = contentType.getCharset();
+            return charset != null ? charset : UTF_8;
+        } catch (UnsupportedCharsetException e) {
+            return UTF_8;
+        }
+    }
+
+    /**
+     * @return whether a body of the content type may be changed by {@link #redactBody(MediaType, Charset, byte[], int)}
+     */
+    boolean redactsBody(@Nullable MediaType contentType) {
+        if (!hasBodyRules() || contentType == null) {
+            return false;
+        }
+        String subtype = contentType.getSubtype();
+        return isJson(subtype) || "x-www-form-urlencoded".equals(subtype);
+    }
+
+    private static boolean isJson(String subtype) {
+        return "json".equals(subtype) || subtype.endsWith("+json");
+    }
+
+    /**
+     * Redact the body in place, i.e. the masked body is compacted into the same array.
+     *
+     * @return the length of the redacted body, or {@code -1} if the body cannot be tokenized and must be masked as a whole
+     */
+    int redactBody(@Nullable MediaType contentType, Charset charset, byte[] body, int length) {
+        if (!redactsBody(contentType)) {
+            return length;
+        }
+        return redactBody(contentType, charset, body, length, body, length);
+    }
+
+    /**
+     * Redact the body forward into the target, up to the limit: as the tokenizers only ever write behind their read
+     * cursor, the target may be the body itself.
+     *
+     * @return the length written into the target, or {@code -1} if the body cannot be tokenized
+     */
+    private int redactBody(MediaType contentType, Charset charset, byte[] body, int length, byte[] target, int limit) {
+        boolean json = isJson(contentType.getSubtype());
+        if (charset.name().startsWith("UTF-16") || charset.name().startsWith("UTF-32")) {
+            // The tokenizers work on ASCII compatible encodings only
+            return -1;
+        }
+        return json ? redactJson(body, length, target, limit) : redactForm(body, length, target, limit);
+    }
+
+    private int redactForm(byte[] body, int length, byte[] target, int limit) {
+        int w = 0;
+        int r = 0;
+        while (r < length && w < limit) {
+            int end = indexOf(body, (byte) '&', r, length);
+            int eq = indexOf(body, (byte) '=', r, end);
+            if (eq < end && matchesName(body, r, eq)) {
+                w = copy(body, r, eq + 1, target, w, limit);
+                w = writeMask(target, w, limit, end - eq - 1, false);
+            } else {
+                w = copy(body, r, end, target, w, limit);
+            }
+            if (end < length && w < limit) {
+                target[w++] = '&';
+            }
+            r = end + 1;
+        }
+        return w;
+    }
+
+    private int redactJson(byte[] body, int length, byte[] target, int limit) {
+        // The stack of the containers: the key (start/end in the written bytes) of an object, or -1 for an array
+        int[] keyStart = new int[MAX_DEPTH];
+        int[] keyEnd = new int[MAX_DEPTH];
+        int depth = 0;
+
+        int w = 0;
+        int r = 0;
+        while (r < length && w < limit) {
+            byte b = body[r];
+            if (b == '"') {
+                int end = skipString(body, r, length);
+                int next = skipWhitespace(body, end, length);
+                if (next < length && body[next] == ':' && depth > 0 && depth <= MAX_DEPTH && keyStart[depth - 1] != -1) {
+                    // An object key, matched as written
+                    int start = w + 1;
+                    w = copy(body, r, next + 1, target, w, limit);
+                    if (w == limit) {
+                        break;
+                    }
+                    keyStart[depth - 1] = start;
+                    keyEnd[depth - 1] = w - 1 - (next - end) - 1;
+
+                    r = next + 1;
+                    if (matchesKey(target, keyStart, keyEnd, depth)) {
+                        int valueStart = skipWhitespace(body, r, length);
+                        w = copy(body, r, valueStart, target, w, limit);
+                        int valueEnd = skipValue(body, valueStart, length);
+                        w = writeMask(target, w, limit, valueEnd - valueStart, true);
+                        r = valueEnd;
+                    }
+                } else {
+                    w = copy(body, r, end, target, w, limit);
+                    r = end;
+                }
+                continue;
+            }
+
+            if (b == '{' || b == '[') {
+                if (depth < MAX_DEPTH) {
+                    keyStart[depth] = b == '{' ? 0 : -1;
+                    keyEnd[depth] = 0;
+                }
+                depth++;
+            } else if ((b == '}' || b == ']') && depth > 0) {
+                depth--;
+            }
+            target[w++] = b;
+            r++;
+        }
+        return w;
+    }
+
+    private boolean matchesName(byte[] bytes, int start, int end) {
+        for (byte[] name : names) {
+            if (equalsIgnoreCase(bytes, start, end, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesKey(byte[] bytes, int[] keyStart, int[] keyEnd, int depth) {
+        if (matchesName(bytes, keyStart[depth - 1], keyEnd[depth - 1])) {
+            return true;
+        }
+        for (byte[][] path : paths) {
+            int segment = path.length - 1;
+            int level = depth - 1;
+            for (; level >= 0 && segment >= 0; level--) {
+                if (keyStart[level] == -1) {
+                    continue; // an array is transparent to the path
+                }
+                if (!equalsIgnoreCase(bytes, keyStart[level], keyEnd[level], path[segment])) {
+                    break;
+                }
+                segment--;
+            }
+            if (segment < 0 && !hasObjectBelow(keyStart, level)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasObjectBelow(int[] keyStart, int level) {
+        for (; level >= 0; level--) {
+            if (keyStart[level] != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] bytes, int start, int end, byte[] lowerCased) {
+        if (end - start != lowerCased.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCased.length; i++) {
+            byte b = bytes[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCased[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the mask over a value of the given length, never longer than the value (so that the writing never overtakes
+     * the reading), up to the limit.
+     */
+    private static int writeMask(byte[] target, int w, int limit, int valueLength, boolean quoted) {
+        byte[] mask = quoted ? QUOTED_MASK : PLAIN_MASK;
+        if (valueLength >= mask.length) {
+            int length = Math.min(mask.length, limit - w);
+            System.arraycopy(mask, 0, target, w, length);
+            return w + length;
+        }
+        int end = Math.min(w + valueLength, limit);
+        while (w < end) {
+            target[w++] = '*';
+        }
+        return w;
+    }
+
+    private static int copy(byte[] body, int from, int to, byte[] target, int w, int limit) {
+        int length = Math.min(to - from, limit - w);
+        if (body != target || from != w) {
+            System.arraycopy(body, from, target, w, length);
+        }
+        return w + length;
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return the index after the closing quote of the string starting at {@code start}
+     */
+    private static int skipString(byte[] bytes, int start, int length) {
+        for (int i = start + 1; i < length; i++) {
+            if (bytes[i] == '\\') {
+                i++;
+            } else if (bytes[i] == '"') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int from, int length) {
+        int i = from;
+        while (i < length && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\r' || bytes[i] == '\n')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after the (string, literal, object or array) value starting at {@code start}
+     */
+    private static int skipValue(byte[] bytes, int start, int length) {
+        if (start >= length) {
+            return length;
+        }
+        byte b = bytes[start];
+        if (b == '"') {
+            return skipString(bytes, start, length);
+        }
+        if (b == '{' || b == '[') {
+            int nesting = 0;
+            for (int i = start; i < length; i++) {
+                byte c = bytes[i];
+                if (c == '"') {
+                    i = skipString(bytes, i, length) - 1;
+                } else if (c == '{' || c == '[') {
+                    nesting++;
+                } else if ((c == '}' || c == ']') && --nesting == 0) {
+                    return i + 1;
+                }
+            }
+            return length;
+        }
+        int i = start;
+        while (i < length && bytes[i] != ',' && bytes[i] != '}' && bytes[i] != ']' && bytes[i] != ' ' && bytes[i] != '\n'
+                && bytes[i] != '\r' && bytes[i] != '\t') {
+            i++;
+        }
+        return i;
+    }
+}
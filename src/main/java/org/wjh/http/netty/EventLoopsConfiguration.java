@@ -0,0 +1,112 @@
+package org.wjh.http.netty;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import org.springframework.lang.Nullable;
+
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * The event loops of the Reactor Netty server and client: thread counts, native transport (epoll, where available),
+ * and whether the outbound (MAIN to SUB) connections share the loops of the inbound ones, or run on their own.
+ * <p>
+ * By default, both run on the global loops of Reactor Netty.
+ * <p>
+ * Also the cleartext HTTP/2 (h2c) of the server, next to HTTP/1.1 (by prior knowledge or upgrade), and of the client
+ * (by prior knowledge); HTTP/2 over TLS (h2) is the one of Spring Boot, {@code server.http2.enabled} with SSL.
+ */
+@Configuration(proxyBeanMethods = false)
+public class EventLoopsConfiguration {
+
+    @Bean
+    EventLoops eventLoops(@Value("${echo.netty.native:true}") boolean preferNative, //@formatter:off
+            @Value("${echo.netty.server.loop-threads:0}") int serverThreads,
+            @Value("${echo.netty.client.loops:shared}") String clientLoops,
+            @Value("${echo.netty.client.loop-threads:0}") int clientThreads) { //@formatter:on
+        return new EventLoops(preferNative, serverThreads, "separate".equalsIgnoreCase(clientLoops), clientThreads);
+    }
+
+    @Bean
+    NettyServerCustomizer eventLoopsServerCustomizer(EventLoops loops) {
+        return server -> loops.server == null ? server : server.tcpConfiguration(tcp -> tcp.runOn(loops.server, loops.preferNative));
+    }
+
+    @Bean
+    NettyServerCustomizer h2cServerCustomizer(@Value("${echo.http2.server:false}") boolean h2c) {
+        return server -> h2c ? server.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11) : server;
+    }
+
+    /**
+     * In place of the auto-configured connector, so as to run on the configured loops; the connection pool is still the
+     * one of the resource factory.
+     */
+    @Bean
+    ClientHttpConnector clientHttpConnector(ReactorResourceFactory resourceFactory, EventLoops loops,
+            @Value("${echo.http2.client:false}") boolean h2c) {
+        LoopResources clientLoops = loops.client();
+        return new ReactorClientHttpConnector(resourceFactory, client -> { //@formatter:off
+            HttpClient configured = h2c ? client.protocol(HttpProtocol.H2C) : client;
+            return clientLoops == null ? configured
+                    : configured.tcpConfiguration(tcp -> tcp.runOn(clientLoops, loops.preferNative));
+        }); //@formatter:on
+    }
+
+    /**
+     * The loop resources created as configured, {@code null} for the global ones; disposed with the context.
+     */
+    static class EventLoops implements DisposableBean {
+
+        private static final Logger logger = LoggerFactory.getLogger(EventLoops.class);
+
+        private final boolean preferNative;
+
+        @Nullable
+        private final LoopResources server;
+        @Nullable
+        private final LoopResources separateClient;
+        private final boolean separate;
+
+        EventLoops(boolean preferNative, int serverThreads, boolean separate, int clientThreads) {
+            this.preferNative = preferNative;
+            this.separate = separate;
+            this.server = serverThreads > 0 || !preferNative ? LoopResources.create("echo-server", 1, threads(serverThreads), true) : null;
+            this.separateClient = separate ? LoopResources.create("echo-client", threads(clientThreads), true) : null;
+
+            logger.info("Event loops: native={}, server threads={}, client loops={} (threads={})", //@formatter:off
+                    preferNative, serverThreads > 0 ? serverThreads : "default",
+                    separate ? "separate" : "shared", clientThreads > 0 ? clientThreads : "default"); //@formatter:on
+        }
+
+        private static int threads(int configured) {
+            return configured > 0 ? configured : LoopResources.DEFAULT_IO_WORKER_COUNT;
+        }
+
+        /**
+         * @return the loops of the client: the separate ones, or the ones of the server, or {@code null} for the global ones
+         */
+        @Nullable
+        LoopResources client() {
+            return separate ? separateClient : server;
+        }
+
+        @Override
+        public void destroy() {
+            if (server != null) {
+                server.dispose();
+            }
+            if (separateClient != null) {
+                separateClient.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.wjh.http.ratelimit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The heaviest keys of a stream in a fixed space, after the Space-Saving algorithm: {@code capacity} counters are kept,
+ * and a key without counter takes over the smallest one, inheriting its count as an error bound. Any key seen more than
+ * {@code total / capacity} times is kept, with a count over-estimated by at most its error.
+ * <p>
+ * The counters are kept in a Stream-Summary, i.e. in buckets of equal counts linked in increasing order, so that a
+ * counter is incremented, and the smallest one taken over, in constant time. The hits are not counted by the I/O threads
+ * into the sketch though: each thread adds them to a buffer of its own, folded into the sketch as the heaviest keys are
+ * read (e.g. by the periodic sweep), or by the thread itself once it holds {@code capacity} keys.
+ */
+final class HeavyHitters {
+
+    private final int capacity;
+
+    /** The counters by key, and the buckets from the smallest count, guarded by the map. */
+    private final Map<String, Counter> counters;
+    private Bucket smallest;
+
+    private final Queue<Hits> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Hits> hits = ThreadLocal.withInitial(() -> {
+        Hits hits = new Hits();
+        buffers.add(hits);
+        return hits;
+    });
+
+    HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    void add(String key, boolean rejected) {
+        Hits hits = this.hits.get();
+        synchronized (hits) {
+            // Uncontended but while the buffer is folded
+            long[] counts = hits.counts.get(key);
+            if (counts == null) {
+                if (hits.counts.size() >= capacity) {
+                    fold(hits);
+                }
+                counts = new long[2];
+                hits.counts.put(key, counts);
+            }
+            counts[0]++;
+            if (rejected) {
+                counts[1]++;
+            }
+        }
+    }
+
+    /**
+     * Fold the buffered hits into the sketch, under the lock of the buffer.
+     */
+    private void fold(Hits hits) {
+        synchronized (counters) {
+            for (Map.Entry<String, long[]> entry : hits.counts.entrySet()) {
+                long[] counts = entry.getValue();
+                count(entry.getKey(), counts[0], counts[1]);
+            }
+        }
+        hits.counts.clear();
+    }
+
+    private void count(String key, long count, long rejected) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(key);
+                counter.move(null, count, this);
+            } else {
+                counter = smallest.first;
+                counters.remove(counter.key);
+                counter.takeOver(key);
+                counter.move(counter.bucket, counter.bucket.count + count, this);
+            }
+            counters.put(key, counter);
+        } else {
+            counter.move(counter.bucket, counter.bucket.count + count, this);
+        }
+        counter.rejected += rejected;
+    }
+
+    /**
+     * @return the heaviest keys, heaviest first, once the buffered hits are folded into the sketch
+     */
+    List<Hitter> top(int n) {
+        for (Hits hits : buffers) {
+            synchronized (hits) {
+                fold(hits);
+            }
+        }
+        List<Hitter> hitters;
+        synchronized (counters) {
+            hitters = new ArrayList<>(counters.size());
+            for (Counter counter : counters.values()) {
+                hitters.add(new Hitter(counter.key, counter.bucket.count, counter.error, counter.rejected));
+            }
+        }
+        hitters.sort((one, other) -> Long.compare(other.count, one.count));
+        return hitters.subList(0, Math.min(n, hitters.size()));
+    }
+
+    /**
+     * The hits of a thread, by key: the count and the rejected count.
+     */
+    private static final class Hits {
+
+        final Map<String, long[]> counts = new HashMap<>();
+    }
+
+    /**
+     * The counters of a same count, linked in increasing order of counts.
+     */
+    private static final class Bucket {
+
+        final long count;
+        Bucket previous;
+        Bucket next;
+        Counter first;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    private static final class Counter {
+
+        String key;
+        long error;
+        long rejected;
+
+        Bucket bucket;
+        Counter previous;
+        Counter next;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+        void takeOver(String key) {
+            this.key = key;
+            this.error = bucket.count;
+            this.rejected = 0;
+        }
+
+        /**
+         * Move the counter from its bucket (if any) to the one of the count, looked up from there (else from the
+         * smallest): one step for a single hit.
+         */
+        void move(Bucket from, long count, HeavyHitters sketch) {
+            Bucket after = from;
+            if (from != null) {
+                after = from.first == this && next == null ? from.previous : from;
+                unlink(sketch);
+            } else if (sketch.smallest != null && sketch.smallest.count <= count) {
+                after = sketch.smallest;
+            }
+            Bucket following = after != null ? after.next : sketch.smallest;
+            while (following != null && following.count <= count) {
+                after = following;
+                following = following.next;
+            }
+            if (after == null || after.count != count) {
+                Bucket bucket = new Bucket(count);
+                bucket.previous = after;
+                bucket.next = following;
+                if (after != null) {
+                    after.next = bucket;
+                } else {
+                    sketch.smallest = bucket;
+                }
+                if (following != null) {
+                    following.previous = bucket;
+                }
+                after = bucket;
+            }
+            link(after);
+        }
+
+        private void unlink(HeavyHitters sketch) {
+            if (previous != null) {
+                previous.next = next;
+            } else {
+                bucket.first = next;
+            }
+            if (next != null) {
+                next.previous = previous;
+            }
+            previous = null;
+            next = null;
+            if (bucket.first == null) {
+                // The bucket is left empty
+                if (bucket.previous != null) {
+                    bucket.previous.next = bucket.next;
+                } else {
+                    sketch.smallest = bucket.next;
+                }
+                if (bucket.next != null) {
+                    bucket.next.previous = bucket.previous;
+                }
+            }
+            bucket = null;
+        }
+
+        private void link(Bucket bucket) {
+            this.bucket = bucket;
+            next = bucket.first;
+            if (next != null) {
+                next.previous = this;
+            }
+            bucket.first = this;
+        }
+    }
+
+    /**
+     * A heavy key: its estimated count of requests, over-estimated by at most the error, and its count of rejected
+     * requests since it is counted.
+     */
+    public static final class Hitter {
+
+        private final String key;
+        private final long count;
+        private final long error;
+        private final long rejected;
+
+        Hitter(String key, long count, long error, long rejected) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.rejected = rejected;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.wjh.http.ratelimit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * The heaviest keys of the rate limiting, with their estimated and rejected requests, e.g.
+ * {@code GET /actuator/ratelimit?limit=20}.
+ */
+@Component
+@ConditionalOnProperty(value = "http.ratelimit.enabled", havingValue = "true", matchIfMissing = false)
+@Endpoint(id = "ratelimit")
+public class RateLimitEndpoint {
+
+    private final RateLimitWebFilter rateLimit;
+
+    private RateLimitEndpoint(RateLimitWebFilter rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    @ReadOperation
+    public Map<String, Object> heavyHitters(@Nullable Integer limit) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("keys", rateLimit.keys());
+        result.put("heavyHitters", rateLimit.heavyHitters(limit != null ? limit : 10));
+        return result;
+    }
+}
@@ -0,0 +1,300 @@
+package org.wjh.http.ratelimit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.wjh.http.Route;
+import org.wjh.http.ratelimit.HeavyHitters.Hitter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.MultiGauge.Row;
+import io.micrometer.core.instrument.Tags;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Rate limiting of the inbound requests, with a {@link TokenBucket token bucket} per key: the client IP, the API key
+ * header (the IP if absent), the route, or a combination of them ({@code http.ratelimit.key}). A request over the limit
+ * of its key is answered with 429 and a {@code Retry-After}; every response carries the {@code RateLimit-Limit},
+ * {@code RateLimit-Remaining} and {@code RateLimit-Reset} headers.
+ * <p>
+ * The buckets are bounded to {@code http.ratelimit.max-keys}: the keys idle for {@code http.ratelimit.idle-timeout}
+ * are swept periodically, and the new keys share one overflow bucket while the map is full. The heaviest keys are
+ * tracked by a {@link HeavyHitters} sketch, exported as metrics and by the {@code ratelimit} endpoint; the API keys are
+ * only ever kept as a fingerprint.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(value = "http.ratelimit.enabled", havingValue = "true", matchIfMissing = false)
+public class RateLimitWebFilter implements WebFilter, Ordered, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitWebFilter.class);
+
+    static final String LIMIT = "RateLimit-Limit";
+    static final String REMAINING = "RateLimit-Remaining";
+    static final String RESET = "RateLimit-Reset";
+
+    enum KeyPart {
+        IP, HEADER, ROUTE
+    }
+
+    private final KeyPart[] keyParts;
+    private final String header;
+    private final List<Route> routes = new ArrayList<>();
+    private final List<Route> excluded = new ArrayList<>();
+
+    private final long intervalNanos;
+    private final int capacity;
+    private final String limit;
+    private final int maxKeys;
+    private final long idleNanos;
+    private final int topN;
+
+    private final ConcurrentHashMap<String, TokenBucket> buckets;
+    private final TokenBucket overflow;
+    private final HeavyHitters heavyHitters;
+
+    private final Counter allowed;
+    private final Counter rejected;
+    private final MultiGauge heavyHittersGauge;
+    private final Scheduler scheduler;
+    private final Disposable sweeping;
+
+    RateLimitWebFilter(@Value("${http.ratelimit.key:ip}") KeyPart[] keyParts, //@formatter:off
+            @Value("${http.ratelimit.header:X-API-Key}") String header,
+            @Value("${http.ratelimit.routes:}") String[] routes,
+            @Value("${http.ratelimit.excluded-routes:/actuator/**}") String[] excluded,
+            @Value("${http.ratelimit.rate:100}") double rate,
+            @Value("${http.ratelimit.burst:100}") int burst,
+            @Value("${http.ratelimit.max-keys:10000}") int maxKeys,
+            @Value("${http.ratelimit.idle-timeout:1m}") Duration idleTimeout,
+            @Value("${http.ratelimit.heavy-hitters:100}") int heavyHitters,
+            @Value("${http.ratelimit.top-n:10}") int topN,
+            MeterRegistry registry) { //@formatter:on
+
+        if (keyParts.length == 0) {
+            throw new IllegalArgumentException("No rate limit key");
+        }
+        if (rate <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate and the burst must be positive: " + rate + ", " + burst);
+        }
+        this.keyParts = keyParts;
+        this.header = header;
+        for (String spec : routes) {
+            if (!spec.trim().isEmpty()) {
+                this.routes.add(Route.parse(spec));
+            }
+        }
+        for (String spec : excluded) {
+            if (!spec.trim().isEmpty()) {
+                this.excluded.add(Route.parse(spec));
+            }
+        }
+
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.capacity = burst;
+        this.limit = Integer.toString(burst);
+        this.maxKeys = maxKeys;
+        this.idleNanos = idleTimeout.toNanos();
+        this.topN = topN;
+
+        long now = System.nanoTime();
+        this.buckets = new ConcurrentHashMap<>();
+        this.overflow = new TokenBucket(intervalNanos, capacity, now);
+        this.heavyHitters = new HeavyHitters(heavyHitters);
+
+        this.allowed = Counter.builder("http.ratelimit.requests").tag("outcome", "allowed").register(registry);
+        this.rejected = Counter.builder("http.ratelimit.requests").tag("outcome", "rejected").register(registry);
+        Gauge.builder("http.ratelimit.keys", buckets, ConcurrentHashMap::size).register(registry);
+        this.heavyHittersGauge = MultiGauge.builder("http.ratelimit.heavy-hitters").description("The estimated requests of the top keys")
+                .register(registry);
+
+        // The sweep of the idle keys and the refresh of the heavy hitters, off the I/O threads
+        long period = Math.max(1, idleTimeout.toMillis() / 2);
+        this.scheduler = Schedulers.newSingle("http-ratelimit", true);
+        this.sweeping = scheduler.schedulePeriodically(this::sweep, period, period, TimeUnit.MILLISECONDS);
+
+        logger.info("Rate limit: {} req/s, burst {}, per {}", rate, burst, keyName());
+    }
+
+    @Override
+    public int getOrder() {
+        // After the tracing filter (order=-1000), so that the rejections are logged and traced too
+        return -900;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        PathContainer path = Route.path(request.getURI());
+        for (Route route : excluded) {
+            if (route.matches(request.getMethod(), path)) {
+                return chain.filter(exchange);
+            }
+        }
+
+        String key = key(request, path);
+        long now = System.nanoTime();
+        TokenBucket bucket = bucket(key, now);
+        long acquired = bucket.tryAcquire(now);
+        heavyHitters.add(key, acquired < 0);
+
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set(LIMIT, limit);
+        headers.set(REMAINING, Long.toString(Math.max(0, acquired)));
+        headers.set(RESET, Long.toString(seconds(bucket.resetNanos(now))));
+        if (acquired >= 0) {
+            allowed.increment();
+            return chain.filter(exchange);
+        }
+
+        rejected.increment();
+        logger.debug("Rate limit exceeded by {}", key);
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(seconds(-acquired)));
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        return response.setComplete();
+    }
+
+    private TokenBucket bucket(String key, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys) {
+            return overflow;
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(intervalNanos, capacity, now));
+    }
+
+    private String key(ServerHttpRequest request, PathContainer path) {
+        StringBuilder key = new StringBuilder();
+        for (KeyPart part : keyParts) {
+            if (key.length() > 0) {
+                key.append(' ');
+            }
+            switch (part) {
+            case IP:
+                key.append(ip(request));
+                break;
+            case HEADER:
+                String apiKey = request.getHeaders().getFirst(header);
+                key.append(apiKey == null || apiKey.isEmpty() ? ip(request) : "key:" + fingerprint(apiKey));
+                break;
+            case ROUTE:
+                key.append(route(request, path));
+                break;
+            }
+        }
+        return key.toString();
+    }
+
+    private static String ip(ServerHttpRequest request) {
+        // The forwarded address, if the forwarded headers are honored (server.forward-headers-strategy)
+        InetSocketAddress address = request.getRemoteAddress();
+        if (address == null) {
+            return "unknown";
+        }
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    private String route(ServerHttpRequest request, PathContainer path) {
+        for (Route route : routes) {
+            if (route.matches(request.getMethod(), path)) {
+                return route.toString();
+            }
+        }
+        return "other";
+    }
+
+    /**
+     * @return a short fingerprint of the API key, so that the key itself is neither kept nor exported
+     */
+    private static String fingerprint(String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long seconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.idle(now, idleNanos));
+        if (before >= maxKeys) {
+            logger.info("Rate limit keys swept: {} of {} idle, the new keys were sharing the overflow bucket", before - buckets.size(),
+                    before);
+        }
+
+        List<Row<?>> rows = new ArrayList<>();
+        for (Hitter hitter : heavyHitters.top(topN)) {
+            rows.add(Row.of(Tags.of("key", hitter.getKey()), hitter.getCount()));
+        }
+        heavyHittersGauge.register(rows, true);
+    }
+
+    /**
+     * @return the heaviest keys, heaviest first
+     */
+    List<Hitter> heavyHitters(int n) {
+        return heavyHitters.top(n);
+    }
+
+    int keys() {
+        return buckets.size();
+    }
+
+    private String keyName() {
+        StringBuilder name = new StringBuilder();
+        for (KeyPart part : keyParts) {
+            name.append(name.length() > 0 ? "+" : "").append(part == KeyPart.HEADER ? header : part.name().toLowerCase(Locale.ROOT));
+        }
+        return name.toString();
+    }
+
+    @Override
+    public void destroy() {
+        sweeping.dispose();
+        scheduler.dispose();
+    }
+}
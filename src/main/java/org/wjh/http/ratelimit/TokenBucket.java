@@ -0,0 +1,58 @@
+package org.wjh.http.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, as the generic cell rate algorithm (GCRA): rather than a count of tokens refilled over
+ * time, the bucket holds the single instant at which it is full again (the theoretical arrival time), pushed forward
+ * by one emission interval per token taken, so that taking a token is one compare-and-set.
+ * <p>
+ * A bucket of capacity {@code c} refilled at {@code r} tokens per second allows bursts of {@code c} requests, and
+ * {@code r} requests per second sustained.
+ */
+final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+
+    /** The instant at which the bucket is full again, on the {@link System#nanoTime()} scale. */
+    private final AtomicLong fullAt;
+
+    TokenBucket(long intervalNanos, int capacity, long nowNanos) {
+        this.intervalNanos = intervalNanos;
+        this.capacityNanos = intervalNanos * capacity;
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * @return the tokens left once a token is taken ({@code >= 0}), or minus the nanos to wait for a token
+     *         ({@code < 0}) if the bucket is empty
+     */
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long wait = next - nowNanos - capacityNanos;
+            if (wait > 0) {
+                return -wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return (capacityNanos - (next - nowNanos)) / intervalNanos;
+            }
+        }
+    }
+
+    /**
+     * @return the nanos until the bucket is full again, 0 if it is
+     */
+    long resetNanos(long nowNanos) {
+        return Math.max(0, fullAt.get() - nowNanos);
+    }
+
+    /**
+     * @return whether the bucket is full since (at least) the idle time, i.e. unused
+     */
+    boolean idle(long nowNanos, long idleNanos) {
+        return nowNanos - fullAt.get() > idleNanos;
+    }
+}
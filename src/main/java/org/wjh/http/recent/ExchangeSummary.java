@@ -0,0 +1,101 @@
+package org.wjh.http.recent;
+
+import java.time.Instant;
+
+import org.springframework.lang.Nullable;
+import org.wjh.http.recent.RecentExchanges.Side;
+
+/**
+ * The summary of one recent exchange, as read out of the ring buffer.
+ */
+public class ExchangeSummary {
+
+    private final Side side;
+    private final long startMillis;
+    private final long durationNanos;
+    private final String method;
+    private final String uri;
+    private final int status;
+    private final long requestSize;
+    private final long responseSize;
+    @Nullable
+    private final String traceId;
+    private final String requestBody;
+    private final String responseBody;
+
+    ExchangeSummary(Side side, long startMillis, long durationNanos, String method, String uri, int status, long requestSize,
+            long responseSize, @Nullable String traceId, String requestBody, String responseBody) {
+        this.side = side;
+        this.startMillis = startMillis;
+        this.durationNanos = durationNanos;
+        this.method = method;
+        this.uri = uri;
+        this.status = status;
+        this.requestSize = requestSize;
+        this.responseSize = responseSize;
+        this.traceId = traceId;
+        this.requestBody = requestBody;
+        this.responseBody = responseBody;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public Instant getStart() {
+        return Instant.ofEpochMilli(startMillis);
+    }
+
+    public double getDurationMillis() {
+        return durationNanos / 1e6;
+    }
+
+    long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the size of the request body, or {@code -1} if unknown
+     */
+    public long getRequestSize() {
+        return requestSize;
+    }
+
+    /**
+     * @return the size of the response body, or {@code -1} if unknown
+     */
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    @Nullable
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * @return the start of the request body, as captured for logging
+     */
+    public String getRequestBody() {
+        return requestBody;
+    }
+
+    /**
+     * @return the start of the response body, as captured for logging
+     */
+    public String getResponseBody() {
+        return responseBody;
+    }
+}
@@ -0,0 +1,227 @@
+package org.wjh.http.recent;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.wjh.http.logging.impl.Redactor;
+
+/**
+ * A fixed-size ring buffer of the summaries of the last exchanges, fed by the server and client logging stages.
+ * <p>
+ * The slots (with their body buffers) are allocated upfront: recording an exchange claims the next slot with one atomic
+ * increment, then overwrites it under the (uncontended) write stamp of the slot; a slot still being written by a
+ * lapped writer is skipped rather than waited for. The queries read the slots optimistically, without blocking the
+ * writers, and drop any slot overwritten meanwhile.
+ * <p>
+ * The bodies are kept redacted by the {@link Redactor} of the logging, on a copy, whether or not the exchange was logged
+ * in full (e.g. only as a summary, in the triggered body mode).
+ */
+@Component
+@ConditionalOnProperty(value = "http.recent.enabled", havingValue = "true", matchIfMissing = false)
+public class RecentExchanges {
+
+    public enum Side {
+        SERVER, CLIENT
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final Redactor redactor;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * @param size
+     *            the number of exchanges kept, rounded up to a power of 2
+     * @param bodyLimit
+     *            the max number of bytes kept per body
+     */
+    @Autowired
+    RecentExchanges(@Value("${http.recent.size:1024}") int size, @Value("${http.recent.body-limit:256}") int bodyLimit, Redactor redactor) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(bodyLimit);
+        }
+        this.mask = capacity - 1;
+        this.redactor = redactor;
+    }
+
+    RecentExchanges(int size, int bodyLimit) {
+        this(size, bodyLimit, Redactor.NONE);
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return the number of exchanges not recorded, as their slot was still being written
+     */
+    public long skipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Record an exchange into the next slot.
+     *
+     * @param requestSize
+     *            the size of the request body, or {@code -1} if unknown
+     * @param responseSize
+     *            the size of the response body, or {@code -1} if unknown
+     * @param requestHeaders
+     *            the headers which tell how to redact the request body
+     * @param requestBody
+     *            the captured request body, kept redacted and truncated to the body limit
+     * @param responseBody
+     *            the captured response body, kept redacted and truncated to the body limit
+     */
+    public void record(Side side, long startMillis, long durationNanos, String method, URI uri, int status, //@formatter:off
+            long requestSize, long responseSize, @Nullable String traceId,
+            HttpHeaders requestHeaders, byte[] requestBody, HttpHeaders responseHeaders, byte[] responseBody) { //@formatter:on
+
+        long seq = sequence.getAndIncrement();
+        Slot slot = slots[(int) seq & mask];
+        long stamp = slot.lock.tryWriteLock();
+        if (stamp == 0) {
+            skipped.incrementAndGet();
+            return;
+        }
+        try {
+            slot.sequence = seq;
+            slot.side = side;
+            slot.startMillis = startMillis;
+            slot.durationNanos = durationNanos;
+            slot.method = method;
+            slot.uri = uri;
+            slot.status = status;
+            slot.requestSize = requestSize;
+            slot.responseSize = responseSize;
+            slot.traceId = traceId;
+            slot.requestBodyLength = redactor.redactedCopy(requestHeaders, requestBody, slot.requestBody);
+            slot.responseBodyLength = redactor.redactedCopy(responseHeaders, responseBody, slot.responseBody);
+        } finally {
+            slot.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the last exchanges, newest first, at most {@code limit}
+     */
+    public List<ExchangeSummary> latest(int limit) {
+        return select(summary -> true, null, limit);
+    }
+
+    /**
+     * @return the slowest of the kept exchanges, slowest first, at most {@code limit}
+     */
+    public List<ExchangeSummary> slowest(int limit) {
+        return select(summary -> true, Comparator.comparingLong(ExchangeSummary::getDurationNanos).reversed(), limit);
+    }
+
+    /**
+     * @return the last exchanges which failed (4xx or 5xx), newest first, at most {@code limit}
+     */
+    public List<ExchangeSummary> errors(int limit) {
+        return select(summary -> summary.getStatus() >= 400, null, limit);
+    }
+
+    /**
+     * @return the exchanges of the trace, newest first
+     */
+    public List<ExchangeSummary> byTraceId(String traceId) {
+        return select(summary -> traceId.equals(summary.getTraceId()), null, slots.length);
+    }
+
+    private List<ExchangeSummary> select(Predicate<ExchangeSummary> filter, @Nullable Comparator<ExchangeSummary> order, int limit) {
+        List<ExchangeSummary> selected = new ArrayList<>();
+        long last = sequence.get() - 1;
+        for (long seq = last; seq >= 0 && seq > last - slots.length; seq--) {
+            ExchangeSummary summary = read(slots[(int) seq & mask], seq);
+            if (summary != null && filter.test(summary)) {
+                selected.add(summary);
+                if (order == null && selected.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        if (order != null) {
+            selected.sort(order);
+        }
+        return selected.size() > limit ? new ArrayList<>(selected.subList(0, limit)) : selected;
+    }
+
+    /**
+     * @return the summary of the slot if it still holds the exchange of the sequence, or {@code null}
+     */
+    @Nullable
+    private static ExchangeSummary read(Slot slot, long seq) {
+        StampedLock lock = slot.lock;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0) {
+            return null; // being written
+        }
+
+        long sequence = slot.sequence;
+        Side side = slot.side;
+        long startMillis = slot.startMillis;
+        long durationNanos = slot.durationNanos;
+        String method = slot.method;
+        URI uri = slot.uri;
+        int status = slot.status;
+        long requestSize = slot.requestSize;
+        long responseSize = slot.responseSize;
+        String traceId = slot.traceId;
+        // The lengths are clamped, as they may be torn until validated
+        byte[] requestBody = new byte[Math.max(0, Math.min(slot.requestBodyLength, slot.requestBody.length))];
+        System.arraycopy(slot.requestBody, 0, requestBody, 0, requestBody.length);
+        byte[] responseBody = new byte[Math.max(0, Math.min(slot.responseBodyLength, slot.responseBody.length))];
+        System.arraycopy(slot.responseBody, 0, responseBody, 0, responseBody.length);
+
+        if (!lock.validate(stamp) || sequence != seq) {
+            return null; // overwritten meanwhile
+        }
+        return new ExchangeSummary(side, startMillis, durationNanos, method, uri.toString(), status, requestSize, responseSize, traceId,
+                new String(requestBody, UTF_8), new String(responseBody, UTF_8));
+    }
+
+    private static final class Slot {
+
+        final StampedLock lock = new StampedLock();
+
+        long sequence = -1;
+        Side side;
+        long startMillis;
+        long durationNanos;
+        String method;
+        URI uri;
+        int status;
+        long requestSize;
+        long responseSize;
+        String traceId;
+
+        final byte[] requestBody;
+        int requestBodyLength;
+        final byte[] responseBody;
+        int responseBodyLength;
+
+        Slot(int bodyLimit) {
+            this.requestBody = new byte[bodyLimit];
+            this.responseBody = new byte[bodyLimit];
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.wjh.http.recent;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * The recent exchanges, e.g. {@code GET /actuator/exchanges?filter=slowest&limit=10}, or
+ * {@code GET /actuator/exchanges?traceId=5af7183fb1d4cf5f}.
+ */
+@Component
+@ConditionalOnProperty(value = "http.recent.enabled", havingValue = "true", matchIfMissing = false)
+@Endpoint(id = "exchanges")
+public class RecentExchangesEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final RecentExchanges recentExchanges;
+
+    private RecentExchangesEndpoint(RecentExchanges recentExchanges) {
+        this.recentExchanges = recentExchanges;
+    }
+
+    /**
+     * @param filter
+     *            {@code latest} (by default), {@code slowest}, or {@code errors}
+     * @param traceId
+     *            the trace of the exchanges, which takes precedence over the filter
+     * @param limit
+     *            the max number of exchanges, 20 by default
+     */
+    @ReadOperation
+    public List<ExchangeSummary> exchanges(@Nullable String filter, @Nullable String traceId, @Nullable Integer limit) {
+        if (traceId != null) {
+            return recentExchanges.byTraceId(traceId);
+        }
+
+        int max = limit != null && limit > 0 ? limit : DEFAULT_LIMIT;
+        if (filter == null || "latest".equals(filter)) {
+            return recentExchanges.latest(max);
+        } else if ("slowest".equals(filter)) {
+            return recentExchanges.slowest(max);
+        } else if ("errors".equals(filter)) {
+            return recentExchanges.errors(max);
+        }
+        throw new InvalidEndpointRequestException("Unknown filter: " + filter, "The filter must be latest, slowest or errors");
+    }
+}
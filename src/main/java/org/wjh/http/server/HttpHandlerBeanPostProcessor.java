@@ -1,20 +1,42 @@
 package org.wjh.http.server;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.config.BeanPostProcessor;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.server.reactive.HttpHandler;
 import org.springframework.stereotype.Component;
+import org.wjh.http.capture.HttpCapture;
 import org.wjh.http.logging.HttpLogger;
+import org.wjh.http.logging.LoggingControl;
+import org.wjh.http.recent.RecentExchanges;
+import org.wjh.http.slo.LatencySlo;
+import org.wjh.http.stats.TrafficStats;
 
+/**
+ * Decorate the HTTP handlers with the logging stage, always: whether an exchange is logged is switched at runtime by the
+ * {@link LoggingControl}.
+ */
 @Component
-@ConditionalOnProperty(value = "server.http.logging", havingValue = "true", matchIfMissing = false)
 public class HttpHandlerBeanPostProcessor implements BeanPostProcessor {
 
-    private final HttpLogger httpLogger;
+    // Resolved only as a handler is decorated, so that the logger is not created (with its dependencies) at the
+    // registration of the post processors
+    private final ObjectProvider<HttpLogger> httpLogger;
+    private final ObjectProvider<LoggingControl> control;
+    private final ObjectProvider<HttpCapture> capture;
+    private final ObjectProvider<RecentExchanges> recentExchanges;
+    private final ObjectProvider<TrafficStats> trafficStats;
+    private final ObjectProvider<LatencySlo> latencySlo;
 
-    private HttpHandlerBeanPostProcessor(HttpLogger httpLogger) {
+    private HttpHandlerBeanPostProcessor(ObjectProvider<HttpLogger> httpLogger, ObjectProvider<LoggingControl> control,
+            ObjectProvider<HttpCapture> capture, ObjectProvider<RecentExchanges> recentExchanges,
+            ObjectProvider<TrafficStats> trafficStats, ObjectProvider<LatencySlo> latencySlo) {
         this.httpLogger = httpLogger;
+        this.control = control;
+        this.capture = capture;
+        this.recentExchanges = recentExchanges;
+        this.trafficStats = trafficStats;
+        this.latencySlo = latencySlo;
     }
 
     @Override
@@ -26,6 +48,7 @@ public class HttpHandlerBeanPostProcessor implements BeanPostProcessor {
     }
 
     private HttpHandler decorate(HttpHandler delegate) {
-        return new ServerHttpLoggingHandler(delegate, httpLogger);
+        return new ServerHttpLoggingHandler(delegate, httpLogger.getObject(), control.getObject(), capture.getIfAvailable(),
+                recentExchanges.getIfAvailable(), trafficStats.getIfAvailable(), latencySlo.getIfAvailable());
     }
 }
@@ -1,12 +1,9 @@
 package org.wjh.http.server;
 
-import static org.wjh.http.logging.HttpLogger.EMPTY_BODY_MONO;
 import static org.wjh.http.logging.HttpLogger.MessageDirection.Inbound;
 import static org.wjh.http.logging.HttpLogger.MessageDirection.Outbound;
 import static org.wjh.tracing.TracingUtils.executeInContext;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,153 +16,323 @@ import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.lang.Nullable;
-import org.springframework.util.Assert;
+import org.wjh.http.capture.HttpCapture;
+import org.wjh.http.capture.HttpCapture.ExchangeCapture;
+import org.wjh.http.logging.ExchangeState;
 import org.wjh.http.logging.HttpLogger;
+import org.wjh.http.logging.HttpLogger.BodyMode;
+import org.wjh.http.logging.HttpLogger.MessageDirection;
+import org.wjh.http.logging.LoggingControl;
+import org.wjh.http.logging.LoggingControl.Direction;
+import org.wjh.http.logging.LoggingControl.Mode;
+import org.wjh.http.logging.Protocol;
 import org.wjh.http.logging.WiretapRecorder;
-import org.wjh.tracing.TracingUtils.TracingContext;
+import org.wjh.http.recent.RecentExchanges;
+import org.wjh.http.recent.RecentExchanges.Side;
+import org.wjh.http.slo.LatencySlo;
+import org.wjh.http.stats.TrafficStats;
 
 import brave.Span;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/**
+ * The single server logging stage: when an exchange should be logged, one {@link LoggingExchange} owns its lifecycle
+ * (tracing context, request and response decorators, wiretaps and state); otherwise nothing is allocated, but for the
+ * completion callback of the traffic statistics and the latency SLO (if enabled).
+ */
 class ServerHttpLoggingHandler implements HttpHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ServerHttpLoggingHandler.class);
 
     private final HttpHandler delegate;
     private final HttpLogger httpLogger;
+    private final LoggingControl control;
+
+    @Nullable
+    private final HttpCapture capture;
+    @Nullable
+    private final RecentExchanges recentExchanges;
+    @Nullable
+    private final TrafficStats trafficStats;
+    @Nullable
+    private final LatencySlo latencySlo;
 
     ServerHttpLoggingHandler(HttpHandler delegate, HttpLogger httpLogger) {
+        this(delegate, httpLogger, LoggingControl.of(Mode.BODIES, Mode.BODIES), null, null, null, null);
+    }
+
+    /**
+     * @param control
+     *            the runtime switch of the logging, read once per exchange
+     * @param capture
+     *            the capture which the logged exchanges are recorded into, or {@code null} if not capturing
+     * @param recentExchanges
+     *            the ring buffer which the summaries of the logged exchanges are recorded into, or {@code null}
+     * @param trafficStats
+     *            the statistics which all the exchanges (logged or not) are recorded into, or {@code null}
+     * @param latencySlo
+     *            the latency SLO which all the exchanges (logged or not) are recorded against, or {@code null}
+     */
+    ServerHttpLoggingHandler(HttpHandler delegate, HttpLogger httpLogger, LoggingControl control, @Nullable HttpCapture capture,
+            @Nullable RecentExchanges recentExchanges, @Nullable TrafficStats trafficStats, @Nullable LatencySlo latencySlo) {
         this.delegate = delegate;
         this.httpLogger = httpLogger;
+        this.control = control;
+        this.capture = capture;
+        this.recentExchanges = recentExchanges;
+        this.trafficStats = trafficStats;
+        this.latencySlo = latencySlo;
     }
 
     @Override
     public Mono<Void> handle(ServerHttpRequest request, ServerHttpResponse response) {
-        boolean shouldLog = httpLogger.shouldLog(request.getMethod(), request.getURI());
-        if (shouldLog) {
-            TracingContext context = new TracingContext();
-            return delegate.handle(new LoggingServerHttpRequest(request, context), new LoggingServerHttpResponse(response, context));
+        Mode mode = control.modeOf(Direction.SERVER, request.getMethod(), request.getURI());
+        if (mode != Mode.OFF && httpLogger.shouldLog(request.getMethod(), request.getURI())) {
+            LoggingExchange exchange = new LoggingExchange(request, response, mode == Mode.BODIES);
+            return delegate.handle(exchange.request, exchange.response).doFinally(signal -> exchange.request.completeRecording());
+        } else if (trafficStats != null || latencySlo != null) {
+            return handleCounted(request, response);
         } else {
             return delegate.handle(request, response);
         }
     }
 
-    private void logRequest(LoggingServerHttpRequest request) {
-        logger.trace("Calling logRequest({}) ...", request);
+    /**
+     * Record a not logged exchange into the statistics, with the body sizes as per the {@code Content-Length} headers,
+     * and against the latency SLO.
+     */
+    private Mono<Void> handleCounted(ServerHttpRequest request, ServerHttpResponse response) {
+        long start = System.nanoTime();
+        return delegate.handle(request, response).doFinally(signal -> {
+            int status = statusOf(response).value();
+            long durationNanos = System.nanoTime() - start;
+            if (trafficStats != null) {
+                trafficStats.record(Inbound, request.getMethod(), request.getURI(), status, durationNanos,
+                        request.getHeaders().getContentLength(), response.getHeaders().getContentLength());
+            }
+            if (latencySlo != null) {
+                latencySlo.record(Inbound, request.getMethod(), request.getURI(), status, durationNanos);
+            }
+        });
+    }
 
-        HttpHeaders headers = request.getHeaders();
-        boolean shouldLogBody = httpLogger.shouldLogRequestBody(request.getMethod(), headers);
-        Mono<byte[]> bodyMono = shouldLogBody ? request.getRecorder().getContent().checkpoint("LoggingServerHttpRequest") : EMPTY_BODY_MONO;
+    private void logRequest(LoggingServerHttpRequest request, Protocol protocol, byte[] body) {
+        logger.trace("Calling logRequest({}) ...", request);
 
-        bodyMono.subscribe(body -> executeInContext(request.getTracingContext(), //@formatter:off
-                () -> httpLogger.logRequest(Inbound, request.getMethod().name(), request.getURI(), headers, body)
-                )); //@formatter:on
+        httpLogger.logRequest(Inbound, request.getMethod().name(), request.getURI(), protocol, request.getHeaders(), body);
     }
 
-    private void logResponse(LoggingServerHttpResponse response) {
+    private void logResponse(LoggingServerHttpResponse response, Protocol protocol, byte[] body) {
         logger.trace("Calling logResponse({}) ...", response);
 
-        HttpStatus status = response.getStatusCode();
-        HttpHeaders headers = response.getHeaders();
-        boolean shouldLogBody = httpLogger.shouldLogResponseBody(status.value(), headers);
-        Mono<byte[]> bodyMono = shouldLogBody ? response.getRecorder().getContent().checkpoint("LoggingServerHttpResponse") : EMPTY_BODY_MONO;
+        HttpStatus status = statusOf(response);
+        httpLogger.logResponse(Outbound, protocol, status.value(), status.getReasonPhrase(), response.getHeaders(), body);
+    }
 
-        bodyMono.subscribe(body -> executeInContext(response.getTracingContext(), //@formatter:off
-                () -> httpLogger.logResponse(Outbound, status.value(), status.getReasonPhrase(), headers, body)
-                )); //@formatter:on
+    private static HttpStatus statusOf(ServerHttpResponse response) {
+        HttpStatus status = response.getStatusCode();
+        return status != null ? status : HttpStatus.OK; // not set means 200
     }
 
-    class LoggingServerHttpRequest extends ServerHttpRequestDecorator {
+    /**
+     * Per-exchange logging state, which is also the tracing context shared by the request and response decorators.
+     */
+    class LoggingExchange extends ExchangeState {
 
-        private final TracingContext context;
+        private final LoggingServerHttpRequest request;
+        private final LoggingServerHttpResponse response;
 
-        private final WiretapRecorder recorder;
+        @Nullable
+        private final ExchangeCapture capture;
+
+        private final boolean bodies;
+
+        /** The protocol of the request, which the response shares (on the same HTTP/2 stream). */
+        private final Protocol protocol;
+
+        /**
+         * @param bodies
+         *            whether the bodies are logged, or the message heads only
+         */
+        LoggingExchange(ServerHttpRequest request, ServerHttpResponse response, boolean bodies) {
+            this.bodies = bodies;
+            this.protocol = Protocol.of(request.getHeaders(), Protocol.HTTP_1_1);
+            this.capture = ServerHttpLoggingHandler.this.capture != null ? ServerHttpLoggingHandler.this.capture.start(request) : null;
+            this.request = new LoggingServerHttpRequest(request, this);
+            this.response = new LoggingServerHttpResponse(response, this);
+        }
 
-        public LoggingServerHttpRequest(ServerHttpRequest delegate, TracingContext context) {
-            super(delegate);
-            this.context = context;
-            this.recorder = new WiretapRecorder(super.getBody(), null);
+        /**
+         * Bind the span (if any) of the exchange, then the request is logged once its body (if recorded) is complete.
+         */
+        void triggerRequestLogging(@Nullable Span span) {
+            this.span = span;
+            headersWritten(REQUEST);
         }
 
-        public TracingContext getTracingContext() {
-            return context;
+        /**
+         * @return the recorder tapping into the response body, or {@code null} if the body should not be recorded
+         */
+        @Nullable
+        private WiretapRecorder triggerResponseLogging(@Nullable Publisher<? extends DataBuffer> publisher,
+                @Nullable Publisher<? extends Publisher<? extends DataBuffer>> nestedPublisher) {
+
+            if (!headersWritten(RESPONSE)) {
+                logger.debug("Suppressed to trigger response logging more than once.");
+                return null;
+            }
+
+            boolean hasBody = publisher != null || nestedPublisher != null;
+            if (hasBody && bodies && httpLogger.shouldLogResponseBody(statusOf(response).value(), response.getHeaders())) {
+                return recordBody(RESPONSE, response.getHeaders().getContentLength(), publisher, nestedPublisher, httpLogger);
+            }
+
+            noBody(RESPONSE);
+            return null;
         }
 
-        public WiretapRecorder getRecorder() {
-            return recorder;
+        @Override
+        protected void log(int message, byte[] body) {
+            if (httpLogger.bodyMode() == BodyMode.TRIGGERED) {
+                return; // the exchange is logged as a whole once complete
+            }
+            if (message == REQUEST) {
+                executeInContext(this, () -> logRequest(request, protocol, body));
+            } else {
+                executeInContext(this, () -> logResponse(response, protocol, body));
+            }
         }
 
         @Override
-        public Flux<DataBuffer> getBody() {
-            logger.trace("Calling getBody() ...");
+        protected void exchangeLogged() {
+            int status = statusOf(response).value();
+            if (httpLogger.bodyMode() == BodyMode.TRIGGERED) {
+                executeInContext(this, () -> logTriggered(status));
+            }
+            if (capture != null) {
+                if (httpLogger.bodyMode() == BodyMode.DIGEST) {
+                    // A digest is no body to be replayed
+                    capture.complete(traceId(), HttpLogger.EMPTY_BODY, status, HttpLogger.EMPTY_BODY, durationNanos());
+                } else {
+                    capture.complete(traceId(), capturedBody(REQUEST), status, capturedBody(RESPONSE), durationNanos());
+                }
+            }
+            if (recentExchanges != null) {
+                // A digest is no payload to be redacted
+                boolean digest = httpLogger.bodyMode() == BodyMode.DIGEST;
+                recentExchanges.record(Side.SERVER, startMillis, durationNanos(), request.getMethodValue(), request.getURI(), status,
+                        bodySize(REQUEST, request.getHeaders()), bodySize(RESPONSE, response.getHeaders()), traceId(),
+                        digest ? HttpHeaders.EMPTY : request.getHeaders(), capturedBody(REQUEST),
+                        digest ? HttpHeaders.EMPTY : response.getHeaders(), capturedBody(RESPONSE));
+            }
+            if (trafficStats != null) {
+                trafficStats.record(Inbound, request.getMethod(), request.getURI(), status, durationNanos(),
+                        bodySize(REQUEST, request.getHeaders()), bodySize(RESPONSE, response.getHeaders()));
+            }
+            if (latencySlo != null) {
+                latencySlo.record(Inbound, request.getMethod(), request.getURI(), status, durationNanos());
+            }
+        }
 
-            return Flux.from(recorder.getPublisher());
+        private void logTriggered(int status) {
+            long durationNanos = durationNanos();
+            if (httpLogger.shouldLogInFull(Inbound, request.getMethod(), request.getURI(), status, durationNanos)) {
+                logRequest(request, protocol, capturedBody(REQUEST));
+                logResponse(response, protocol, capturedBody(RESPONSE));
+            } else {
+                httpLogger.logSummary(Inbound, request.getMethodValue(), request.getURI(), protocol, status, durationNanos,
+                        bodySize(REQUEST, request.getHeaders()), bodySize(RESPONSE, response.getHeaders()));
+            }
         }
 
-        public void triggerLogging(Span span) {
-            context.span = span;
-            executeInContext(context, () -> logRequest(this));
+        @Override
+        protected void logChunk(int message, int sequence, byte[] chunk) {
+            MessageDirection dir = message == REQUEST ? Inbound : Outbound;
+            HttpHeaders headers = message == REQUEST ? request.getHeaders() : response.getHeaders();
+            executeInContext(this, () -> httpLogger.logBodyChunk(dir, traceId(), sequence, headers, chunk));
+        }
+
+        @Override
+        protected void logTrailer(int message, int chunks, long totalBytes, long loggedBytes) {
+            MessageDirection dir = message == REQUEST ? Inbound : Outbound;
+            executeInContext(this, () -> httpLogger.logBodyTrailer(dir, traceId(), chunks, totalBytes, loggedBytes));
         }
     }
 
-    class LoggingServerHttpResponse extends ServerHttpResponseDecorator {
+    class LoggingServerHttpRequest extends ServerHttpRequestDecorator {
 
-        private final TracingContext context;
+        private final LoggingExchange exchange;
 
         @Nullable
-        private WiretapRecorder recorder;
+        private final WiretapRecorder recorder;
 
-        public LoggingServerHttpResponse(ServerHttpResponse delegate, TracingContext context) {
+        LoggingServerHttpRequest(ServerHttpRequest delegate, LoggingExchange exchange) {
             super(delegate);
-            this.context = context;
+            this.exchange = exchange;
+
+            if (exchange.bodies && httpLogger.shouldLogRequestBody(delegate.getMethod(), delegate.getHeaders())) {
+                this.recorder = exchange.recordBody(ExchangeState.REQUEST, delegate.getHeaders().getContentLength(), delegate.getBody(), null,
+                        httpLogger);
+            } else {
+                this.recorder = null;
+                exchange.noBody(ExchangeState.REQUEST);
+            }
         }
 
-        public TracingContext getTracingContext() {
-            return context;
+        public LoggingExchange getExchange() {
+            return exchange;
         }
 
-        public WiretapRecorder getRecorder() {
-            Assert.notNull(recorder, "No Wiretap: was the client request written?");
-            return recorder;
+        /**
+         * The request is still logged if the handling is done without consuming the body, e.g. rejected upfront.
+         */
+        void completeRecording() {
+            if (recorder != null) {
+                recorder.complete();
+            }
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            logger.trace("Calling getBody() ...");
+
+            return recorder != null ? Flux.from(recorder.getPublisher()) : super.getBody();
+        }
+    }
+
+    class LoggingServerHttpResponse extends ServerHttpResponseDecorator {
+
+        private final LoggingExchange exchange;
+
+        LoggingServerHttpResponse(ServerHttpResponse delegate, LoggingExchange exchange) {
+            super(delegate);
+            this.exchange = exchange;
         }
 
         @Override
         public Mono<Void> writeWith(Publisher<? extends DataBuffer> publisher) {
             logger.trace("Calling writeWith({}) ...", publisher);
 
-            recorder = new WiretapRecorder(publisher, null);
-            triggerLogging();
-            return super.writeWith(recorder.getPublisher());
+            WiretapRecorder recorder = exchange.triggerResponseLogging(publisher, null);
+            return super.writeWith(recorder != null ? recorder.getPublisher() : publisher);
         }
 
         @Override
         public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> publisher) {
             logger.trace("Calling writeAndFlushWith({}) ...", publisher);
 
-            recorder = new WiretapRecorder(null, publisher);
-            triggerLogging();
-            return super.writeAndFlushWith(recorder.getNestedPublisher());
+            WiretapRecorder recorder = exchange.triggerResponseLogging(null, publisher);
+            return super.writeAndFlushWith(recorder != null ? recorder.getNestedPublisher() : publisher);
         }
 
         @Override
         public Mono<Void> setComplete() {
             logger.trace("Calling setComplete() ...");
 
-            recorder = new WiretapRecorder(null, null);
-            triggerLogging();
+            exchange.triggerResponseLogging(null, null);
             return super.setComplete();
         }
-
-        private AtomicInteger triggeredCount = new AtomicInteger(0);
-
-        private void triggerLogging() {
-            if (triggeredCount.getAndIncrement() == 0) {
-                executeInContext(context, () -> logResponse(this));
-            } else {
-                logger.debug("Suppressed to trigger logging (Triggered Count: {}).", triggeredCount.get());
-            }
-        }
     }
 
 }
@@ -0,0 +1,95 @@
+package org.wjh.http.server;
+
+import static org.wjh.tracing.TracingUtils.traceparent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.wjh.http.server.ServerHttpLoggingHandler.LoggingExchange;
+import org.wjh.http.server.ServerHttpLoggingHandler.LoggingServerHttpRequest;
+
+import brave.Span;
+import brave.Tracer;
+import brave.propagation.TraceContext;
+import reactor.core.publisher.Mono;
+
+/**
+ * Combined trace and logging filter: looks up the current span once per exchange, triggers the request logging (if the
+ * request is decorated for logging), and injects the trace headers into the response.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ServerHttpTracingWebFilter implements WebFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerHttpTracingWebFilter.class);
+
+    static final String TRACE_ID = "X-B3-TraceId";
+    static final String TRACEPARENT = "traceparent";
+
+    private final Tracer tracer;
+
+    private final boolean b3Header;
+    private final boolean w3cHeader;
+
+    ServerHttpTracingWebFilter(Tracer tracer, @Value("${server.http.trace.headers:b3}") String[] headerFormats) {
+        this.tracer = tracer;
+
+        boolean b3 = false, w3c = false;
+        for (String format : headerFormats) {
+            b3 |= "b3".equalsIgnoreCase(format.trim());
+            w3c |= "w3c".equalsIgnoreCase(format.trim());
+        }
+        this.b3Header = b3;
+        this.w3cHeader = w3c;
+    }
+
+    @Override
+    public int getOrder() {
+        // On the way in, the filter should be after the content decryption filter (if any), and prior to spring.security.filter (order=-100)
+        // On the way out, the filter is not applicable
+        return -1000;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // The span is put in scope when the Sleuth TraceWebFilter subscribes, not when the chain is assembled
+        return chain.filter(exchange).doOnSubscribe(s -> onSubscribe(exchange));
+    }
+
+    private void onSubscribe(ServerWebExchange exchange) {
+        Span span = tracer.currentSpan();
+        String traceId = null;
+
+        ServerHttpRequest request = exchange.getRequest();
+        if (request instanceof LoggingServerHttpRequest) {
+            LoggingExchange logging = ((LoggingServerHttpRequest) request).getExchange();
+            logging.triggerRequestLogging(span);
+            traceId = logging.traceId();
+        }
+
+        if (span == null) {
+            logger.trace("No current span (unsampled or excluded path), skipped injecting trace headers.");
+            return;
+        }
+
+        TraceContext context = span.context();
+        injectTraceHeaders(exchange.getResponse().getHeaders(), context, traceId == null ? context.traceIdString() : traceId);
+    }
+
+    private void injectTraceHeaders(HttpHeaders headers, TraceContext context, String traceId) {
+        if (b3Header) {
+            headers.set(TRACE_ID, traceId);
+        }
+        if (w3cHeader) {
+            headers.set(TRACEPARENT, traceparent(context, traceId));
+        }
+    }
+}
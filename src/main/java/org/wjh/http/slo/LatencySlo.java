@@ -0,0 +1,233 @@
+package org.wjh.http.slo;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.wjh.http.Route;
+import org.wjh.http.logging.HttpLogger.MessageDirection;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Per-route latency SLO tracking, which tells the slow exchanges apart: those over the latency threshold of their route,
+ * or over the adaptive p99 of their route (as of the last window, once enough samples are seen).
+ * <p>
+ * The routes are configured as {@code [METHOD ]pattern=threshold}, e.g. {@code GET /echo=800ms,/echo/**=1s}, in the
+ * order of precedence; the other inbound exchanges fall into the {@code other} route, and all the outbound exchanges
+ * into the {@code client} route, both with the default threshold. Each route keeps a histogram per window; at the end of
+ * a window, its p99 becomes the adaptive threshold, and its share of bad exchanges against the error budget of the
+ * objective becomes the burn rate.
+ * <p>
+ * Only the exchanges over the configured threshold, and the 5xx, are bad: about 1% of the exchanges are over the p99 by
+ * definition, so the adaptive threshold only tells which exchanges to look into (e.g. to log in full), and burns no
+ * budget.
+ * <p>
+ * Off unless {@code http.slo.enabled=true}: without it, the exchanges are not timed unless logged, and only the failed
+ * ones are logged in full in the {@code TRIGGERED} body mode.
+ */
+@Component
+@ConditionalOnProperty(value = "http.slo.enabled", havingValue = "true", matchIfMissing = false)
+public class LatencySlo {
+
+    private static final Logger logger = LoggerFactory.getLogger(LatencySlo.class);
+
+    private final List<RouteState> routes = new ArrayList<>();
+    private final RouteState other;
+    private final RouteState client;
+
+    private final double errorBudget;
+    private final long windowNanos;
+    private final long minSamples;
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    LatencySlo(@Value("${http.slo.routes:}") String[] routes, //@formatter:off
+            @Value("${http.slo.default-threshold:500ms}") Duration defaultThreshold,
+            @Value("${http.slo.objective:0.99}") double objective,
+            @Value("${http.slo.window:1m}") Duration window,
+            @Value("${http.slo.adaptive-min-samples:100}") long minSamples,
+            MeterRegistry registry) { //@formatter:on
+        this(routes, defaultThreshold, objective, window, minSamples, registry, System::nanoTime);
+    }
+
+    LatencySlo(String[] routes, Duration defaultThreshold, double objective, Duration window, long minSamples, MeterRegistry registry,
+            LongSupplier nanoClock) {
+
+        if (objective <= 0 || objective >= 1) {
+            throw new IllegalArgumentException("The SLO objective must be within (0, 1): " + objective);
+        }
+        this.errorBudget = 1 - objective;
+        this.windowNanos = window.toNanos();
+        this.minSamples = minSamples;
+        this.nanoClock = nanoClock;
+
+        for (String spec : routes) {
+            if (spec.trim().isEmpty()) {
+                continue;
+            }
+            int eq = spec.lastIndexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("A route must be [METHOD ]pattern=threshold: " + spec);
+            }
+            Duration threshold = DurationStyle.detectAndParse(spec.substring(eq + 1).trim());
+            this.routes.add(new RouteState(Route.parse(spec.substring(0, eq)), threshold.toNanos(), registry));
+        }
+        this.other = new RouteState("other", defaultThreshold.toNanos(), registry);
+        this.client = new RouteState("client", defaultThreshold.toNanos(), registry);
+
+        logger.info("Latency SLO: {} route(s), default threshold {}, objective {}", this.routes.size(), defaultThreshold, objective);
+    }
+
+    /**
+     * Record a completed exchange against its route, whether it is logged or not.
+     */
+    public void record(MessageDirection dir, HttpMethod method, URI uri, int statusCode, long durationNanos) {
+        route(dir, method, uri).record(statusCode, durationNanos);
+    }
+
+    /**
+     * @return {@code true} if the exchange is slow, i.e. over the threshold or the adaptive p99 (as of the last window) of
+     *         its route
+     */
+    public boolean isSlow(MessageDirection dir, HttpMethod method, URI uri, long durationNanos) {
+        RouteState state = route(dir, method, uri);
+        return durationNanos > state.thresholdNanos || durationNanos > state.adaptiveThresholdNanos;
+    }
+
+    private RouteState route(MessageDirection dir, HttpMethod method, URI uri) {
+        if (dir == MessageDirection.Outbound) {
+            return client;
+        }
+        if (routes.isEmpty()) {
+            return other;
+        }
+        PathContainer path = Route.path(uri);
+        for (RouteState state : routes) {
+            if (state.route.matches(method, path)) {
+                return state;
+            }
+        }
+        return other;
+    }
+
+    /**
+     * The state of a route: the histogram and counts of the current window, and the outcome of the last window.
+     */
+    private class RouteState {
+
+        @Nullable
+        final Route route;
+        final String name;
+        final long thresholdNanos;
+
+        final AtomicReference<Window> window;
+
+        volatile long adaptiveThresholdNanos = Long.MAX_VALUE;
+        volatile double burnRate;
+
+        final Counter good;
+        final Counter slow;
+        final Counter failed;
+
+        RouteState(Route route, long thresholdNanos, MeterRegistry registry) {
+            this(route, route.toString(), thresholdNanos, registry);
+        }
+
+        /**
+         * The {@code other} (inbound) or {@code client} (outbound) route.
+         */
+        RouteState(String name, long thresholdNanos, MeterRegistry registry) {
+            this(null, name, thresholdNanos, registry);
+        }
+
+        private RouteState(@Nullable Route route, String name, long thresholdNanos, MeterRegistry registry) {
+            this.route = route;
+            this.name = name;
+            this.thresholdNanos = thresholdNanos;
+            this.window = new AtomicReference<>(new Window(nanoClock.getAsLong()));
+
+            this.good = Counter.builder("http.slo.requests").tag("route", name).tag("outcome", "good").register(registry);
+            this.slow = Counter.builder("http.slo.requests").tag("route", name).tag("outcome", "slow").register(registry);
+            this.failed = Counter.builder("http.slo.requests").tag("route", name).tag("outcome", "failed").register(registry);
+            Gauge.builder("http.slo.burn.rate", this, state -> state.burnRate).tag("route", name).register(registry);
+            Gauge.builder("http.slo.adaptive.threshold", this, state -> state.adaptiveThresholdSeconds()).tag("route", name)
+                    .baseUnit("seconds").register(registry);
+        }
+
+        void record(int statusCode, long durationNanos) {
+            Window current = currentWindow();
+            current.histogram.record(NANOSECONDS.toMicros(durationNanos));
+
+            if (statusCode >= 500) {
+                failed.increment();
+                current.bad.incrementAndGet();
+            } else if (durationNanos > thresholdNanos) {
+                slow.increment();
+                current.bad.incrementAndGet();
+            } else {
+                good.increment();
+            }
+        }
+
+        private Window currentWindow() {
+            Window current = window.get();
+            long now = nanoClock.getAsLong();
+            if (now - current.start < windowNanos) {
+                return current;
+            }
+
+            Window next = new Window(now);
+            if (!window.compareAndSet(current, next)) {
+                return window.get();
+            }
+            // Closing the window: the values recorded into it meanwhile are on a best effort basis
+            long count = current.histogram.count();
+            if (count >= minSamples) {
+                adaptiveThresholdNanos = MICROSECONDS.toNanos(current.histogram.percentile(0.99));
+            }
+            burnRate = count == 0 ? 0 : current.bad.get() / (double) count / errorBudget;
+            if (burnRate > 1) {
+                logger.info("SLO of route '{}' burning at {}x the budget ({} of {} exchange(s) bad)", name,
+                        String.format(Locale.ROOT, "%.1f", burnRate), current.bad.get(), count);
+            }
+            return next;
+        }
+
+        double adaptiveThresholdSeconds() {
+            long threshold = adaptiveThresholdNanos;
+            return threshold == Long.MAX_VALUE ? Double.NaN : threshold / 1e9;
+        }
+    }
+
+    private static class Window {
+
+        final long start;
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicLong bad = new AtomicLong();
+
+        Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.wjh.http.stats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Fetch the traffic statistics of several instances (e.g. MAIN and SUB), merge them per route, and report the
+ * fleet-wide status counts, latency and body size percentiles.
+ * <p>
+ * Usage: {@code FleetStats <base-url>...}, e.g. {@code FleetStats http://localhost:8080 http://localhost:8081}.
+ */
+public class FleetStats {
+
+    private static final Logger logger = LoggerFactory.getLogger(FleetStats.class);
+
+    private static final ParameterizedTypeReference<List<RouteSnapshot>> ROUTES = new ParameterizedTypeReference<List<RouteSnapshot>>() {
+    };
+
+    private final WebClient client;
+
+    FleetStats(WebClient client) {
+        this.client = client;
+    }
+
+    Collection<RouteSnapshot> fetch(List<String> baseUrls) {
+        List<List<RouteSnapshot>> nodes = Flux.fromIterable(baseUrls) //@formatter:off
+                .flatMapSequential(baseUrl -> client.get().uri(baseUrl + "/actuator/trafficstats").retrieve().bodyToMono(ROUTES))
+                .collectList()
+                .block(); //@formatter:on
+        return merge(nodes != null ? nodes : new ArrayList<>());
+    }
+
+    /**
+     * @return the routes of all the nodes, merged by name, in the order first seen
+     */
+    static Collection<RouteSnapshot> merge(List<List<RouteSnapshot>> nodes) {
+        Map<String, RouteSnapshot> routes = new LinkedHashMap<>();
+        for (List<RouteSnapshot> node : nodes) {
+            for (RouteSnapshot route : node) {
+                routes.merge(route.getRoute(), route, RouteSnapshot::merge);
+            }
+        }
+        return routes.values();
+    }
+
+    static void report(Collection<RouteSnapshot> routes) {
+        for (RouteSnapshot route : routes) {
+            logger.info("{}: {}; latency (ms) p50 {}, p90 {}, p99 {}; request size p50 {}, p99 {}; response size p50 {}, p99 {}",
+                    route.getRoute(), route.getStatuses(), //@formatter:off
+                    millis(route.getLatencies().quantile(0.5)), millis(route.getLatencies().quantile(0.9)),
+                    millis(route.getLatencies().quantile(0.99)),
+                    bytes(route.getRequestSizes().quantile(0.5)), bytes(route.getRequestSizes().quantile(0.99)),
+                    bytes(route.getResponseSizes().quantile(0.5)), bytes(route.getResponseSizes().quantile(0.99))); //@formatter:on
+        }
+    }
+
+    private static String millis(double micros) {
+        return Double.isNaN(micros) ? "-" : String.format(Locale.ROOT, "%.3f", micros / 1e3);
+    }
+
+    private static String bytes(double bytes) {
+        return Double.isNaN(bytes) ? "-" : String.format(Locale.ROOT, "%.0f", bytes);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: FleetStats <base-url>...");
+            System.exit(2);
+        }
+        List<String> baseUrls = new ArrayList<>();
+        for (String arg : args) {
+            baseUrls.add(arg.endsWith("/") ? arg.substring(0, arg.length() - 1) : arg);
+        }
+
+        report(new FleetStats(WebClient.create()).fetch(baseUrls));
+    }
+}
@@ -0,0 +1,185 @@
+package org.wjh.http.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A mergeable quantile sketch of non-negative values (micros, bytes), after DDSketch: the values are counted into
+ * logarithmic buckets of ratio {@code (1 + a) / (1 - a)}, so that any quantile is returned within the relative accuracy
+ * {@code a} (1%) of the actual value, whatever the distribution; the values below 1 are counted as zeros, and those over
+ * 2^40 into the last bucket.
+ * <p>
+ * The 1,389 counters are allocated upfront, in a stripe per CPU (up to {@value #MAX_STRIPES}), so that the threads
+ * recording the same values (e.g. the I/O threads, into the hot latency buckets) mostly increment counters of their own:
+ * recording is one atomic increment, into the stripe of the thread, and reading adds up the stripes. Two sketches merge
+ * by adding up their counters, as do their {@link Snapshot snapshots} taken on different nodes.
+ */
+public class QuantileSketch {
+
+    static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final long MAX_VALUE = 1L << 40;
+
+    static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    static final int MAX_STRIPES = 16;
+
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    /** The stripes one after the other, each of {@link #BUCKETS} counters. */
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+
+    /**
+     * @return the power of 2 of stripes, at least the number of CPUs (up to the max)
+     */
+    static int stripes(int cpus) {
+        int stripes = 1;
+        while (stripes < cpus && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    public void record(long value) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + index(value));
+    }
+
+    private long sum(int index) {
+        long total = 0;
+        for (int i = index; i < counts.length(); i += BUCKETS) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the bucket of the value: 0 for the zeros, {@code 1 + ceil(log(value) / log(gamma))} otherwise
+     */
+    static int index(long value) {
+        if (value < 1) {
+            return 0;
+        }
+        return 1 + (int) Math.ceil(Math.log(Math.min(value, MAX_VALUE)) / LOG_GAMMA);
+    }
+
+    /**
+     * @return the value which stands for the bucket, within the relative accuracy of all the values of the bucket
+     */
+    static double value(int index) {
+        return index == 0 ? 0 : 2 * Math.pow(GAMMA, index - 1) / (GAMMA + 1);
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the value at the quantile, or {@code NaN} if nothing is recorded
+     */
+    public double quantile(double quantile) {
+        return quantile(snapshot(), quantile);
+    }
+
+    /**
+     * Add up the counters of the snapshot (e.g. of another node) into this sketch.
+     *
+     * @throws IllegalArgumentException
+     *             if the snapshot is of another accuracy
+     */
+    public void merge(Snapshot snapshot) {
+        if (snapshot.relativeAccuracy != RELATIVE_ACCURACY) {
+            throw new IllegalArgumentException("Cannot merge a sketch of relative accuracy " + snapshot.relativeAccuracy);
+        }
+        for (int i = 0; i < snapshot.counts.length; i++) {
+            if (snapshot.counts[i] != 0) {
+                // Into the first stripe, as merging is no hot path
+                counts.addAndGet(snapshot.offset + i, snapshot.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the counters, trimmed to the non-empty range of buckets; the values recorded meanwhile are on a best
+     *         effort basis
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        int first = BUCKETS;
+        int last = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = sum(i);
+            if (copy[i] != 0) {
+                first = Math.min(first, i);
+                last = i;
+            }
+        }
+        return last < 0 ? new Snapshot(RELATIVE_ACCURACY, 0, new long[0])
+                : new Snapshot(RELATIVE_ACCURACY, first, Arrays.copyOfRange(copy, first, last + 1));
+    }
+
+    static double quantile(Snapshot snapshot, double quantile) {
+        long total = 0;
+        for (long count : snapshot.counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (total - 1));
+        long seen = 0;
+        for (int i = 0; i < snapshot.counts.length; i++) {
+            seen += snapshot.counts[i];
+            if (seen > rank) {
+                return value(snapshot.offset + i);
+            }
+        }
+        return value(snapshot.offset + snapshot.counts.length - 1);
+    }
+
+    /**
+     * The counters of a sketch, as exported to be merged: the counts of the buckets from the offset on.
+     */
+    public static final class Snapshot {
+
+        private final double relativeAccuracy;
+        private final int offset;
+        private final long[] counts;
+
+        @JsonCreator
+        Snapshot(@JsonProperty("relativeAccuracy") double relativeAccuracy, @JsonProperty("offset") int offset,
+                @JsonProperty("counts") long[] counts) {
+            if (offset < 0 || offset + counts.length > BUCKETS) {
+                throw new IllegalArgumentException("The buckets are out of range: " + offset + "+" + counts.length);
+            }
+            this.relativeAccuracy = relativeAccuracy;
+            this.offset = offset;
+            this.counts = counts;
+        }
+
+        public double getRelativeAccuracy() {
+            return relativeAccuracy;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+
+        public double quantile(double quantile) {
+            return QuantileSketch.quantile(this, quantile);
+        }
+    }
+}
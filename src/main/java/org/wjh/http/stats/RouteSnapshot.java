@@ -0,0 +1,89 @@
+package org.wjh.http.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.wjh.http.stats.QuantileSketch.Snapshot;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The traffic statistics of a route, as exported by the {@code trafficstats} endpoint: the status counts, and the
+ * snapshots of the sketches of the latencies (in micros) and of the body sizes (in bytes); the snapshots of a route on
+ * several nodes merge into a fleet-wide one.
+ */
+public final class RouteSnapshot {
+
+    static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx", "other" };
+
+    private final String route;
+    private final Map<String, Long> statuses;
+    private final Snapshot latencies;
+    private final Snapshot requestSizes;
+    private final Snapshot responseSizes;
+
+    RouteSnapshot(String route, long[] statusCounts, Snapshot latencies, Snapshot requestSizes, Snapshot responseSizes) {
+        this(route, statuses(statusCounts), latencies, requestSizes, responseSizes);
+    }
+
+    @JsonCreator
+    RouteSnapshot(@JsonProperty("route") String route, @JsonProperty("statuses") Map<String, Long> statuses, //@formatter:off
+            @JsonProperty("latencies") Snapshot latencies,
+            @JsonProperty("requestSizes") Snapshot requestSizes,
+            @JsonProperty("responseSizes") Snapshot responseSizes) { //@formatter:on
+        this.route = route;
+        this.statuses = statuses;
+        this.latencies = latencies;
+        this.requestSizes = requestSizes;
+        this.responseSizes = responseSizes;
+    }
+
+    private static Map<String, Long> statuses(long[] counts) {
+        Map<String, Long> statuses = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            statuses.put(STATUS_CLASSES[i], counts[i]);
+        }
+        return statuses;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public Map<String, Long> getStatuses() {
+        return statuses;
+    }
+
+    /**
+     * @return the snapshot of the latencies, in micros
+     */
+    public Snapshot getLatencies() {
+        return latencies;
+    }
+
+    public Snapshot getRequestSizes() {
+        return requestSizes;
+    }
+
+    public Snapshot getResponseSizes() {
+        return responseSizes;
+    }
+
+    /**
+     * @return the statistics of the route on both nodes
+     */
+    RouteSnapshot merge(RouteSnapshot other) {
+        Map<String, Long> merged = new LinkedHashMap<>(statuses);
+        other.statuses.forEach((status, count) -> merged.merge(status, count, Long::sum));
+        return new RouteSnapshot(route, merged, merge(latencies, other.latencies), merge(requestSizes, other.requestSizes),
+                merge(responseSizes, other.responseSizes));
+    }
+
+    private static Snapshot merge(Snapshot one, Snapshot other) {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.merge(one);
+        sketch.merge(other);
+        return sketch.snapshot();
+    }
+}
@@ -0,0 +1,152 @@
+package org.wjh.http.stats;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.wjh.http.Route;
+import org.wjh.http.logging.HttpLogger.MessageDirection;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Aggregated traffic statistics per route, fed by the server and client logging stages for every exchange, logged or
+ * not: the status counts (per status class), and the sketches of the latencies and of the request and response sizes.
+ * <p>
+ * The routes are configured as {@code [METHOD ]pattern}, in the order of precedence; the other inbound exchanges fall
+ * into the {@code other} route, and all the outbound exchanges into the {@code client} route. All the counters are
+ * allocated upfront, and striped ({@link LongAdder}, or a stripe of sketch counters per CPU), so that recording an
+ * exchange allocates nothing and the I/O threads hardly contend on a counter; the statistics are cumulative since the
+ * start, exported as metrics, and as mergeable snapshots for a fleet-wide view.
+ */
+@Component
+@ConditionalOnProperty(value = "http.stats.enabled", havingValue = "true", matchIfMissing = false)
+public class TrafficStats {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficStats.class);
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    private final List<RouteStats> routes = new ArrayList<>();
+    private final RouteStats other;
+    private final RouteStats client;
+
+    TrafficStats(@Value("${http.stats.routes:}") String[] routes, MeterRegistry registry) {
+        for (String spec : routes) {
+            if (!spec.trim().isEmpty()) {
+                this.routes.add(new RouteStats(Route.parse(spec), spec.trim(), registry));
+            }
+        }
+        this.other = new RouteStats(null, "other", registry);
+        this.client = new RouteStats(null, "client", registry);
+
+        logger.info("Traffic statistics: {} route(s)", this.routes.size());
+    }
+
+    /**
+     * Record a completed exchange against its route.
+     *
+     * @param dir
+     *            the direction of the request
+     * @param requestSize
+     *            the size of the request body, or {@code -1} if unknown
+     * @param responseSize
+     *            the size of the response body, or {@code -1} if unknown
+     */
+    public void record(MessageDirection dir, @Nullable HttpMethod method, URI uri, int statusCode, long durationNanos,
+            long requestSize, long responseSize) {
+        RouteStats stats = dir == MessageDirection.Outbound ? client : route(method, uri);
+        stats.record(statusCode, durationNanos, requestSize, responseSize);
+    }
+
+    private RouteStats route(@Nullable HttpMethod method, URI uri) {
+        if (routes.isEmpty()) {
+            return other;
+        }
+        PathContainer path = Route.path(uri);
+        for (RouteStats stats : routes) {
+            if (stats.route.matches(method, path)) {
+                return stats;
+            }
+        }
+        return other;
+    }
+
+    /**
+     * @return the snapshots of all the routes, the configured ones first
+     */
+    public List<RouteSnapshot> snapshot() {
+        List<RouteSnapshot> snapshots = new ArrayList<>(routes.size() + 2);
+        for (RouteStats stats : routes) {
+            snapshots.add(stats.snapshot());
+        }
+        snapshots.add(other.snapshot());
+        snapshots.add(client.snapshot());
+        return Collections.unmodifiableList(snapshots);
+    }
+
+    private static class RouteStats {
+
+        @Nullable
+        final Route route;
+        final String name;
+
+        /** The counts of the 1xx to 5xx statuses, and of the others. */
+        final LongAdder[] statuses = new LongAdder[6];
+        final QuantileSketch latencies = new QuantileSketch();
+        final QuantileSketch requestSizes = new QuantileSketch();
+        final QuantileSketch responseSizes = new QuantileSketch();
+
+        RouteStats(@Nullable Route route, String name, MeterRegistry registry) {
+            this.route = route;
+            this.name = name;
+
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+                FunctionCounter.builder("http.traffic.requests", statuses[i], LongAdder::sum).tag("route", name)
+                        .tag("status", RouteSnapshot.STATUS_CLASSES[i]).register(registry);
+            }
+            for (double quantile : QUANTILES) {
+                String tag = Double.toString(quantile);
+                Gauge.builder("http.traffic.latency", latencies, sketch -> sketch.quantile(quantile) / 1e6).tag("route", name)
+                        .tag("quantile", tag).baseUnit("seconds").register(registry);
+                Gauge.builder("http.traffic.request.size", requestSizes, sketch -> sketch.quantile(quantile)).tag("route", name)
+                        .tag("quantile", tag).baseUnit("bytes").register(registry);
+                Gauge.builder("http.traffic.response.size", responseSizes, sketch -> sketch.quantile(quantile)).tag("route", name)
+                        .tag("quantile", tag).baseUnit("bytes").register(registry);
+            }
+        }
+
+        void record(int statusCode, long durationNanos, long requestSize, long responseSize) {
+            statuses[statusCode >= 100 && statusCode < 600 ? statusCode / 100 - 1 : 5].increment();
+            latencies.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+            if (requestSize >= 0) {
+                requestSizes.record(requestSize);
+            }
+            if (responseSize >= 0) {
+                responseSizes.record(responseSize);
+            }
+        }
+
+        RouteSnapshot snapshot() {
+            long[] counts = new long[statuses.length];
+            for (int i = 0; i < statuses.length; i++) {
+                counts[i] = statuses[i].sum();
+            }
+            return new RouteSnapshot(name, counts, latencies.snapshot(), requestSizes.snapshot(), responseSizes.snapshot());
+        }
+    }
+}
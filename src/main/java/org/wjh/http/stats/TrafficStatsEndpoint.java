@@ -0,0 +1,29 @@
+package org.wjh.http.stats;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * The traffic statistics of the routes, as mergeable snapshots, e.g. {@code GET /actuator/trafficstats}; see
+ * {@link FleetStats} for a fleet-wide view.
+ */
+@Component
+@ConditionalOnProperty(value = "http.stats.enabled", havingValue = "true", matchIfMissing = false)
+@Endpoint(id = "trafficstats")
+public class TrafficStatsEndpoint {
+
+    private final TrafficStats trafficStats;
+
+    private TrafficStatsEndpoint(TrafficStats trafficStats) {
+        this.trafficStats = trafficStats;
+    }
+
+    @ReadOperation
+    public List<RouteSnapshot> routes() {
+        return trafficStats.snapshot();
+    }
+}
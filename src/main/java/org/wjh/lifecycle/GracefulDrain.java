@@ -0,0 +1,76 @@
+package org.wjh.lifecycle;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.stereotype.Component;
+import org.wjh.http.logging.ExchangeState;
+
+/**
+ * The drain of the instance on shutdown, as the context closes and before any bean is stopped or destroyed: the
+ * instance is reported out of service (see {@link TrafficGate}), it keeps serving for {@code echo.drain.delay} for the
+ * load balancers to stop routing to it, then refuses the new requests, waits for those in flight, and flushes the
+ * pending HTTP logging, all within {@code echo.drain.timeout}.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class GracefulDrain implements ApplicationListener<ContextClosedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(GracefulDrain.class);
+
+    private static final long POLL_MILLIS = 50;
+
+    private final ApplicationContext context;
+    private final TrafficGate trafficGate;
+    private final Duration delay;
+    private final Duration timeout;
+
+    GracefulDrain(ApplicationContext context, TrafficGate trafficGate, //@formatter:off
+            @Value("${echo.drain.delay:0s}") Duration delay,
+            @Value("${echo.drain.timeout:20s}") Duration timeout) { //@formatter:on
+        this.context = context;
+        this.trafficGate = trafficGate;
+        this.delay = delay;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        if (event.getApplicationContext() != context) {
+            // A child context, e.g. of the management server
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        logger.info("Draining, {} request(s) in flight", trafficGate.inFlight());
+        trafficGate.drain();
+        try {
+            TimeUnit.NANOSECONDS.sleep(Math.min(delay.toNanos(), deadline - System.nanoTime()));
+            trafficGate.refuse();
+
+            while (trafficGate.inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_MILLIS);
+            }
+            boolean flushed = ExchangeState.flushLogging(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (trafficGate.inFlight() > 0 || !flushed) {
+                logger.warn("Not drained within {}: {} request(s) still in flight, logging {}", timeout, trafficGate.inFlight(),
+                        flushed ? "flushed" : "not flushed");
+            } else {
+                logger.info("Drained in {} ms", elapsed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Drain interrupted, {} request(s) in flight", trafficGate.inFlight());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.wjh.lifecycle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * The gate of the inbound traffic through the lifecycle of the instance: not ready while it warms up (see
+ * {@link WarmUp}), ready, then draining on shutdown (see {@link GracefulDrain}), when the new requests are refused with
+ * 503 and {@code Connection: close} while those in flight complete. The readiness is reported by the health endpoint,
+ * and the requests in flight are counted.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class TrafficGate implements WebFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficGate.class);
+
+    enum State {
+        WARMING_UP, READY, DRAINING
+    }
+
+    private volatile State state;
+    private volatile boolean refusing;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    TrafficGate(@Value("${echo.warmup.enabled:false}") boolean warmUp, MeterRegistry registry) {
+        this.state = warmUp ? State.WARMING_UP : State.READY;
+        Gauge.builder("http.server.requests.in-flight", inFlight, AtomicInteger::get).register(registry);
+    }
+
+    @Override
+    public int getOrder() {
+        // Prior to the tracing filter (order=-1000), to count and refuse all the requests
+        return -2000;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (refusing) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.CONNECTION, "close");
+            return response.setComplete();
+        }
+        return chain.filter(exchange)//@formatter:off
+                .doOnSubscribe(s -> inFlight.incrementAndGet())
+                .doFinally(signal -> inFlight.decrementAndGet());//@formatter:on
+    }
+
+    State state() {
+        return state;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    void ready() {
+        if (state == State.WARMING_UP) {
+            state = State.READY;
+            logger.info("Ready for traffic");
+        }
+    }
+
+    /**
+     * Report the instance as out of service, for the load balancers to stop routing to it.
+     */
+    void drain() {
+        state = State.DRAINING;
+    }
+
+    /**
+     * Refuse the new requests, once the load balancers had the time to stop routing.
+     */
+    void refuse() {
+        refusing = true;
+    }
+}
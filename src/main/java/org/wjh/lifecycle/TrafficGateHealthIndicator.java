@@ -0,0 +1,29 @@
+package org.wjh.lifecycle;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health.Builder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+/**
+ * The readiness of the instance, as the {@code trafficGate} component of the health: out of service while warming up
+ * and draining, so that {@code GET /actuator/health} answers 503 then.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+class TrafficGateHealthIndicator extends AbstractHealthIndicator {
+
+    private final TrafficGate trafficGate;
+
+    TrafficGateHealthIndicator(TrafficGate trafficGate) {
+        this.trafficGate = trafficGate;
+    }
+
+    @Override
+    protected void doHealthCheck(Builder builder) {
+        TrafficGate.State state = trafficGate.state();
+        (state == TrafficGate.State.READY ? builder.up() : builder.outOfService())//@formatter:off
+                .withDetail("state", state)
+                .withDetail("inFlight", trafficGate.inFlight());//@formatter:on
+    }
+}
@@ -0,0 +1,78 @@
+package org.wjh.lifecycle;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerInitializedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The warm-up of the instance before it is reported ready (see {@link TrafficGate}): once the server listens,
+ * {@code echo.warmup.requests} echoes are sent to itself, alternately {@code GET} and {@code POST /echo}, at most
+ * {@code echo.warmup.concurrency} at a time, so that the whole path is exercised, through the logging stages and the
+ * remote calls (filling the connection pool to the sub-service), and compiled by the JIT before the first actual
+ * request. The instance is ready once the warm-up completed, or failed to within {@code echo.warmup.timeout}.
+ */
+@Component
+@ConditionalOnProperty(value = "echo.warmup.enabled", havingValue = "true", matchIfMissing = false)
+class WarmUp implements ApplicationListener<ReactiveWebServerInitializedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    private final TrafficGate trafficGate;
+    private final int requests;
+    private final int concurrency;
+    private final Duration timeout;
+
+    WarmUp(TrafficGate trafficGate, @Value("${echo.warmup.requests:200}") int requests, //@formatter:off
+            @Value("${echo.warmup.concurrency:8}") int concurrency,
+            @Value("${echo.warmup.timeout:30s}") Duration timeout) { //@formatter:on
+        this.trafficGate = trafficGate;
+        this.requests = requests;
+        this.concurrency = Math.max(1, concurrency);
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void onApplicationEvent(ReactiveWebServerInitializedEvent event) {
+        if (event.getApplicationContext().getServerNamespace() != null) {
+            // The management server, on its own port
+            return;
+        }
+
+        WebClient client = WebClient.create("http://localhost:" + event.getWebServer().getPort());
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        Flux.range(0, requests)//@formatter:off
+                .flatMap(i -> echo(client, i).onErrorResume(e -> {
+                    failed.incrementAndGet();
+                    logger.debug("Warm-up echo failed: {}", e.toString());
+                    return Mono.empty();
+                }), concurrency)
+                .then()
+                .timeout(timeout)
+                .doFinally(signal -> trafficGate.ready())
+                .subscribe(null,
+                        e -> logger.warn("Warm-up not completed within {}", timeout),
+                        () -> logger.info("Warm-up: {} echo(es) in {} ms, {} failed", requests,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed.get()));//@formatter:on
+    }
+
+    private static Mono<String> echo(WebClient client, int i) {
+        if (i % 2 == 0) {
+            return client.get().uri("/echo?input=warm-up-{i}", i).retrieve().bodyToMono(String.class);
+        }
+        return client.post().uri("/echo").body(BodyInserters.fromFormData("input", "warm-up-" + i)).retrieve().bodyToMono(String.class);
+    }
+}
@@ -0,0 +1,75 @@
+package org.wjh.reactor;
+
+import java.util.function.Consumer;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.SignalType;
+
+/**
+ * Capture the content of data buffers into a buffer, bounded to a max number of bytes, and deliver it once terminated
+ * (whatever was captured so far, on an error or a cancel).
+ */
+public class BufferCaptureSink implements CaptureSink<DataBuffer> {
+
+    private static final DataBufferFactory BUFFER_FACTORY = new DefaultDataBufferFactory();
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int MAX_INITIAL_CAPACITY = 1024 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int initialCapacity;
+    private final int maxBytes;
+    private final Consumer<byte[]> onCaptured;
+
+    @Nullable
+    private DataBuffer buffer;
+
+    /**
+     * @param contentLength
+     *            the length of the content, or {@code -1} if unknown: a known content is captured into one buffer of
+     *            its size, instead of a buffer growing (and copying) as the content flows
+     * @param maxBytes
+     *            the max number of bytes captured, the rest being dropped
+     * @param onCaptured
+     *            the consumer of the captured bytes
+     */
+    public BufferCaptureSink(long contentLength, int maxBytes, Consumer<byte[]> onCaptured) {
+        this.initialCapacity = (int) Math.min(contentLength > 0 ? Math.min(contentLength, MAX_INITIAL_CAPACITY) : DEFAULT_CAPACITY, maxBytes);
+        this.maxBytes = maxBytes;
+        this.onCaptured = onCaptured;
+    }
+
+    @Override
+    public void onNext(DataBuffer dataBuffer) {
+        if (buffer == null) {
+            buffer = BUFFER_FACTORY.allocateBuffer(Math.max(1, initialCapacity));
+        }
+        int length = Math.min(dataBuffer.readableByteCount(), maxBytes - buffer.readableByteCount());
+        if (length <= 0) {
+            return;
+        }
+        // The read position of the data buffer is not changed
+        buffer.write(dataBuffer.asByteBuffer(dataBuffer.readPosition(), length));
+    }
+
+    @Override
+    public void onTerminate(SignalType signal, @Nullable Throwable error) {
+        DataBuffer captured = buffer;
+        buffer = null;
+        if (captured == null) {
+            onCaptured.accept(EMPTY);
+            return;
+        }
+
+        byte[] bytes = new byte[captured.readableByteCount()];
+        captured.read(bytes);
+        DataBufferUtils.release(captured);
+        onCaptured.accept(bytes);
+    }
+}
@@ -0,0 +1,214 @@
+package org.wjh.reactor;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.lang.Nullable;
+
+import reactor.core.CoreSubscriber;
+import reactor.core.Fuseable;
+import reactor.core.Fuseable.QueueSubscription;
+import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxOperator;
+import reactor.core.publisher.Operators;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+/**
+ * An operator capturing the values of a publisher into a {@link CaptureSink}, as they flow: one subscriber in place of
+ * the chain of {@code doOnNext}, {@code doOnError}, {@code doOnCancel} and {@code doOnComplete}, which also guarantees
+ * that the sink is terminated exactly once, and never while it is handed a value.
+ * <p>
+ * The synchronous fusion of the source is passed through (the values are then captured as they are polled); the
+ * asynchronous one is declined, so that the sink is terminated once all the values are captured.
+ */
+public final class Capture<T> extends FluxOperator<T, T> {
+
+    private final CaptureSink<? super T> sink;
+
+    private Capture(Flux<? extends T> source, CaptureSink<? super T> sink) {
+        super(source);
+        this.sink = sink;
+    }
+
+    /**
+     * @return the publisher, each of its subscriptions captured into the sink
+     */
+    public static <T> Flux<T> tap(Publisher<? extends T> source, CaptureSink<? super T> sink) {
+        return new Capture<>(Flux.from(source), sink);
+    }
+
+    @Override
+    public void subscribe(CoreSubscriber<? super T> actual) {
+        source.subscribe(new CaptureSubscriber<>(actual, sink));
+    }
+
+    static final class CaptureSubscriber<T> implements CoreSubscriber<T>, QueueSubscription<T>, Scannable {
+
+        /** A value is being handed to the sink. */
+        private static final int NEXT = 1;
+        /** The subscription was cancelled while a value was being handed to the sink. */
+        private static final int CANCELLED = 1 << 1;
+        private static final int TERMINATED = 1 << 2;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<CaptureSubscriber> STATE = //@formatter:off
+                AtomicIntegerFieldUpdater.newUpdater(CaptureSubscriber.class, "state"); //@formatter:on
+
+        private final CoreSubscriber<? super T> actual;
+        private final CaptureSink<? super T> sink;
+
+        private Subscription s;
+        @Nullable
+        private QueueSubscription<T> qs;
+
+        // Accessed through STATE only
+        private volatile int state;
+
+        CaptureSubscriber(CoreSubscriber<? super T> actual, CaptureSink<? super T> sink) {
+            this.actual = actual;
+            this.sink = sink;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSubscribe(Subscription s) {
+            if (Operators.validate(this.s, s)) {
+                this.s = s;
+                if (s instanceof QueueSubscription) {
+                    this.qs = (QueueSubscription<T>) s;
+                }
+                actual.onSubscribe(this);
+            }
+        }
+
+        @Override
+        public void onNext(T value) {
+            capture(value);
+            actual.onNext(value);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            terminate(SignalType.ON_ERROR, error);
+            actual.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            terminate(SignalType.ON_COMPLETE, null);
+            actual.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            s.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            s.cancel();
+            for (;;) {
+                int current = state;
+                if ((current & (TERMINATED | CANCELLED)) != 0) {
+                    return;
+                }
+                if (current == NEXT) {
+                    // The capture of the value terminates the sink once done
+                    if (STATE.compareAndSet(this, NEXT, NEXT | CANCELLED)) {
+                        return;
+                    }
+                } else if (STATE.compareAndSet(this, 0, TERMINATED)) {
+                    sink.onTerminate(SignalType.CANCEL, null);
+                    return;
+                }
+            }
+        }
+
+        private void capture(T value) {
+            if (!STATE.compareAndSet(this, 0, NEXT)) {
+                // Terminated (or cancelled) already, the value is passed on uncaptured
+                return;
+            }
+            try {
+                sink.onNext(value);
+            } finally {
+                if (!STATE.compareAndSet(this, NEXT, 0)) {
+                    STATE.set(this, TERMINATED);
+                    sink.onTerminate(SignalType.CANCEL, null);
+                }
+            }
+        }
+
+        private void terminate(SignalType signal, @Nullable Throwable error) {
+            // The terminal signals are serialized with the values, so the state is either clear or terminated
+            if (STATE.compareAndSet(this, 0, TERMINATED)) {
+                sink.onTerminate(signal, error);
+            }
+        }
+
+        @Override
+        public int requestFusion(int requestedMode) {
+            if (qs == null || (requestedMode & Fuseable.SYNC) == 0) {
+                return Fuseable.NONE;
+            }
+            return qs.requestFusion(Fuseable.SYNC | (requestedMode & Fuseable.THREAD_BARRIER));
+        }
+
+        @Override
+        @Nullable
+        public T poll() {
+            T value;
+            try {
+                value = qs.poll();
+            } catch (Throwable e) {
+                terminate(SignalType.ON_ERROR, e);
+                throw e;
+            }
+            if (value != null) {
+                capture(value);
+            } else {
+                // The end of a synchronous source
+                terminate(SignalType.ON_COMPLETE, null);
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return qs.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return qs.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            qs.clear();
+        }
+
+        @Override
+        @Nullable
+        public Object scanUnsafe(Attr key) {
+            if (key == Attr.PARENT) {
+                return s;
+            }
+            if (key == Attr.ACTUAL) {
+                return actual;
+            }
+            if (key == Attr.TERMINATED) {
+                return (state & TERMINATED) != 0;
+            }
+            return null;
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+    }
+}
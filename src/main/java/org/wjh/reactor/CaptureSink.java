@@ -0,0 +1,27 @@
+package org.wjh.reactor;
+
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.SignalType;
+
+/**
+ * What a {@link Capture} does with the values flowing through it: each value is handed to the sink before it is passed
+ * downstream (e.g. before a data buffer is written and released), then the sink is terminated exactly once.
+ * <p>
+ * The capture calls the sink serially, never terminating it while a value is being handed to it, even on a cancel
+ * from another thread: a sink need not be thread-safe.
+ */
+@FunctionalInterface
+public interface CaptureSink<T> {
+
+    void onNext(T value);
+
+    /**
+     * @param signal
+     *            {@link SignalType#ON_COMPLETE}, {@link SignalType#ON_ERROR} or {@link SignalType#CANCEL}
+     * @param error
+     *            the error, for {@link SignalType#ON_ERROR}
+     */
+    default void onTerminate(SignalType signal, @Nullable Throwable error) {
+    }
+}
@@ -0,0 +1,48 @@
+package org.wjh.reactor;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.ObjLongConsumer;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.SignalType;
+
+/**
+ * Capture a digest of the content of data buffers, and its length, as it flows: the content is hashed in place, with
+ * no copy, and the memory is constant whatever the content size.
+ */
+public class DigestCaptureSink implements CaptureSink<DataBuffer> {
+
+    private final MessageDigest digest;
+    private final ObjLongConsumer<byte[]> onDigested;
+
+    private long length;
+
+    /**
+     * @param algorithm
+     *            the digest algorithm, e.g. {@code SHA-256}
+     * @param onDigested
+     *            the consumer of the digest and the length of the content
+     */
+    public DigestCaptureSink(String algorithm, ObjLongConsumer<byte[]> onDigested) {
+        try {
+            this.digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown digest algorithm: " + algorithm, e);
+        }
+        this.onDigested = onDigested;
+    }
+
+    @Override
+    public void onNext(DataBuffer dataBuffer) {
+        length += dataBuffer.readableByteCount();
+        digest.update(dataBuffer.asByteBuffer()); // the read position of the data buffer is not changed
+    }
+
+    @Override
+    public void onTerminate(SignalType signal, @Nullable Throwable error) {
+        onDigested.accept(digest.digest(), length);
+    }
+}
@@ -0,0 +1,78 @@
+package org.wjh.reactor;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.SignalType;
+
+/**
+ * A sink fed from several sources, e.g. the captures of the inner publishers of a body, and terminated from outside of
+ * them, e.g. once the exchange is complete: as within a {@link Capture}, the sink is never terminated while a value is
+ * being handed to it, and is handed no value once terminated.
+ * <p>
+ * The values must be handed serially, as they are by a publisher; the sink is terminated at most once by the caller.
+ */
+public final class SerializedCaptureSink<T> implements CaptureSink<T> {
+
+    /** A value is being handed to the sink. */
+    private static final int NEXT = 1;
+    /** The sink was terminated while a value was being handed to it. */
+    private static final int TERMINATING = 1 << 1;
+    private static final int TERMINATED = 1 << 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<SerializedCaptureSink> STATE = //@formatter:off
+            AtomicIntegerFieldUpdater.newUpdater(SerializedCaptureSink.class, "state"); //@formatter:on
+
+    private final CaptureSink<? super T> sink;
+
+    // Accessed through STATE only
+    private volatile int state;
+
+    // Written before TERMINATING is set, read after
+    private SignalType signal;
+    @Nullable
+    private Throwable error;
+
+    public SerializedCaptureSink(CaptureSink<? super T> sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void onNext(T value) {
+        if (!STATE.compareAndSet(this, 0, NEXT)) {
+            // Terminated already, the value is not captured
+            return;
+        }
+        try {
+            sink.onNext(value);
+        } finally {
+            if (!STATE.compareAndSet(this, NEXT, 0)) {
+                STATE.set(this, TERMINATED);
+                sink.onTerminate(signal, error);
+            }
+        }
+    }
+
+    @Override
+    public void onTerminate(SignalType signal, @Nullable Throwable error) {
+        this.signal = signal;
+        this.error = error;
+        for (;;) {
+            int current = state;
+            if ((current & (TERMINATING | TERMINATED)) != 0) {
+                return;
+            }
+            if (current == NEXT) {
+                // The value being handed terminates the sink once done
+                if (STATE.compareAndSet(this, NEXT, NEXT | TERMINATING)) {
+                    return;
+                }
+            } else if (STATE.compareAndSet(this, 0, TERMINATED)) {
+                sink.onTerminate(signal, error);
+                return;
+            }
+        }
+    }
+}
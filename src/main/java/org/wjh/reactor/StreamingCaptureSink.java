@@ -0,0 +1,57 @@
+package org.wjh.reactor;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.SignalType;
+
+/**
+ * Capture the content of data buffers in chunks as it flows, without retaining it: the chunks are copied up to a
+ * budget of bytes, whatever the content size, and the totals delivered once terminated.
+ */
+public class StreamingCaptureSink implements CaptureSink<DataBuffer> {
+
+    private final int budget;
+    private final ChunkListener listener;
+
+    private int chunks;
+    private long totalBytes;
+    private long capturedBytes;
+
+    public StreamingCaptureSink(int budget, ChunkListener listener) {
+        this.budget = budget;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onNext(DataBuffer dataBuffer) {
+        int count = dataBuffer.readableByteCount();
+        totalBytes += count;
+
+        int length = (int) Math.min(count, budget - capturedBytes);
+        if (length <= 0) {
+            return;
+        }
+
+        byte[] chunk = new byte[length];
+        dataBuffer.asByteBuffer().get(chunk); // the read position of the data buffer is not changed
+        capturedBytes += length;
+        listener.chunk(++chunks, chunk);
+    }
+
+    @Override
+    public void onTerminate(SignalType signal, @Nullable Throwable error) {
+        listener.end(chunks, totalBytes, capturedBytes);
+    }
+
+    public interface ChunkListener {
+
+        /**
+         * @param sequence
+         *            the sequence number of the chunk, from 1
+         */
+        void chunk(int sequence, byte[] chunk);
+
+        void end(int chunks, long totalBytes, long capturedBytes);
+    }
+}
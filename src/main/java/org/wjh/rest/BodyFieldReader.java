@@ -0,0 +1,287 @@
+package org.wjh.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Read one top-level field of an urlencoded form or JSON request body as the body flows in: the data buffers are
+ * decoded and released one by one, so only the value of the field is retained, and a body over the max size is
+ * rejected (413) as soon as it is detected, i.e. upfront if the {@code Content-Length} is known.
+ */
+abstract class BodyFieldReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final int maxBodySize;
+    private long bodySize;
+
+    private BodyFieldReader(int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * @return the value of the field, or empty if the field is not present, or the body is neither a form nor JSON
+     */
+    static Mono<String> read(ServerHttpRequest request, String field, int maxBodySize) {
+        HttpHeaders headers = request.getHeaders();
+        if (headers.getContentLength() > maxBodySize) {
+            return Mono.error(tooLarge(maxBodySize));
+        }
+
+        MediaType contentType = headers.getContentType();
+        if (contentType == null) {
+            return Mono.empty();
+        }
+        boolean form = MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(contentType);
+        boolean json = MediaType.APPLICATION_JSON.isCompatibleWith(contentType) || contentType.getSubtype().endsWith("+json");
+        if (!form && !json) {
+            return Mono.empty();
+        }
+
+        return Mono.defer(() -> {
+            BodyFieldReader reader = form ? new FormFieldReader(field, charset(contentType), maxBodySize)
+                    : new JsonFieldReader(field, maxBodySize);
+            return request.getBody()//@formatter:off
+                    .doOnNext(reader::feed)
+                    .then(Mono.fromCallable(reader::complete));//@formatter:on
+        });
+    }
+
+    private static Charset charset(MediaType contentType) {
+        Charset charset = contentType.getCharset();
+        return charset != null ? charset : UTF_8;
+    }
+
+    private static ResponseStatusException tooLarge(int maxBodySize) {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Request body exceeds " + maxBodySize + " byte(s)");
+    }
+
+    private void feed(DataBuffer dataBuffer) {
+        try {
+            bodySize += dataBuffer.readableByteCount();
+            if (bodySize > maxBodySize) {
+                throw tooLarge(maxBodySize);
+            }
+            decode(dataBuffer.asByteBuffer());
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+    }
+
+    protected abstract void decode(ByteBuffer bytes);
+
+    /**
+     * @return the value of the field, or {@code null} if not present
+     */
+    @Nullable
+    protected abstract String complete();
+
+    /**
+     * A state machine over the {@code application/x-www-form-urlencoded} bytes, a percent-escape may span the buffers.
+     */
+    private static class FormFieldReader extends BodyFieldReader {
+
+        private static final int KEY = 0;
+        private static final int VALUE = 1;
+        private static final int SKIP = 2;
+
+        private final byte[] name;
+        private final Charset charset;
+
+        private final ByteArrayOutputStream key = new ByteArrayOutputStream(16);
+        private final ByteArrayOutputStream value = new ByteArrayOutputStream();
+
+        private int state = KEY;
+        private boolean found;
+
+        // The pending percent-escape: the count of the hex digits read so far, and their value
+        private int escape = -1;
+        private int escaped;
+
+        FormFieldReader(String name, Charset charset, int maxBodySize) {
+            super(maxBodySize);
+            this.name = name.getBytes(charset);
+            this.charset = charset;
+        }
+
+        @Override
+        protected void decode(ByteBuffer bytes) {
+            while (!found && bytes.hasRemaining()) {
+                byte b = bytes.get();
+                if (escape >= 0) {
+                    unescape(b);
+                } else if (b == '&') {
+                    endField();
+                } else if (b == '=' && state == KEY) {
+                    state = matchesName() ? VALUE : SKIP;
+                } else if (b == '%') {
+                    escape = 0;
+                    escaped = 0;
+                } else {
+                    append(b == '+' ? (byte) ' ' : b);
+                }
+            }
+        }
+
+        private void unescape(byte b) {
+            int digit = Character.digit(b, 16);
+            if (digit < 0) {
+                throw new ServerWebInputException("Invalid percent-encoding in the form body");
+            }
+            escaped = escaped << 4 | digit;
+            if (++escape == 2) {
+                escape = -1;
+                append((byte) escaped);
+            }
+        }
+
+        private void append(byte b) {
+            if (state == VALUE) {
+                value.write(b);
+            } else if (state == KEY && key.size() <= name.length) {
+                // A longer key does not match anyway
+                key.write(b);
+            }
+        }
+
+        private boolean matchesName() {
+            if (key.size() != name.length) {
+                return false;
+            }
+            byte[] bytes = key.toByteArray();
+            for (int i = 0; i < name.length; i++) {
+                if (bytes[i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void endField() {
+            // A field without '=' has an empty value
+            found = state == VALUE || (state == KEY && matchesName());
+            state = KEY;
+            key.reset();
+        }
+
+        @Override
+        @Nullable
+        protected String complete() {
+            if (escape >= 0) {
+                throw new ServerWebInputException("Invalid percent-encoding in the form body");
+            }
+            if (!found) {
+                endField();
+            }
+            return found ? new String(value.toByteArray(), charset) : null;
+        }
+    }
+
+    /**
+     * The non-blocking Jackson parser, fed with the buffers as they come, the value of the field being its only text
+     * retained.
+     */
+    private static class JsonFieldReader extends BodyFieldReader {
+
+        private final String name;
+
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+
+        private byte[] chunk = new byte[0];
+
+        private int depth;
+        private boolean inField;
+        @Nullable
+        private String value;
+
+        JsonFieldReader(String name, int maxBodySize) {
+            super(maxBodySize);
+            this.name = name;
+            try {
+                this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        @Override
+        protected void decode(ByteBuffer bytes) {
+            int length = bytes.remaining();
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            bytes.get(chunk, 0, length);
+            try {
+                // The chunk is reused, as the parser is drained before it is fed again
+                feeder.feedInput(chunk, 0, length);
+                drain();
+            } catch (IOException e) {
+                throw new ServerWebInputException("Invalid JSON body", null, e);
+            }
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                switch (token) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    inField = false; // an object or array value is not taken
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                    inField = depth == 1 && value == null && name.equals(parser.getCurrentName());
+                    break;
+                case VALUE_NULL:
+                    inField = false;
+                    break;
+                default:
+                    if (inField) {
+                        value = parser.getText();
+                        inField = false;
+                    }
+                }
+            }
+        }
+
+        @Override
+        @Nullable
+        protected String complete() {
+            try {
+                feeder.endOfInput();
+                drain();
+                parser.close();
+            } catch (IOException e) {
+                throw new ServerWebInputException("Invalid JSON body", null, e);
+            }
+            return value;
+        }
+    }
+}
@@ -1,19 +1,33 @@
 package org.wjh.rest;
 
+import static org.springframework.http.MediaType.APPLICATION_CBOR_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.wjh.http.codec.BinaryCodecsConfiguration.APPLICATION_SMILE_VALUE;
+
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebInputException;
+import org.wjh.service.EchoMessage;
 import org.wjh.service.MessageService;
 
 import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/echo")
+@ConditionalOnProperty(name = EchoRouterInitializer.API_PROPERTY, havingValue = "annotated", matchIfMissing = true)
 public class EchoApi {
 
     private static final Logger logger = LoggerFactory.getLogger(EchoApi.class);
@@ -21,6 +35,13 @@ public class EchoApi {
     @Autowired
     private MessageService messageService;
 
+    @Autowired(required = false)
+    @Nullable
+    private IdempotencyStore idempotencyStore;
+
+    @Value("${echo.post.max-body-size:65536}")
+    private int maxBodySize;
+
     @GetMapping
     public Mono<String> get(@RequestParam(name = "input") String input) {
         logger.trace("Calling get({}) ...", input);
@@ -60,21 +81,35 @@ public class EchoApi {
     // }
 
     @PostMapping
-    public Mono<String> post(Mono<Form> formMono) {
-        logger.trace("Calling post({}) ...", formMono);
+    public Mono<String> post(ServerHttpRequest request) {
+        logger.trace("Calling post({}) ...", request);
 
-        return formMono.flatMap(form -> messageService.post(form.getInput()));
+        // The input is read from the body as it flows in, rather than binding the whole form, falling back to the query
+        String key = request.getHeaders().getFirst(IdempotencyStore.HEADER);
+        String client = idempotencyStore != null ? idempotencyStore.client(request) : null;
+        return BodyFieldReader.read(request, "input", maxBodySize)//@formatter:off
+                .switchIfEmpty(Mono.justOrEmpty(request.getQueryParams().getFirst("input")))
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new ServerWebInputException("Required field 'input' is not present"))))
+                .flatMap(input -> idempotencyStore != null ? idempotencyStore.execute(client, key, input, messageService::post)
+                        : messageService.post(input));//@formatter:on
     }
 
-    public static class Form {
-        private String input;
+    @PostMapping(path = "/message", //@formatter:off
+            consumes = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE },
+            produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE }) //@formatter:on
+    public Mono<EchoMessage> echo(@RequestBody Mono<EchoMessage> messageMono) {
+        logger.trace("Calling echo({}) ...", messageMono);
+
+        return messageMono.flatMap(messageService::echo);
+    }
 
-        public String getInput() {
-            return input;
-        }
+    // A list rather than a stream of messages, as the CBOR codecs do not support streaming (yet)
+    @PostMapping(path = "/batch", //@formatter:off
+            consumes = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE },
+            produces = { APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE }) //@formatter:on
+    public Mono<List<EchoMessage>> echoAll(@RequestBody Mono<List<EchoMessage>> messagesMono) {
+        logger.trace("Calling echoAll({}) ...", messagesMono);
 
-        public void setInput(String input) {
-            this.input = input;
-        }
+        return messagesMono.flatMap(messageService::echoAll);
     }
 }
@@ -0,0 +1,175 @@
+package org.wjh.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.MediaType.APPLICATION_CBOR;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.TEXT_PLAIN;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+import static org.springframework.web.reactive.function.server.ServerResponse.ok;
+import static org.wjh.http.codec.BinaryCodecsConfiguration.APPLICATION_SMILE;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.NotAcceptableStatusException;
+import org.springframework.web.server.ServerWebInputException;
+import org.wjh.service.EchoMessage;
+import org.wjh.service.MessageService;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * The functional variant of {@link EchoApi}, which is registered functionally (see {@link EchoRouterInitializer}),
+ * without the annotated controller dispatch: handler lookup, argument resolvers and return value handlers.
+ */
+class EchoRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(EchoRouter.class);
+
+    // As written by the annotated controller for a string
+    private static final MediaType TEXT_PLAIN_UTF8 = new MediaType(TEXT_PLAIN, UTF_8);
+
+    private static final List<MediaType> MESSAGE_TYPES = Arrays.asList(APPLICATION_JSON, APPLICATION_CBOR, APPLICATION_SMILE);
+
+    private static final ParameterizedTypeReference<List<EchoMessage>> MESSAGES = new ParameterizedTypeReference<List<EchoMessage>>() {
+    };
+
+    private final MessageService messageService;
+    private final int maxBodySize;
+    @Nullable
+    private final IdempotencyStore idempotencyStore;
+
+    EchoRouter(MessageService messageService, int maxBodySize, @Nullable IdempotencyStore idempotencyStore) {
+        this.messageService = messageService;
+        this.maxBodySize = maxBodySize;
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    RouterFunction<ServerResponse> routes() {
+        MediaType[] messageTypes = MESSAGE_TYPES.toArray(new MediaType[0]);
+        return RouterFunctions.route()//@formatter:off
+                .GET("/echo", this::get)
+                .POST("/echo/message", contentType(messageTypes), this::echo)
+                .POST("/echo/batch", contentType(messageTypes), this::echoAll)
+                .POST("/echo", this::post)
+                .build();//@formatter:on
+    }
+
+    private Mono<ServerResponse> get(ServerRequest request) {
+        String input = queryParam(request.exchange().getRequest().getURI().getRawQuery(), "input");
+        if (input == null) {
+            throw new ServerWebInputException("Required parameter 'input' is not present");
+        }
+        logger.trace("Calling get({}) ...", input);
+
+        DataBufferFactory bufferFactory = request.exchange().getResponse().bufferFactory();
+        return messageService.getInto(input, bufferFactory).flatMap(buffer -> ok()//@formatter:off
+                .contentType(TEXT_PLAIN_UTF8)
+                .contentLength(buffer.readableByteCount())
+                .body(BodyInserters.fromDataBuffers(Mono.just(buffer))));//@formatter:on
+    }
+
+    /**
+     * The first value of the parameter scanned from the raw query, rather than parsing (and decoding) all the
+     * parameters into a map.
+     */
+    @Nullable
+    static String queryParam(@Nullable String rawQuery, String name) {
+        if (rawQuery == null) {
+            return null;
+        }
+        int start = 0;
+        while (start <= rawQuery.length()) {
+            int end = rawQuery.indexOf('&', start);
+            if (end < 0) {
+                end = rawQuery.length();
+            }
+            if (rawQuery.startsWith(name, start)) {
+                int nameEnd = start + name.length();
+                if (nameEnd == end) {
+                    return "";
+                }
+                if (rawQuery.charAt(nameEnd) == '=') {
+                    return decode(rawQuery.substring(nameEnd + 1, end));
+                }
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private static String decode(String value) {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new ServerWebInputException("Invalid query parameter: " + value);
+        }
+    }
+
+    private Mono<ServerResponse> post(ServerRequest request) {
+        logger.trace("Calling post({}) ...", request);
+
+        String key = request.headers().firstHeader(IdempotencyStore.HEADER);
+        String client = idempotencyStore != null ? idempotencyStore.client(request.exchange().getRequest()) : null;
+        return BodyFieldReader.read(request.exchange().getRequest(), "input", maxBodySize)//@formatter:off
+                .switchIfEmpty(Mono.justOrEmpty(request.queryParam("input")))
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new ServerWebInputException("Required field 'input' is not present"))))
+                .flatMap(input -> idempotencyStore != null ? idempotencyStore.execute(client, key, input, messageService::post)
+                        : messageService.post(input))
+                .flatMap(ok().contentType(TEXT_PLAIN)::bodyValue);//@formatter:on
+    }
+
+    private Mono<ServerResponse> echo(ServerRequest request) {
+        logger.trace("Calling echo({}) ...", request);
+
+        MediaType responseType = negotiate(request);
+        return request.bodyToMono(EchoMessage.class)//@formatter:off
+                .flatMap(messageService::echo)
+                .flatMap(ok().contentType(responseType)::bodyValue);//@formatter:on
+    }
+
+    private Mono<ServerResponse> echoAll(ServerRequest request) {
+        logger.trace("Calling echoAll({}) ...", request);
+
+        MediaType responseType = negotiate(request);
+        return request.bodyToMono(MESSAGES)//@formatter:off
+                .flatMap(messageService::echoAll)
+                .flatMap(ok().contentType(responseType)::bodyValue);//@formatter:on
+    }
+
+    /**
+     * A functional response is written as per its content type, regardless of the {@code Accept} header.
+     */
+    private MediaType negotiate(ServerRequest request) {
+        List<MediaType> accepted = new ArrayList<>(request.headers().accept());
+        if (accepted.isEmpty()) {
+            return APPLICATION_JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType acceptable : accepted) {
+            for (MediaType messageType : MESSAGE_TYPES) {
+                if (acceptable.isCompatibleWith(messageType)) {
+                    return messageType;
+                }
+            }
+        }
+        throw new NotAcceptableStatusException(MESSAGE_TYPES);
+    }
+}
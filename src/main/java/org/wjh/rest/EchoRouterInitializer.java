@@ -0,0 +1,30 @@
+package org.wjh.rest;
+
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.wjh.service.MessageService;
+
+/**
+ * Register the {@link EchoRouter} functionally, i.e. without scanning or reflection, if {@code echo.api=functional};
+ * otherwise the annotated {@link EchoApi} is in use.
+ */
+public class EchoRouterInitializer implements ApplicationContextInitializer<GenericApplicationContext> {
+
+    static final String API_PROPERTY = "echo.api";
+
+    @Override
+    public void initialize(GenericApplicationContext context) {
+        Environment env = context.getEnvironment();
+        if (!"functional".equals(env.getProperty(API_PROPERTY))) {
+            return;
+        }
+
+        context.registerBean(EchoRouter.class, //@formatter:off
+                () -> new EchoRouter(context.getBean(MessageService.class),
+                        env.getProperty("echo.post.max-body-size", Integer.class, 65536),
+                        context.getBeanProvider(IdempotencyStore.class).getIfAvailable())); //@formatter:on
+        context.registerBean("echoRoutes", RouterFunction.class, () -> context.getBean(EchoRouter.class).routes());
+    }
+}
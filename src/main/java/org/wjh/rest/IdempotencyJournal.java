@@ -0,0 +1,136 @@
+package org.wjh.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The append-only file of the completed idempotent calls, which the {@link IdempotencyStore} is reloaded from on
+ * restart:
+ *
+ * <pre>
+ * file     := magic("EIDK") version(1 byte) record*
+ * record   := key fingerprint completedAt(8 bytes, epoch millis) result
+ * string   := length(4 bytes) UTF-8 bytes
+ * </pre>
+ *
+ * A record cut short (e.g. by a crash) ends the file. The file is compacted on open, i.e. rewritten with the live
+ * records only.
+ */
+class IdempotencyJournal implements Closeable {
+
+    static final byte[] MAGIC = { 'E', 'I', 'D', 'K' };
+    static final int VERSION = 1;
+
+    private final DataOutputStream out;
+
+    /**
+     * Rewrite the file with the live records, and open it for appending.
+     */
+    IdempotencyJournal(Path file, Collection<Record> live) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream tmp = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted), 64 * 1024))) {
+            tmp.write(MAGIC);
+            tmp.writeByte(VERSION);
+            for (Record record : live) {
+                write(tmp, record);
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND), 64 * 1024));
+    }
+
+    /**
+     * @return the records of the file, oldest first, or none if there is no file
+     * @throws IOException
+     *             if the file is not a journal
+     */
+    static List<Record> read(Path file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return records;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            int version = in.readUnsignedByte();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                throw new IOException("Not an idempotency journal (version " + VERSION + "): " + file);
+            }
+            while (true) {
+                records.add(new Record(readString(in), readString(in), in.readLong(), readString(in)));
+            }
+        } catch (EOFException e) {
+            // The end of the file, or the record being written when the process stopped
+        }
+        return records;
+    }
+
+    void append(Record record) throws IOException {
+        write(out, record);
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static void write(DataOutputStream out, Record record) throws IOException {
+        writeString(out, record.key);
+        writeString(out, record.fingerprint);
+        out.writeLong(record.completedAtMillis);
+        writeString(out, record.result);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * A completed call.
+     */
+    static final class Record {
+
+        final String key;
+        final String fingerprint;
+        final long completedAtMillis;
+        final String result;
+
+        Record(String key, String fingerprint, long completedAtMillis, String result) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.completedAtMillis = completedAtMillis;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.wjh.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+import org.wjh.rest.IdempotencyJournal.Record;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * The deduplication of the calls by their {@code Idempotency-Key}, so that the retries of a client do not run the echo
+ * (and its remote call) again: the first call of a key runs, a retry while it is in flight joins it, and a retry once
+ * it completed replays its result, for {@code echo.idempotency.ttl}. A failed call is forgotten, to be run again by the
+ * next retry; a key reused with another input is rejected with 422.
+ * <p>
+ * The keys are scoped by client: the API key header ({@code echo.idempotency.client-header}), kept as a fingerprint
+ * only, or else the client IP, so that a client can neither replay nor block the calls of another by reusing its key.
+ * <p>
+ * The store is bounded to {@code echo.idempotency.max-entries} keys, the oldest evicted first. With
+ * {@code echo.idempotency.file}, the completed calls are appended to a {@link IdempotencyJournal journal} by a single
+ * thread off the I/O threads (dropped when its queue is full), and reloaded on restart.
+ */
+@Component
+@ConditionalOnProperty(value = "echo.idempotency.enabled", havingValue = "true", matchIfMissing = false)
+class IdempotencyStore implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final String clientHeader;
+    private final LongSupplier clock;
+
+    /** The entries in the order of creation, guarded by itself. */
+    private final Map<String, Entry> entries;
+
+    @Nullable
+    private final Path file;
+    @Nullable
+    private final IdempotencyJournal journal;
+    @Nullable
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean failed;
+
+    private final Counter executed;
+    private final Counter joined;
+    private final Counter replayed;
+    private final Counter conflicts;
+
+    @Autowired
+    IdempotencyStore(@Value("${echo.idempotency.max-entries:10000}") int maxEntries, //@formatter:off
+            @Value("${echo.idempotency.ttl:10m}") Duration ttl,
+            @Value("${echo.idempotency.file:}") String file,
+            @Value("${echo.idempotency.queue-capacity:10000}") int queueCapacity,
+            @Value("${echo.idempotency.client-header:X-API-Key}") String clientHeader,
+            MeterRegistry registry) throws IOException { //@formatter:on
+        this(maxEntries, ttl, file.isEmpty() ? null : Paths.get(file), queueCapacity, clientHeader, registry, System::currentTimeMillis);
+    }
+
+    IdempotencyStore(int maxEntries, Duration ttl, @Nullable Path file, int queueCapacity, String clientHeader, MeterRegistry registry,
+            LongSupplier clock) throws IOException {
+
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The max entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.clientHeader = clientHeader;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, Entry>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IdempotencyStore.this.maxEntries;
+            }
+        };
+
+        this.file = file;
+        if (file != null) {
+            long now = clock.getAsLong();
+            for (Record record : IdempotencyJournal.read(file)) {
+                if (now - record.completedAtMillis <= ttlMillis) {
+                    entries.remove(record.key);
+                    entries.put(record.key, new Entry(record.fingerprint, record.result, record.completedAtMillis));
+                }
+            }
+            List<Record> live = new ArrayList<>(entries.size());
+            entries.forEach((key, entry) -> live.add(new Record(key, entry.fingerprint, entry.completedAtMillis, entry.result)));
+            this.journal = new IdempotencyJournal(file, live);
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "idempotency-journal");
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("Idempotency journal {}: {} call(s) reloaded", file.toAbsolutePath(), entries.size());
+        } else {
+            this.journal = null;
+            this.executor = null;
+        }
+
+        this.executed = Counter.builder("echo.idempotency.requests").tag("outcome", "executed").register(registry);
+        this.joined = Counter.builder("echo.idempotency.requests").tag("outcome", "joined").register(registry);
+        this.replayed = Counter.builder("echo.idempotency.requests").tag("outcome", "replayed").register(registry);
+        this.conflicts = Counter.builder("echo.idempotency.requests").tag("outcome", "conflict").register(registry);
+        Gauge.builder("echo.idempotency.entries", this, IdempotencyStore::size).register(registry);
+    }
+
+    /**
+     * @return the client of the request, which its key is scoped by: the fingerprint of its API key, or else its IP
+     */
+    String client(ServerHttpRequest request) {
+        String apiKey = request.getHeaders().getFirst(clientHeader);
+        if (apiKey != null && !apiKey.isEmpty()) {
+            return "key:" + fingerprint(apiKey);
+        }
+        // The forwarded address, if the forwarded headers are honored (server.forward-headers-strategy)
+        InetSocketAddress address = request.getRemoteAddress();
+        if (address == null) {
+            return "unknown";
+        }
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    /**
+     * @param client
+     *            the client of the request, see {@link #client(ServerHttpRequest)}
+     * @param key
+     *            the {@code Idempotency-Key} of the request, or {@code null} if none
+     * @param call
+     *            the call, run for the first request of the key only
+     * @return the result of the call, run or joined or replayed
+     */
+    Mono<String> execute(String client, @Nullable String key, String input, Function<String, Mono<String>> call) {
+        if (key == null) {
+            return call.apply(input);
+        }
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return Mono.error(new ServerWebInputException("The " + HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters long"));
+        }
+        key = client + ' ' + key;
+
+        String fingerprint = fingerprint(input);
+        long now = clock.getAsLong();
+        Entry entry;
+        boolean created = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expired(now)) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(fingerprint);
+                entry.call = run(key, entry, input, call);
+                entries.put(key, entry);
+                created = true;
+            }
+        }
+
+        if (!entry.fingerprint.equals(fingerprint)) {
+            conflicts.increment();
+            return Mono.error(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "The " + HEADER + " is in use for another input"));
+        }
+        if (created) {
+            executed.increment();
+            return entry.call;
+        }
+        String result = entry.result;
+        if (result != null) {
+            replayed.increment();
+            return Mono.just(result);
+        }
+        joined.increment();
+        return entry.call;
+    }
+
+    /**
+     * @return the call, shared by the requests which join it; it is forgotten if it fails, or is cancelled
+     */
+    private Mono<String> run(String key, Entry entry, String input, Function<String, Mono<String>> call) {
+        return Mono.defer(() -> call.apply(input))//@formatter:off
+                .doOnSuccess(result -> {
+                    if (result == null) {
+                        remove(key, entry);
+                    } else {
+                        complete(key, entry, result);
+                    }
+                })
+                .doOnError(e -> remove(key, entry))
+                .doOnCancel(() -> remove(key, entry))
+                .cache();//@formatter:on
+    }
+
+    private void complete(String key, Entry entry, String result) {
+        entry.completedAtMillis = clock.getAsLong();
+        entry.result = result;
+        if (executor != null) {
+            append(new Record(key, entry.fingerprint, entry.completedAtMillis, result));
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    private void append(Record record) {
+        if (failed) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    journal.append(record);
+                    if (executor.getQueue().isEmpty()) {
+                        journal.flush();
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                    logger.error("Idempotency journal stopped, failed to write into {}", file, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static String fingerprint(String input) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(input.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Idempotency journal not drained in time, the last calls are lost.");
+            executor.shutdownNow();
+        }
+        journal.close();
+        if (dropped.get() > 0) {
+            logger.warn("Idempotency journal {}: dropped {} call(s)", file, dropped.get());
+        }
+    }
+
+    /**
+     * A call, in flight until its result is set.
+     */
+    private final class Entry {
+
+        final String fingerprint;
+        Mono<String> call;
+        volatile String result;
+        volatile long completedAtMillis;
+
+        Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        Entry(String fingerprint, String result, long completedAtMillis) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+            this.completedAtMillis = completedAtMillis;
+            this.call = Mono.just(result);
+        }
+
+        boolean expired(long now) {
+            return result != null && now - completedAtMillis > ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.wjh.service;
+
+/**
+ * The message of the single and batch echoes, exchanged as JSON or a binary JSON (CBOR, Smile).
+ */
+public class EchoMessage {
+
+    private String text;
+
+    public EchoMessage() {
+    }
+
+    public EchoMessage(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public String toString() {
+        return "EchoMessage [text=" + text + "]";
+    }
+}
@@ -1,9 +1,26 @@
 package org.wjh.service;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
 import reactor.core.publisher.Mono;
 
 public interface MessageService {
 
     Mono<String> get(String input);
     Mono<String> post(String input);
+
+    /**
+     * The same as {@link #get(String)}, but the echo is written (UTF-8) into a buffer ready for the response.
+     */
+    default Mono<DataBuffer> getInto(String input, DataBufferFactory bufferFactory) {
+        return get(input).map(output -> bufferFactory.wrap(output.getBytes(UTF_8)));
+    }
+
+    Mono<EchoMessage> echo(EchoMessage message);
+    Mono<List<EchoMessage>> echoAll(List<EchoMessage> messages);
 }
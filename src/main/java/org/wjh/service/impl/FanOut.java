@@ -0,0 +1,137 @@
+package org.wjh.service.impl;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * The scatter-gather of the echo over several downstream echo services ({@code echo.fanout.urls}), in place of the
+ * single remote: the input is sent to all the branches in parallel (at most {@code echo.fanout.concurrency} in flight),
+ * each bounded by {@code echo.fanout.branch-timeout}, and the echoes are gathered as per {@code echo.fanout.combine}:
+ * <ul>
+ * <li>{@code all}: every branch is waited for (within its timeout), and the echoes of those which succeeded are
+ * kept;</li>
+ * <li>{@code first-n}: the first {@code echo.fanout.first-n} echoes are kept, and the other branches cancelled;</li>
+ * <li>{@code quorum}: the first echoes of a majority of the branches are kept, and the other branches cancelled.</li>
+ * </ul>
+ * A partial result (in the order of the branches) is returned as long as the required number of branches echoed (one
+ * for {@code all}), else the echo fails with 504. The outcomes of the branches are metered.
+ */
+@Component
+@ConditionalOnProperty("echo.fanout.urls")
+class FanOut {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOut.class);
+
+    enum Combine {
+        ALL, FIRST_N, QUORUM
+    }
+
+    private final List<String> urls;
+    private final Combine combine;
+    private final int required;
+    private final Duration branchTimeout;
+    private final int concurrency;
+
+    private final Counter succeeded;
+    private final Counter failed;
+    private final Counter timedOut;
+    private final Counter cancelled;
+
+    FanOut(@Value("${echo.fanout.urls}") String[] urls, //@formatter:off
+            @Value("${echo.fanout.combine:all}") Combine combine,
+            @Value("${echo.fanout.first-n:1}") int firstN,
+            @Value("${echo.fanout.branch-timeout:1s}") Duration branchTimeout,
+            @Value("${echo.fanout.concurrency:8}") int concurrency,
+            MeterRegistry registry) { //@formatter:on
+
+        this.urls = new ArrayList<>();
+        for (String url : urls) {
+            if (!url.trim().isEmpty()) {
+                this.urls.add(url.trim());
+            }
+        }
+        if (this.urls.isEmpty()) {
+            throw new IllegalArgumentException("No fan-out URL: " + Arrays.toString(urls));
+        }
+        if (combine == Combine.FIRST_N && (firstN < 1 || firstN > this.urls.size())) {
+            throw new IllegalArgumentException("The first-n must be within [1, " + this.urls.size() + "]: " + firstN);
+        }
+        this.combine = combine;
+        this.required = combine == Combine.ALL ? 1 : combine == Combine.FIRST_N ? firstN : this.urls.size() / 2 + 1;
+        this.branchTimeout = branchTimeout;
+        this.concurrency = Math.max(1, concurrency);
+
+        this.succeeded = Counter.builder("echo.fanout.branches").tag("outcome", "succeeded").register(registry);
+        this.failed = Counter.builder("echo.fanout.branches").tag("outcome", "failed").register(registry);
+        this.timedOut = Counter.builder("echo.fanout.branches").tag("outcome", "timed-out").register(registry);
+        this.cancelled = Counter.builder("echo.fanout.branches").tag("outcome", "cancelled").register(registry);
+
+        logger.info("Fan-out: {} branch(es), {} ({} required), branch timeout {}, concurrency {}", this.urls.size(),
+                combine.name().toLowerCase(Locale.ROOT).replace('_', '-'), required, branchTimeout, this.concurrency);
+    }
+
+    /**
+     * @param branch
+     *            the call of a branch, by URL
+     * @return the results of the branches which succeeded, as gathered, in the order of the branches
+     */
+    <T> Mono<List<T>> scatter(Function<String, Mono<T>> branch) {
+        int wanted = combine == Combine.ALL ? urls.size() : required;
+        return Flux.range(0, urls.size())//@formatter:off
+                .flatMap(index -> call(index, branch), concurrency)
+                .take(wanted)
+                .collectList()
+                .flatMap(results -> {
+                    if (results.size() < required) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                                results.size() + " of " + urls.size() + " branch(es) echoed, " + required + " required"));
+                    }
+                    results.sort(comparing(Tuple2::getT1));
+                    return Mono.just(results.stream().map(Tuple2::getT2).collect(toList()));
+                });//@formatter:on
+    }
+
+    /**
+     * @return the indexed result of the branch, or empty if it failed or timed out
+     */
+    private <T> Mono<Tuple2<Integer, T>> call(int index, Function<String, Mono<T>> branch) {
+        String url = urls.get(index);
+        return Mono.defer(() -> branch.apply(url))//@formatter:off
+                .timeout(branchTimeout)
+                .map(result -> Tuples.of(index, result))
+                .doOnNext(result -> succeeded.increment())
+                .doOnCancel(cancelled::increment)
+                .onErrorResume(e -> {
+                    (e instanceof TimeoutException ? timedOut : failed).increment();
+                    logger.debug("Branch {} failed: {}", url, e.toString());
+                    return Mono.empty();
+                });//@formatter:on
+    }
+
+    int required() {
+        return required;
+    }
+}
@@ -1,18 +1,33 @@
 package org.wjh.service.impl;
 
 import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
 import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.web.reactive.function.BodyInserters.fromFormData;
 
+import java.util.List;
 import java.util.Random;
 
+import javax.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.wjh.service.EchoMessage;
 import org.wjh.service.MessageService;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
@@ -26,25 +41,116 @@ public class MessageServiceImpl implements MessageService {
     @Value("${echo.remoteUrl}")
     private String remoteUrl;
 
+    @Value("${echo.remote.media-type:application/x-www-form-urlencoded}")
+    private MediaType remoteMediaType;
+
     private final WebClient webClient;
+    private final ServiceExecutor executor;
+
+    // In place of the single remote, if configured
+    @Nullable
+    private final FanOut fanOut;
+
+    // The prefix encoded once, for the echoes written into buffers
+    private byte[] prefixBytes;
 
-    private MessageServiceImpl(WebClient.Builder builder) {
-        webClient = builder.build();
+    private MessageServiceImpl(WebClient.Builder builder, ServiceExecutor executor, ObjectProvider<FanOut> fanOut) {
+        this.webClient = builder.build();
+        this.executor = executor;
+        this.fanOut = fanOut.getIfAvailable();
     }
 
     @Override
     public Mono<String> get(String input) {
         logger.trace("Calling get({}) ...", input);
 
-        Mono<String> result = isRemoteDefined() ? remoteGet(input) : Mono.just(input);
+        Mono<String> result;
+        if (fanOut != null) {
+            result = fanOutGet(fanOut, input);
+        } else {
+            result = isRemoteDefined() ? remoteGet(remoteUrl, input) : Mono.just(input);
+        }
+
+        return result.flatMap(this::processAsync);
+    }
+
+    @PostConstruct
+    private void encodePrefix() {
+        prefixBytes = prefix.getBytes(UTF_8);
+    }
+
+    @Override
+    public Mono<DataBuffer> getInto(String input, DataBufferFactory bufferFactory) {
+        logger.trace("Calling getInto({}) ...", input);
+
+        if (fanOut != null) {
+            return MessageService.super.getInto(input, bufferFactory);
+        }
+        if (isRemoteDefined()) {
+            // The processing delay first, then the remote echo is composed behind the prefix as is: the remote buffers
+            // are neither decoded into a string, nor copied (but by a factory which cannot compose)
+            return executor.execute(() -> {//@formatter:off
+                        delay();
+                        return bufferFactory.wrap(prefixBytes);
+                    })
+                    .flatMap(prefixBuffer -> prefixed(prefixBuffer, remoteGetBuffers(input)));//@formatter:on
+        }
 
-        return result.map(this::process);
+        // No intermediate string: the precomputed prefix and the input are written into one buffer of the exact size
+        return executor.execute(() -> {
+            delay();
+            DataBuffer buffer = bufferFactory.allocateBuffer(prefixBytes.length + utf8Length(input));
+            return buffer.write(prefixBytes).write(input, UTF_8);
+        });
     }
 
-    private Mono<String> remoteGet(String input) {
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the prefix followed by the body, joined by the factory of the prefix, e.g. into a composite buffer over
+     *         the same memory with Netty; all the buffers are released on error or cancellation
+     */
+    static Mono<DataBuffer> prefixed(DataBuffer prefix, Flux<DataBuffer> body) {
+        return DataBufferUtils.join(Flux.concat(Mono.just(prefix), body));
+    }
+
+    /**
+     * @return the (UTF-8) remote echo, as read off the connection
+     */
+    private Flux<DataBuffer> remoteGetBuffers(String input) {
         return webClient.get()//@formatter:off
                 .uri(remoteUrl, builder -> builder.queryParam("input", input).build())
                 .retrieve()
+                .bodyToFlux(DataBuffer.class);//@formatter:on
+    }
+
+    /**
+     * @return the echoes of the branches which succeeded, e.g. {@code [SUB::input, SUB::input]}
+     */
+    private Mono<String> fanOutGet(FanOut fanOut, String input) {
+        return fanOut.scatter(url -> remoteGet(url, input)).map(echoes -> "[" + String.join(", ", echoes) + "]");
+    }
+
+    private Mono<String> remoteGet(String url, String input) {
+        return webClient.get()//@formatter:off
+                .uri(url, builder -> builder.queryParam("input", input).build())
+                .retrieve()
                 .bodyToMono(String.class);//@formatter:on
     }
 
@@ -54,10 +160,14 @@ public class MessageServiceImpl implements MessageService {
 
         Mono<String> result = isRemoteDefined() ? remotePost(input) : Mono.just(input);
 
-        return result.map(this::process);
+        return result.flatMap(this::processAsync);
     }
 
     private Mono<String> remotePost(String input) {
+        if (!APPLICATION_FORM_URLENCODED.equalsTypeAndSubtype(remoteMediaType)) {
+            return remoteEcho(new EchoMessage(input)).map(EchoMessage::getText);
+        }
+
         return webClient.post()//@formatter:off
                  .uri(remoteUrl)
                  .contentType(APPLICATION_FORM_URLENCODED)
@@ -69,17 +179,74 @@ public class MessageServiceImpl implements MessageService {
                  .bodyToMono(String.class);//@formatter:on
     }
 
+    @Override
+    public Mono<EchoMessage> echo(EchoMessage message) {
+        logger.trace("Calling echo({}) ...", message);
+
+        Mono<EchoMessage> result = isRemoteDefined() ? remoteEcho(message) : Mono.just(message);
+
+        return result.flatMap(echoed -> executor.execute(() -> new EchoMessage(process(echoed.getText()))));
+    }
+
+    private Mono<EchoMessage> remoteEcho(EchoMessage message) {
+        return webClient.post()//@formatter:off
+                .uri(remoteUrl + "/message")
+                .contentType(remoteMessageType())
+                .accept(remoteMessageType())
+                .bodyValue(message)
+                .retrieve()
+                .bodyToMono(EchoMessage.class);//@formatter:on
+    }
+
+    @Override
+    public Mono<List<EchoMessage>> echoAll(List<EchoMessage> messages) {
+        logger.trace("Calling echoAll({} message(s)) ...", messages.size());
+
+        Mono<List<EchoMessage>> result = isRemoteDefined() ? remoteEchoAll(messages) : Mono.just(messages);
+
+        // One processing delay per batch, rather than per message
+        return result.flatMap(echoed -> executor.execute(() -> {
+            delay();
+            return echoed.stream().map(message -> new EchoMessage(prefix + message.getText())).collect(toList());
+        }));
+    }
+
+    private Mono<List<EchoMessage>> remoteEchoAll(List<EchoMessage> messages) {
+        return webClient.post()//@formatter:off
+                .uri(remoteUrl + "/batch")
+                .contentType(remoteMessageType())
+                .accept(remoteMessageType())
+                .bodyValue(messages)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<EchoMessage>>() {});//@formatter:on
+    }
+
+    /**
+     * The messages cannot be sent as forms, so they fall back to JSON.
+     */
+    private MediaType remoteMessageType() {
+        return APPLICATION_FORM_URLENCODED.equalsTypeAndSubtype(remoteMediaType) ? APPLICATION_JSON : remoteMediaType;
+    }
+
     private boolean isRemoteDefined() {
         return remoteUrl != null && remoteUrl.startsWith("http");
     }
 
     private final Random random = new Random();
+    private Mono<String> processAsync(String input) {
+        return executor.execute(() -> process(input));
+    }
+
     private String process(String input) {
+        delay();
+        return prefix + input;
+    }
+
+    private void delay() {
         try {
             Thread.sleep(200L + random.nextInt(100));
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-        return prefix + input;
     }
 }
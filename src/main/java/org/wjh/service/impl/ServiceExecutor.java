@@ -0,0 +1,164 @@
+package org.wjh.service.impl;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The execution strategy of the service stage (the processing of the messages), as configured by
+ * {@code echo.service.execution}:
+ * <ul>
+ * <li>{@code inline}: on the calling thread, i.e. the Netty event loop, for cheap non-blocking work only;</li>
+ * <li>{@code bounded-elastic}: on a bounded pool for blocking work, with a bounded queue beyond which the tasks are
+ * rejected (503);</li>
+ * <li>{@code parallel}: on a pool of one thread per core, for CPU heavy work;</li>
+ * <li>{@code virtual}: on a virtual thread per task (JDK 21+), falling back to {@code bounded-elastic} otherwise.</li>
+ * </ul>
+ * The queued and active tasks, the queue wait and the rejections are metered per strategy.
+ */
+@Component
+class ServiceExecutor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceExecutor.class);
+
+    enum Strategy {
+        INLINE, BOUNDED_ELASTIC, PARALLEL, VIRTUAL
+    }
+
+    private final Strategy strategy;
+
+    @Nullable
+    private final Scheduler scheduler;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Timer queueWait;
+    private final Counter rejected;
+
+    ServiceExecutor(@Value("${echo.service.execution:bounded-elastic}") Strategy strategy, //@formatter:off
+            @Value("${echo.service.threads:0}") int threads,
+            @Value("${echo.service.queue-capacity:1000}") int queueCapacity,
+            MeterRegistry registry) { //@formatter:on
+
+        Strategy actual = strategy;
+        ExecutorService virtualThreads = strategy == Strategy.VIRTUAL ? virtualThreadExecutor() : null;
+        if (strategy == Strategy.VIRTUAL && virtualThreads == null) {
+            logger.warn("Virtual threads are not available on this JDK, falling back to {}.", Strategy.BOUNDED_ELASTIC);
+            actual = Strategy.BOUNDED_ELASTIC;
+        }
+        this.strategy = actual;
+        this.scheduler = virtualThreads != null ? Schedulers.fromExecutorService(virtualThreads, "echo-virtual")
+                : scheduler(actual, threads, queueCapacity);
+
+        String tag = actual.name().toLowerCase(Locale.ROOT).replace('_', '-');
+        Gauge.builder("echo.service.tasks.queued", queued, AtomicInteger::get).tag("strategy", tag).register(registry);
+        Gauge.builder("echo.service.tasks.active", active, AtomicInteger::get).tag("strategy", tag).register(registry);
+        this.queueWait = Timer.builder("echo.service.tasks.wait").tag("strategy", tag).register(registry);
+        this.rejected = Counter.builder("echo.service.tasks.rejected").tag("strategy", tag).register(registry);
+
+        logger.info("Service execution strategy: {}", tag);
+    }
+
+    @Nullable
+    private static Scheduler scheduler(Strategy strategy, int threads, int queueCapacity) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        switch (strategy) {
+        case BOUNDED_ELASTIC:
+            return Schedulers.newBoundedElastic(threads > 0 ? threads : 10 * cores, queueCapacity, "echo-service");
+        case PARALLEL:
+            return Schedulers.newParallel("echo-cpu", threads > 0 ? threads : cores);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up reflectively as the sources target Java 8,
+     *         or {@code null} if not available
+     */
+    @Nullable
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the result of the task, executed as per the strategy upon subscription
+     */
+    <T> Mono<T> execute(Callable<T> task) {
+        if (scheduler == null) {
+            return Mono.fromCallable(() -> run(task));
+        }
+
+        return Mono.defer(() -> {
+            long queuedAt = System.nanoTime();
+            AtomicBoolean dequeued = new AtomicBoolean();
+            queued.incrementAndGet();
+
+            return Mono.fromCallable(() -> {//@formatter:off
+                        if (dequeued.compareAndSet(false, true)) {
+                            queued.decrementAndGet();
+                        }
+                        queueWait.record(System.nanoTime() - queuedAt, NANOSECONDS);
+                        return run(task);
+                    })
+                    .subscribeOn(scheduler)
+                    .doFinally(signal -> {
+                        // Rejected, or cancelled while queued
+                        if (dequeued.compareAndSet(false, true)) {
+                            queued.decrementAndGet();
+                        }
+                    })
+                    .onErrorMap(RejectedExecutionException.class, e -> {
+                        rejected.increment();
+                        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Service queue is full", e);
+                    });//@formatter:on
+        });
+    }
+
+    private <T> T run(Callable<T> task) throws Exception {
+        active.incrementAndGet();
+        try {
+            return task.call();
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.dispose();
+        }
+    }
+}
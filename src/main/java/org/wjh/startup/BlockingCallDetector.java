@@ -0,0 +1,69 @@
+package org.wjh.startup;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.ClassUtils;
+
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+
+/**
+ * Detect the blocking calls on the non-blocking threads (the Netty event loops, and the Reactor parallel/single
+ * schedulers) with BlockHound, if {@code echo.blockhound} is {@code report} (logged once per blocking method) or
+ * {@code fail} (the call throws); it is installed as early as the context is initialized, and once per JVM.
+ * <p>
+ * BlockHound is an optional dependency, and on JDK 13+ it requires {@code -XX:+AllowRedefinitionToAddDeleteMethods}.
+ */
+public class BlockingCallDetector implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockingCallDetector.class);
+
+    private static volatile boolean installed;
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        String mode = context.getEnvironment().getProperty("echo.blockhound", "off");
+        if ("off".equalsIgnoreCase(mode) || installed) {
+            return;
+        }
+        if (!ClassUtils.isPresent("reactor.blockhound.BlockHound", getClass().getClassLoader())) {
+            logger.warn("echo.blockhound={} ignored, as BlockHound is not on the classpath.", mode);
+            return;
+        }
+
+        synchronized (BlockingCallDetector.class) {
+            if (!installed) {
+                installed = install("fail".equalsIgnoreCase(mode));
+            }
+        }
+    }
+
+    private static boolean install(boolean fail) {
+        Set<String> reported = ConcurrentHashMap.newKeySet();
+        try {
+            BlockHound.builder()//@formatter:off
+                    // The log appenders write synchronously, wherever the logging happens
+                    .allowBlockingCallsInside("ch.qos.logback.classic.Logger", "callAppenders")
+                    .blockingMethodCallback(method -> {
+                        BlockingOperationError error = new BlockingOperationError(method);
+                        if (fail) {
+                            throw error;
+                        }
+                        if (reported.add(method.toString())) {
+                            logger.warn("Blocking call on the non-blocking thread {}", Thread.currentThread().getName(), error);
+                        }
+                    })
+                    .install();//@formatter:on
+            logger.info("BlockHound installed, blocking calls on non-blocking threads {}.", fail ? "fail" : "are reported");
+            return true;
+        } catch (RuntimeException | LinkageError e) {
+            logger.warn("BlockHound could not be installed (on JDK 13+, run with -XX:+AllowRedefinitionToAddDeleteMethods).", e);
+            return false;
+        }
+    }
+}
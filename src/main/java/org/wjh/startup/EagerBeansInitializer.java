@@ -0,0 +1,65 @@
+package org.wjh.startup;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.StringUtils;
+
+/**
+ * With {@code spring.main.lazy-initialization=true}, keep the beans of the packages in
+ * {@code echo.startup.eager-packages} eager, i.e. the beans which take effect by being created (e.g. the Sleuth
+ * instrumentation installing the Reactor hooks) rather than by being looked up.
+ */
+public class EagerBeansInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        if (!context.getEnvironment().getProperty("spring.main.lazy-initialization", Boolean.class, false)) {
+            return;
+        }
+
+        String packages = context.getEnvironment().getProperty("echo.startup.eager-packages", "org.springframework.cloud.sleuth");
+        context.addBeanFactoryPostProcessor(new EagerBeansPostProcessor(StringUtils.commaDelimitedListToStringArray(packages)));
+    }
+
+    /**
+     * An explicit {@code lazyInit=false} is respected by the post processor making the beans lazy.
+     */
+    private static class EagerBeansPostProcessor implements BeanFactoryPostProcessor {
+
+        private final String[] packages;
+
+        EagerBeansPostProcessor(String[] packages) {
+            this.packages = packages;
+        }
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (isEager(beanFactory, definition)) {
+                    definition.setLazyInit(false);
+                }
+            }
+        }
+
+        private boolean isEager(ConfigurableListableBeanFactory beanFactory, BeanDefinition definition) {
+            String className = definition.getBeanClassName();
+            if (className == null && definition.getFactoryBeanName() != null && beanFactory.containsBeanDefinition(definition.getFactoryBeanName())) {
+                // A @Bean method, which belongs to the package of its configuration class
+                className = beanFactory.getBeanDefinition(definition.getFactoryBeanName()).getBeanClassName();
+            }
+            if (className != null) {
+                for (String p : packages) {
+                    if (className.startsWith(p.trim() + ".")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
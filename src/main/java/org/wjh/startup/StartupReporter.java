@@ -0,0 +1,62 @@
+package org.wjh.startup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+/**
+ * Report the startup time and the memory footprint (resident set size, where available) once the application is
+ * ready, per active profile; and exit right away if {@code echo.startup.exit=true}, e.g. for a training run dumping an
+ * AppCDS archive.
+ * <p>
+ * Registered in {@code META-INF/spring.factories}, so that it reports whichever beans are (or not) in use.
+ */
+public class StartupReporter implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupReporter.class);
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        Environment env = context.getEnvironment();
+
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        logger.info("Ready in {} ms since the JVM start, profiles {}, {} bean(s), RSS {}, heap used {} KiB", //@formatter:off
+                uptime, Arrays.toString(env.getActiveProfiles()), context.getBeanDefinitionCount(),
+                residentSetSize(), heapUsed / 1024); //@formatter:on
+
+        if (env.getProperty("echo.startup.exit", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    private static String residentSetSize() {
+        if (!Files.isReadable(PROC_STATUS)) {
+            return "n/a";
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    return line.substring("VmRSS:".length()).trim();
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to read {}.", PROC_STATUS, e);
+        }
+        return "n/a";
+    }
+}
@@ -6,23 +6,57 @@ import org.slf4j.LoggerFactory;
 import brave.Span;
 import brave.Tracer.SpanInScope;
 import brave.Tracing;
+import brave.propagation.TraceContext;
 
 public abstract class TracingUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(TracingUtils.class);
 
+    private static final String W3C_VERSION = "00";
+    private static final String W3C_SAMPLED = "01";
+    private static final String W3C_NOT_SAMPLED = "00";
+    private static final String ZERO_PADDING = "0000000000000000";
+
     public static void executeInContext(TracingContext context, Runnable runable) {
         try (SpanInScope ws = Tracing.currentTracer().withSpanInScope(context.span)) {
             runable.run();
         } catch (RuntimeException | Error e) {
-            context.span.error(e);
+            if (context.span != null) {
+                context.span.error(e);
+            }
             logger.error("Unexpected error occurred.", e);
             //throw e;
         }
     }
 
+    /**
+     * Format the trace context as a W3C {@code traceparent} header value, i.e. {@code 00-<trace-id>-<parent-id>-<flags>}.
+     */
+    public static String traceparent(TraceContext context, String traceId) {
+        StringBuilder builder = new StringBuilder(55).append(W3C_VERSION).append('-');
+        if (traceId.length() < 32) {
+            // 64-bit trace IDs are left-padded to the 128-bit form required by W3C
+            builder.append(ZERO_PADDING, 0, 32 - traceId.length());
+        }
+        builder.append(traceId).append('-').append(context.spanIdString()).append('-');
+        builder.append(Boolean.TRUE.equals(context.sampled()) ? W3C_SAMPLED : W3C_NOT_SAMPLED);
+        return builder.toString();
+    }
+
     public static class TracingContext {
         public Span span;
+
+        private String traceId;
+
+        /**
+         * @return the hex trace ID of the bound span (computed once and cached), or {@code null} if there is no span
+         */
+        public String traceId() {
+            if (traceId == null && span != null) {
+                traceId = span.context().traceIdString();
+            }
+            return traceId;
+        }
     }
 
 }
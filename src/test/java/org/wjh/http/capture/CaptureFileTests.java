@@ -0,0 +1,109 @@
+package org.wjh.http.capture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.BeanUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.ClassUtils;
+import org.wjh.http.logging.HttpLogger.MessageDirection;
+import org.wjh.http.logging.Protocol;
+import org.wjh.http.logging.impl.DefaultHttpLogger;
+
+class CaptureFileTests {
+
+    @Test
+    void givenCapturedExchanges_whenWrittenAndRead_thenRoundTripped(@TempDir Path dir) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", "application/x-www-form-urlencoded");
+        headers.add("Accept", "text/plain");
+        headers.add("Accept", "application/json");
+        CapturedExchange post = new CapturedExchange(300_000_000_000L, 1500, "POST", "/echo?x=%C3%A9", "5af7183fb1d4cf5f", headers,
+                "input=h%C3%A9llo".getBytes(UTF_8), 200, 17);
+        CapturedExchange get = new CapturedExchange(300_000_000_100L, 90, "GET", "/echo?input=hi", null, new HttpHeaders(),
+                new byte[0], 503, 0);
+
+        Path file = dir.resolve("capture.ecap.gz");
+        try (CaptureWriter writer = new CaptureWriter(file, 1234L)) {
+            writer.write(post);
+            writer.write(get);
+        }
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertThat(reader.getStartEpochMillis()).isEqualTo(1234L);
+
+            CapturedExchange read = reader.read();
+            assertThat(read).isEqualToIgnoringGivenFields(post, "headers", "body");
+            assertThat(read.getHeaders()).isEqualTo(headers);
+            assertThat(read.getBody()).isEqualTo(post.getBody());
+
+            read = reader.read();
+            assertThat(read).isEqualToIgnoringGivenFields(get, "headers", "body");
+            assertThat(read.getHeaders()).isEmpty();
+            assertThat(read.getTraceId()).isNull();
+
+            assertThat(reader.read()).isNull();
+        }
+    }
+
+    @Test
+    void givenBodyWithRedactedField_whenLoggedThenCaptured_thenRawBodyRoundTripped(@TempDir Path dir) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        byte[] body = "input=hello&password=s3cr3t-value".getBytes(UTF_8);
+
+        // As in the logging stage: the body is logged (redacted) first, then the same array is captured
+        redactingLogger("password").logRequest(MessageDirection.Inbound, "POST", URI.create("/echo"), Protocol.HTTP_1_1, headers, body);
+        Path file = dir.resolve("capture.ecap");
+        try (CaptureWriter writer = new CaptureWriter(file, 0)) {
+            writer.write(new CapturedExchange(1, 2, "POST", "/echo", null, headers, body, 200, 17));
+        }
+
+        try (CaptureReader reader = new CaptureReader(file)) {
+            assertThat(new String(reader.read().getBody(), UTF_8)).isEqualTo("input=hello&password=s3cr3t-value");
+        }
+    }
+
+    private static DefaultHttpLogger redactingLogger(String... fields) throws Exception {
+        Constructor<?> redactor = ClassUtils.forName("org.wjh.http.logging.impl.Redactor", null).getDeclaredConstructor(String[].class,
+                String[].class, String[].class);
+        DefaultHttpLogger httpLogger = new DefaultHttpLogger();
+        ReflectionTestUtils.setField(httpLogger, "redactor", BeanUtils.instantiateClass(redactor, new String[0], new String[0], fields));
+        return httpLogger;
+    }
+
+    @Test
+    void givenTruncatedRecord_whenRead_thenEofException() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CaptureWriter writer = new CaptureWriter(out, 0)) {
+            writer.write(new CapturedExchange(1, 2, "GET", "/echo", null, new HttpHeaders(), new byte[0], 200, 5));
+        }
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 2);
+
+        try (CaptureReader reader = new CaptureReader(new ByteArrayInputStream(truncated))) {
+            assertThatThrownBy(reader::read).isInstanceOf(EOFException.class);
+        }
+    }
+
+    @Test
+    void givenSpeeds_whenParsed_thenFactors() {
+        assertThat(ReplayDriver.parseSpeed("1x")).isEqualTo(1);
+        assertThat(ReplayDriver.parseSpeed("2.5X")).isEqualTo(2.5);
+        assertThat(ReplayDriver.parseSpeed("max")).isEqualTo(0);
+        assertThatThrownBy(() -> ReplayDriver.parseSpeed("0x")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,250 @@
+package org.wjh.http.logging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.wjh.http.logging.ExchangeState.REQUEST;
+import static org.wjh.http.logging.ExchangeState.RESPONSE;
+import static org.wjh.http.logging.HttpLogger.EMPTY_BODY;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.wjh.http.logging.HttpLogger.BodyMode;
+import org.wjh.http.logging.impl.DefaultHttpLogger;
+import org.wjh.reactor.DigestCaptureSink;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Stress tests in the spirit of jcstress: each iteration races the actors on a fresh state, then the outcome is
+ * checked against the forbidden ones (a message never logged, logged twice, or logged with a torn body).
+ */
+class ExchangeStateTests {
+
+    private static final int ITERATIONS = 10_000;
+
+    private static ExecutorService actors;
+
+    @BeforeAll
+    static void startActors() {
+        actors = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void stopActors() {
+        actors.shutdownNow();
+    }
+
+    @Test
+    void givenNoBody_whenHeadersWritten_thenLoggedInline() {
+        RecordingState state = new RecordingState(1);
+
+        state.noBody(REQUEST);
+        assertThat(state.isLogged(REQUEST)).isFalse();
+
+        assertThat(state.headersWritten(REQUEST)).isTrue();
+        assertThat(state.isLogged(REQUEST)).isTrue();
+        assertThat(state.body).isSameAs(EMPTY_BODY);
+
+        assertThat(state.headersWritten(REQUEST)).isFalse();
+        assertThat(state.logCount.get()).isEqualTo(1);
+        assertThat(state.isLogged(RESPONSE)).isFalse();
+    }
+
+    @Test
+    void givenCompletedWiretap_whenHeadersWritten_thenLoggedWithCapturedBody() throws InterruptedException {
+        RecordingState state = new RecordingState(1);
+        DefaultDataBufferFactory factory = new DefaultDataBufferFactory();
+        Flux<DataBuffer> body = Flux.just("A", "B", "C").map(s -> factory.wrap(s.getBytes(UTF_8)));
+
+        WiretapRecorder recorder = new WiretapRecorder(body, null, state, RESPONSE, -1);
+        Flux.from(recorder.getPublisher()).blockLast();
+        assertThat(state.isLogged(RESPONSE)).isFalse();
+
+        state.headersWritten(RESPONSE);
+
+        assertThat(state.logged.await(5, SECONDS)).isTrue();
+        assertThat(new String(state.body, UTF_8)).isEqualTo("ABC");
+    }
+
+    @Test
+    void givenDigestWiretap_whenHeadersWritten_thenLoggedWithDigestAndSize() throws InterruptedException {
+        RecordingState state = new RecordingState(1);
+        DefaultDataBufferFactory factory = new DefaultDataBufferFactory();
+        Flux<DataBuffer> body = Flux.just("A", "B", "C").map(s -> factory.wrap(s.getBytes(UTF_8)));
+
+        WiretapRecorder recorder = new WiretapRecorder(body, null, state, RESPONSE, new DigestCaptureSink(ExchangeState.DIGEST_ALGORITHM,
+                (digest, length) -> state.bodyDigested(RESPONSE, digest, length)));
+        Flux.from(recorder.getPublisher()).blockLast();
+        state.headersWritten(RESPONSE);
+
+        assertThat(state.logged.await(5, SECONDS)).isTrue();
+        assertThat(new String(state.body, UTF_8))
+                .isEqualTo("[3 byte(s), sha-256=b5d4045c3f466fa91fe2cc6abe79232a1a57cdf104f7a26e716e0a1e2789df78]");
+        assertThat(state.bodySize(RESPONSE, new HttpHeaders())).isEqualTo(3);
+    }
+
+    @Test
+    void givenEmptyDigestWiretap_whenHeadersWritten_thenLoggedWithEmptyBody() throws InterruptedException {
+        RecordingState state = new RecordingState(1);
+
+        WiretapRecorder recorder = new WiretapRecorder(Flux.empty(), null, state, RESPONSE, new DigestCaptureSink(ExchangeState.DIGEST_ALGORITHM,
+                (digest, length) -> state.bodyDigested(RESPONSE, digest, length)));
+        Flux.from(recorder.getPublisher()).blockLast();
+        state.headersWritten(RESPONSE);
+
+        assertThat(state.logged.await(5, SECONDS)).isTrue();
+        assertThat(state.body).isSameAs(EMPTY_BODY);
+        assertThat(state.bodySize(RESPONSE, new HttpHeaders())).isEqualTo(0);
+    }
+
+    @Test
+    void givenStreamedResponse_whenBodyEnded_thenExchangeTimedToItsEnd() throws InterruptedException {
+        RecordingState state = new RecordingState(2);
+        HttpLogger streaming = new DefaultHttpLogger() {
+
+            @Override
+            public BodyMode bodyMode() {
+                return BodyMode.STREAMING;
+            }
+        };
+        DefaultDataBufferFactory factory = new DefaultDataBufferFactory();
+        Flux<DataBuffer> body = Flux.just("A", "B", "C").map(s -> factory.wrap(s.getBytes(UTF_8)));
+
+        state.noBody(REQUEST);
+        state.headersWritten(REQUEST);
+        state.headersWritten(RESPONSE);
+        WiretapRecorder recorder = state.recordBody(RESPONSE, -1, body, null, streaming);
+        assertThat(state.logged.await(5, SECONDS)).isTrue();
+        assertThat(ExchangeState.flushLogging(Duration.ofSeconds(5))).isTrue();
+        assertThat(state.exchangeLogged.getCount()).isEqualTo(1);
+        assertThat(state.durationNanos()).isEqualTo(-1);
+
+        Thread.sleep(50);
+        Flux.from(recorder.getPublisher()).blockLast();
+
+        assertThat(state.exchangeLogged.await(5, SECONDS)).isTrue();
+        assertThat(state.exchangeDurationNanos).isGreaterThanOrEqualTo(MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void givenRacingHeadersCompleteCancelAndError_whenRun_thenLoggedExactlyOnce() throws Exception {
+        List<RecordingState> states = new ArrayList<>(ITERATIONS);
+        CountDownLatch allLogged = new CountDownLatch(ITERATIONS);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            RecordingState state = new RecordingState(allLogged);
+            states.add(state);
+
+            race(() -> state.headersWritten(RESPONSE), //@formatter:off
+                    () -> terminate(state, "complete"),
+                    () -> terminate(state, "cancel"),
+                    () -> terminate(state, "error")); //@formatter:on
+        }
+
+        assertThat(allLogged.await(30, SECONDS)).isTrue();
+        for (RecordingState state : states) {
+            assertThat(state.logCount.get()).isEqualTo(1);
+            assertThat(state.isLogged(RESPONSE)).isTrue();
+            assertThat(state.isLogged(REQUEST)).isFalse();
+            assertThat(new String(state.body, UTF_8)).isIn("complete", "cancel", "error");
+        }
+    }
+
+    @Test
+    void givenRacingRequestAndResponse_whenRun_thenBothLoggedExactlyOnce() throws Exception {
+        List<RecordingState> states = new ArrayList<>(ITERATIONS);
+        CountDownLatch allLogged = new CountDownLatch(2 * ITERATIONS);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            RecordingState state = new RecordingState(allLogged);
+            states.add(state);
+
+            race(() -> state.headersWritten(REQUEST), //@formatter:off
+                    () -> state.noBody(REQUEST),
+                    () -> state.headersWritten(RESPONSE),
+                    () -> state.noBody(RESPONSE)); //@formatter:on
+        }
+
+        assertThat(allLogged.await(30, SECONDS)).isTrue();
+        for (RecordingState state : states) {
+            assertThat(state.logCount.get()).isEqualTo(2);
+        }
+    }
+
+    private void terminate(ExchangeState state, String body) {
+        if (state.claimRelease(RESPONSE)) {
+            state.bodyComplete(RESPONSE, body.getBytes(UTF_8));
+        }
+    }
+
+    private void race(Runnable... actions) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(actions.length);
+        for (Runnable action : actions) {
+            futures.add(actors.submit(() -> {
+                start.await();
+                action.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static class RecordingState extends ExchangeState {
+
+        private final AtomicInteger logCount = new AtomicInteger();
+        private final CountDownLatch logged;
+
+        private volatile byte[] body;
+
+        private final CountDownLatch exchangeLogged = new CountDownLatch(1);
+        private volatile long exchangeDurationNanos = -1;
+
+        RecordingState(int expectedLogs) {
+            this(new CountDownLatch(expectedLogs));
+        }
+
+        RecordingState(CountDownLatch logged) {
+            this.logged = logged;
+        }
+
+        @Override
+        protected void log(int message, byte[] body) {
+            this.body = body;
+            logCount.incrementAndGet();
+            logged.countDown();
+        }
+
+        @Override
+        protected void logChunk(int message, int sequence, byte[] chunk) {
+        }
+
+        @Override
+        protected void logTrailer(int message, int chunks, long totalBytes, long loggedBytes) {
+        }
+
+        @Override
+        protected void exchangeLogged() {
+            exchangeDurationNanos = durationNanos();
+            exchangeLogged.countDown();
+        }
+    }
+}
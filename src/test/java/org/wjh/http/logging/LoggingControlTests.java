@@ -0,0 +1,54 @@
+package org.wjh.http.logging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.net.URI;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.wjh.http.logging.LoggingControl.Direction;
+import org.wjh.http.logging.LoggingControl.Mode;
+
+class LoggingControlTests {
+
+    private static final URI ECHO = URI.create("http://localhost:8080/echo?input=hello");
+    private static final URI BATCH = URI.create("http://localhost:8080/echo/batch");
+
+    @Test
+    void givenBooleanProperties_whenCreated_thenBodiesOrOff() {
+        LoggingControl control = new LoggingControl("true", "false", 0.01);
+
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.GET, ECHO)).isEqualTo(Mode.BODIES);
+        assertThat(control.modeOf(Direction.CLIENT, HttpMethod.GET, ECHO)).isEqualTo(Mode.OFF);
+    }
+
+    @Test
+    void givenRouteModes_whenResolved_thenFirstMatchingRouteWins() {
+        LoggingControl control = new LoggingControl("off", "off", 0.01);
+        control.configure(Direction.SERVER, Mode.HEADERS, "GET /echo", null);
+        control.configure(Direction.SERVER, Mode.BODIES, "/echo/**", null);
+
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.GET, ECHO)).isEqualTo(Mode.HEADERS);
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.POST, ECHO)).isEqualTo(Mode.BODIES);
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.POST, BATCH)).isEqualTo(Mode.BODIES);
+        assertThat(control.modeOf(Direction.CLIENT, HttpMethod.GET, ECHO)).isEqualTo(Mode.OFF);
+
+        control.reset(Direction.SERVER, "GET /echo");
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.GET, ECHO)).isEqualTo(Mode.BODIES);
+
+        control.reset(Direction.SERVER, null);
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.POST, BATCH)).isEqualTo(Mode.OFF);
+    }
+
+    @Test
+    void givenSampledMode_whenResolved_thenBodiesOrOffAsPerRate() {
+        LoggingControl control = new LoggingControl("sampled", "off", 0);
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.GET, ECHO)).isEqualTo(Mode.OFF);
+
+        control.configure(Direction.SERVER, Mode.SAMPLED, null, 1.0);
+        assertThat(control.modeOf(Direction.SERVER, HttpMethod.GET, ECHO)).isEqualTo(Mode.BODIES);
+
+        assertThatIllegalArgumentException().isThrownBy(() -> control.configure(Direction.SERVER, Mode.SAMPLED, null, 1.5));
+    }
+}
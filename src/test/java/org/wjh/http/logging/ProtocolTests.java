@@ -0,0 +1,27 @@
+package org.wjh.http.logging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+class ProtocolTests {
+
+    @Test
+    void givenStreamIdHeader_whenResolved_thenHttp2WithStream() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-http2-stream-id", "3");
+
+        Protocol protocol = Protocol.of(headers, Protocol.HTTP_1_1);
+
+        assertThat(protocol.getVersion()).isEqualTo("HTTP/2.0");
+        assertThat(protocol.getStreamId()).isEqualTo(3);
+        assertThat(protocol).hasToString("HTTP/2.0 (stream 3)");
+    }
+
+    @Test
+    void givenNoStreamIdHeader_whenResolved_thenOtherwise() {
+        assertThat(Protocol.of(new HttpHeaders(), Protocol.HTTP_1_1)).isSameAs(Protocol.HTTP_1_1);
+        assertThat(Protocol.of(new HttpHeaders(), Protocol.HTTP_2)).isSameAs(Protocol.HTTP_2);
+    }
+}
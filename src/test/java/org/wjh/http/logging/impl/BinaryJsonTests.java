@@ -0,0 +1,47 @@
+package org.wjh.http.logging.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+class BinaryJsonTests {
+
+    private static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    private final Object value = Collections.singletonMap("items", Arrays.asList(Collections.singletonMap("text", "hello"), 42));
+
+    @Test
+    void givenContentTypes_whenCheck_thenOnlyCborAndSmileAreBinaryJson() {
+        assertThat(BinaryJson.isBinaryJson(MediaType.APPLICATION_CBOR)).isTrue();
+        assertThat(BinaryJson.isBinaryJson(APPLICATION_SMILE)).isTrue();
+        assertThat(BinaryJson.isBinaryJson(MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(BinaryJson.isBinaryJson(null)).isFalse();
+    }
+
+    @Test
+    void givenCborOrSmileBody_whenToJson_thenJsonText() throws IOException {
+        byte[] cbor = new ObjectMapper(new CBORFactory()).writeValueAsBytes(value);
+        byte[] smile = new ObjectMapper(new SmileFactory()).writeValueAsBytes(value);
+
+        assertThat(new String(BinaryJson.toJson(MediaType.APPLICATION_CBOR, cbor), UTF_8)).isEqualTo("{\"items\":[{\"text\":\"hello\"},42]}");
+        assertThat(new String(BinaryJson.toJson(APPLICATION_SMILE, smile), UTF_8)).isEqualTo("{\"items\":[{\"text\":\"hello\"},42]}");
+    }
+
+    @Test
+    void givenMalformedBody_whenToJson_thenIOException() {
+        byte[] truncated = { (byte) 0xBF, 0x64, 't' }; // an indefinite map with a truncated key
+
+        assertThatThrownBy(() -> BinaryJson.toJson(MediaType.APPLICATION_CBOR, truncated)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,89 @@
+package org.wjh.http.logging.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+class ContentEncodingsTests {
+
+    private static final String TEXT = "input=SUB%3A%3Ahello&test=value+contains+%3D+%26+%24+special+chars.";
+
+    @Test
+    void givenNoOrIdentityEncoding_whenCheck_thenNotEncoded() {
+        assertThat(ContentEncodings.isEncoded(new HttpHeaders())).isFalse();
+        assertThat(ContentEncodings.isEncoded(headers("identity"))).isFalse();
+        assertThat(ContentEncodings.isEncoded(headers("gzip"))).isTrue();
+    }
+
+    @Test
+    void givenGzipBody_whenDecode_thenOriginalText() throws IOException {
+        ContentEncodings.Decoded decoded = ContentEncodings.decode(headers("gzip"), gzip(TEXT.getBytes(UTF_8)), 1024);
+
+        assertThat(decoded.unsupported).isNull();
+        assertThat(decoded.truncated).isFalse();
+        assertThat(new String(decoded.bytes, UTF_8)).isEqualTo(TEXT);
+    }
+
+    @Test
+    void givenZlibOrRawDeflateBody_whenDecode_thenOriginalText() throws IOException {
+        for (boolean raw : new boolean[] { false, true }) {
+            ContentEncodings.Decoded decoded = ContentEncodings.decode(headers("deflate"), deflate(TEXT.getBytes(UTF_8), raw), 1024);
+
+            assertThat(decoded.unsupported).isNull();
+            assertThat(new String(decoded.bytes, UTF_8)).isEqualTo(TEXT);
+        }
+    }
+
+    @Test
+    void givenDecompressionBomb_whenDecode_thenCappedAtLimit() throws IOException {
+        byte[] bomb = gzip(new byte[16 * 1024 * 1024]);
+        assertThat(bomb.length).isLessThan(64 * 1024);
+
+        ContentEncodings.Decoded decoded = ContentEncodings.decode(headers("gzip"), bomb, 4096);
+
+        assertThat(decoded.truncated).isTrue();
+        assertThat(decoded.bytes).hasSize(4096);
+    }
+
+    @Test
+    void givenUnknownEncoding_whenDecode_thenReportedUnsupported() {
+        byte[] body = TEXT.getBytes(UTF_8);
+        ContentEncodings.Decoded decoded = ContentEncodings.decode(headers("compress"), body, 1024);
+
+        assertThat(decoded.unsupported).isEqualTo("compress");
+        assertThat(decoded.bytes).isSameAs(body);
+    }
+
+    private HttpHeaders headers(String contentEncoding) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        return headers;
+    }
+
+    private byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] deflate(byte[] bytes, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,29 @@
+package org.wjh.http.logging.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.wjh.http.logging.HttpLogger.MessageDirection.Inbound;
+
+import java.net.URI;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.wjh.http.logging.Protocol;
+
+class DefaultHttpLoggerTests {
+
+    @Test
+    void givenRedactedFormField_whenLogged_thenCapturedBodyUnchanged() {
+        DefaultHttpLogger httpLogger = new DefaultHttpLogger();
+        ReflectionTestUtils.setField(httpLogger, "redactor", new Redactor(new String[0], new String[0], new String[] { "password" }));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        byte[] body = "input=hello&password=s3cr3t-value".getBytes(UTF_8);
+
+        httpLogger.logRequest(Inbound, "POST", URI.create("/echo"), Protocol.HTTP_1_1, headers, body);
+
+        assertThat(new String(body, UTF_8)).isEqualTo("input=hello&password=s3cr3t-value");
+    }
+}
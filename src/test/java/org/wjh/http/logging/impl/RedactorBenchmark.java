@@ -0,0 +1,86 @@
+package org.wjh.http.logging.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.MediaType;
+
+/**
+ * Measures the in-place redaction of JSON bodies of various sizes, against decoding the body to a string then masking
+ * it with a regular expression.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedactorBenchmark {
+
+    private static final Pattern PASSWORD_PATTERN = Pattern.compile("(\"password\"\\s*:\\s*)(\"(?:[^\"\\\\]|\\\\.)*\"|[^,}\\]\\s]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    @Param({ "256", "4096", "65536", "1048576" })
+    public int bodySize;
+
+    private Redactor redactor;
+    private byte[] body;
+    private byte[] scratch;
+
+    @Setup
+    public void setup() {
+        redactor = new Redactor(new String[0], new String[0], new String[] { "password" });
+
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; builder.length() < bodySize; i++) {
+            builder.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"user-").append(i)
+                    .append("\",\"password\":\"p@ss-").append(i).append("\",\"tags\":[\"a\",\"b\"]}");
+        }
+        body = builder.append("]").toString().getBytes(UTF_8);
+        scratch = new byte[body.length];
+    }
+
+    @Benchmark
+    public int copyOnly() {
+        System.arraycopy(body, 0, scratch, 0, body.length);
+        return scratch.length;
+    }
+
+    @Benchmark
+    public int inPlace() {
+        // The captured bytes are redacted in place, the copy only restores the input for the next invocation
+        System.arraycopy(body, 0, scratch, 0, body.length);
+        return redactor.redactBody(MediaType.APPLICATION_JSON, UTF_8, scratch, scratch.length);
+    }
+
+    @Benchmark
+    public String regex() {
+        Matcher matcher = PASSWORD_PATTERN.matcher(new String(body, UTF_8));
+        return matcher.replaceAll("$1\"" + Redactor.MASK + "\"");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(RedactorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
@@ -0,0 +1,90 @@
+package org.wjh.http.logging.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_16;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+class RedactorTests {
+
+    private final Redactor redactor = new Redactor(new String[] { "Authorization", "Cookie" }, new String[0],
+            new String[] { "password", "$.user.token" });
+
+    @Test
+    void givenDeniedOrNotAllowedHeader_whenCheck_thenRedacted() {
+        assertThat(redactor.isRedactedHeader("authorization")).isTrue();
+        assertThat(redactor.isRedactedHeader("COOKIE")).isTrue();
+        assertThat(redactor.isRedactedHeader("Content-Type")).isFalse();
+
+        Redactor allowing = new Redactor(new String[0], new String[] { "Content-Type" }, new String[0]);
+        assertThat(allowing.isRedactedHeader("content-type")).isFalse();
+        assertThat(allowing.isRedactedHeader("X-Api-Key")).isTrue();
+    }
+
+    @Test
+    void givenJsonWithFieldAtAnyDepth_whenRedact_thenValuesMasked() {
+        assertThat(redactJson("{\"Password\": \"s3cr3t-value\", \"other\":{\"password\":12345678,\"x\":[1,2]}}"))
+                .isEqualTo("{\"Password\": \"***\", \"other\":{\"password\":\"***\",\"x\":[1,2]}}");
+        assertThat(redactJson("[{\"password\":{\"nested\":\"object\"}},{\"password\":null}]"))
+                .isEqualTo("[{\"password\":\"***\"},{\"password\":****}]");
+    }
+
+    @Test
+    void givenJsonWithPath_whenRedact_thenOnlyPathFromRootMasked() {
+        assertThat(redactJson("{\"user\":{\"token\":\"abcdefgh\",\"name\":\"token\"},\"token\":\"keep\"}"))
+                .isEqualTo("{\"user\":{\"token\":\"***\",\"name\":\"token\"},\"token\":\"keep\"}");
+        assertThat(redactJson("{\"other\":{\"user\":{\"token\":\"abcdefgh\"}}}"))
+                .isEqualTo("{\"other\":{\"user\":{\"token\":\"abcdefgh\"}}}");
+    }
+
+    @Test
+    void givenJsonWithEscapedQuotes_whenRedact_thenStringsSkippedAsWhole() {
+        assertThat(redactJson("{\"note\":\"say \\\"password\\\": x\",\"password\":\"a\\\"bcdef\"}"))
+                .isEqualTo("{\"note\":\"say \\\"password\\\": x\",\"password\":\"***\"}");
+    }
+
+    @Test
+    void givenForm_whenRedact_thenFieldValuesMasked() {
+        assertThat(redact(MediaType.APPLICATION_FORM_URLENCODED, "input=hello&password=p%40ss+word&pw=1"))
+                .isEqualTo("input=hello&password=***&pw=1");
+        assertThat(redact(MediaType.APPLICATION_FORM_URLENCODED, "password=ab&password=")).isEqualTo("password=**&password=");
+    }
+
+    @Test
+    void givenNotTokenizableBody_whenRedact_thenUnchangedOrMaskedAsWhole() {
+        byte[] text = "password=secret".getBytes(UTF_8);
+        assertThat(redactor.redactBody(MediaType.TEXT_PLAIN, UTF_8, text, text.length)).isEqualTo(text.length);
+
+        byte[] utf16 = "{\"password\":\"secret\"}".getBytes(UTF_16);
+        assertThat(redactor.redactBody(MediaType.APPLICATION_JSON, UTF_16, utf16, utf16.length)).isEqualTo(-1);
+    }
+
+    @Test
+    void givenTargetShorterThanBody_whenRedactedCopy_thenPrefixOfRedactedBodyAndBodyUnchanged() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String json = "{\"password\":\"s3cr3t-value\",\"input\":\"hello\"}";
+        byte[] body = json.getBytes(UTF_8);
+        String redacted = redactJson(json);
+
+        for (int limit = 0; limit <= body.length; limit++) {
+            byte[] target = new byte[limit];
+            int length = redactor.redactedCopy(headers, body, target);
+            assertThat(new String(target, 0, length, UTF_8)).isEqualTo(redacted.substring(0, Math.min(limit, redacted.length())));
+        }
+        assertThat(new String(body, UTF_8)).isEqualTo(json);
+    }
+
+    private String redactJson(String body) {
+        return redact(MediaType.APPLICATION_JSON, body);
+    }
+
+    private String redact(MediaType contentType, String body) {
+        byte[] bytes = body.getBytes(UTF_8);
+        int length = redactor.redactBody(contentType, UTF_8, bytes, bytes.length);
+        return new String(bytes, 0, length, UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+package org.wjh.http.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Compares the throughput of concurrent requests over HTTP/1.1 keep-alive connections (a pool of a few connections, one
+ * request in flight per connection) against h2c (the requests multiplexed as streams), against an in-process server
+ * speaking both: see the {@code requests} counter, in requests per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Http2Benchmark {
+
+    private static final int CONNECTIONS = 8;
+
+    @Param({ "HTTP11", "H2C" })
+    public HttpProtocol protocol;
+
+    @Param({ "1", "64" })
+    public int concurrency;
+
+    private DisposableServer server;
+    private ConnectionProvider connections;
+    private HttpClient client;
+
+    @Setup
+    public void setup() {
+        server = HttpServer.create() //@formatter:off
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+                .handle((request, response) -> response.sendString(Mono.just("SOLE::hello")))
+                .bindNow(); //@formatter:on
+
+        connections = ConnectionProvider.fixed("http2-benchmark", CONNECTIONS);
+        client = HttpClient.create(connections).protocol(protocol).baseUrl("http://localhost:" + server.port());
+    }
+
+    @TearDown
+    public void tearDown() {
+        connections.disposeLater().block();
+        server.disposeNow();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Requests {
+        public long requests;
+    }
+
+    @Benchmark
+    public Long burst(Requests requests) {
+        Long completed = Flux.range(0, concurrency) //@formatter:off
+                .flatMap(i -> client.get().uri("/echo?input=hello").responseContent().aggregate().asString(), concurrency)
+                .count()
+                .block(); //@formatter:on
+        requests.requests += completed;
+        return completed;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(Http2Benchmark.class.getSimpleName())
+                .build()).run(); //@formatter:on
+    }
+}
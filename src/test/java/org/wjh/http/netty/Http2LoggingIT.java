@@ -0,0 +1,101 @@
+package org.wjh.http.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.wjh.http.logging.ExchangeState;
+import org.wjh.http.logging.impl.DefaultHttpLogger;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * The protocol and the stream ID of the logged HTTP/2 messages depend on Reactor Netty adding the
+ * {@code x-http2-stream-id} extension header to the converted heads: checked end to end over h2c, by prior knowledge,
+ * on both the server and the client side.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = { //@formatter:off
+        "echo.http2.server=true",
+        "echo.http2.client=true",
+        "server.http.logging=true",
+        "client.http.logging=true",
+        "echo.remoteUrl=-" }) //@formatter:on
+class Http2LoggingIT {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebClient.Builder webClientBuilder;
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private final Logger httpLogger = (Logger) LoggerFactory.getLogger(DefaultHttpLogger.class);
+
+    @BeforeEach
+    void attachAppender() {
+        appender.start();
+        httpLogger.addAppender(appender);
+    }
+
+    @AfterEach
+    void detachAppender() {
+        httpLogger.detachAppender(appender);
+        appender.stop();
+    }
+
+    @Test
+    void givenH2cPriorKnowledgeRequest_whenServed_thenLoggedAsHttp2WithStream() throws Exception {
+        String echo = HttpClient.create().protocol(HttpProtocol.H2C).get().uri("http://localhost:" + port + "/echo?input=hello")
+                .responseContent().aggregate().asString().block(Duration.ofSeconds(10));
+        assertThat(echo).contains("hello");
+
+        assertThat(awaitLogged(m -> m.startsWith("Inbound HTTP Request [stream ") && m.contains(" HTTP/2.0\n"))).isTrue();
+        assertThat(awaitLogged(m -> m.startsWith("Outbound HTTP Response [stream ") && m.contains("\tHTTP/2.0 200"))).isTrue();
+    }
+
+    @Test
+    void givenH2cClient_whenCalled_thenResponseLoggedAsHttp2WithStream() throws Exception {
+        String echo = webClientBuilder.build().get().uri("http://localhost:" + port + "/echo?input=hello").retrieve()
+                .bodyToMono(String.class).block(Duration.ofSeconds(10));
+        assertThat(echo).contains("hello");
+
+        assertThat(awaitLogged(m -> m.startsWith("Outbound HTTP Request") && m.contains(" HTTP/2.0\n"))).isTrue();
+        assertThat(awaitLogged(m -> m.startsWith("Inbound HTTP Response [stream ") && m.contains("\tHTTP/2.0 200"))).isTrue();
+    }
+
+    /**
+     * @return whether a message matching the predicate was logged within 5 seconds, as the logging completes after the
+     *         response is received
+     */
+    private boolean awaitLogged(Predicate<String> predicate) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        do {
+            ExchangeState.flushLogging(Duration.ofSeconds(1));
+            List<ILoggingEvent> events;
+            synchronized (appender) {
+                events = new ArrayList<>(appender.list);
+            }
+            if (events.stream().map(ILoggingEvent::getFormattedMessage).anyMatch(predicate)) {
+                return true;
+            }
+            Thread.sleep(50);
+        } while (System.nanoTime() < deadline);
+        return false;
+    }
+}
@@ -0,0 +1,75 @@
+package org.wjh.http.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.wjh.http.ratelimit.HeavyHitters.Hitter;
+
+class HeavyHittersTests {
+
+    @Test
+    void givenHeavyKeysAmongManyLightOnes_whenTop_thenHeavyKeysFirstWithinError() {
+        HeavyHitters heavyHitters = new HeavyHitters(20);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            int draw = random.nextInt(100);
+            String key = draw < 30 ? "noisy" : draw < 40 ? "busy" : "client-" + random.nextInt(10_000);
+            heavyHitters.add(key, draw < 30 && i % 2 == 0);
+        }
+
+        List<Hitter> top = heavyHitters.top(2);
+        assertThat(top).extracting(Hitter::getKey).containsExactly("noisy", "busy");
+        Hitter noisy = top.get(0);
+        assertThat(noisy.getCount()).isBetween(29_000L, 31_000L);
+        assertThat(noisy.getRejected()).isGreaterThan(0);
+    }
+
+    @Test
+    void givenFewerKeysThanCapacity_whenTop_thenExactCounts() {
+        HeavyHitters heavyHitters = new HeavyHitters(4);
+        heavyHitters.add("a", false);
+        heavyHitters.add("b", true);
+        heavyHitters.add("a", false);
+
+        assertThat(heavyHitters.top(10)).extracting(Hitter::getKey, Hitter::getCount, Hitter::getError, Hitter::getRejected)
+                .containsExactly(tuple("a", 2L, 0L, 0L), tuple("b", 1L, 0L, 1L));
+    }
+
+    @Test
+    void givenHitsFromSeveralThreads_whenTopWhileAdding_thenAllCountedOnce() throws Exception {
+        HeavyHitters heavyHitters = new HeavyHitters(50);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> adders = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                adders.add(threads.submit(() -> {
+                    Random random = new Random();
+                    for (int i = 0; i < 100_000; i++) {
+                        heavyHitters.add(random.nextInt(3) == 0 ? "hot" : "client-" + random.nextInt(100_000), false);
+                    }
+                }));
+            }
+            while (!adders.stream().allMatch(Future::isDone)) {
+                heavyHitters.top(5);
+            }
+            for (Future<?> adder : adders) {
+                adder.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        // The counts of the Space-Saving counters always sum up to the total
+        List<Hitter> top = heavyHitters.top(50);
+        assertThat(top.stream().mapToLong(Hitter::getCount).sum()).isEqualTo(400_000L);
+        assertThat(top.get(0).getKey()).isEqualTo("hot");
+    }
+}
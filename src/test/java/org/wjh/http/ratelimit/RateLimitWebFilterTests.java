@@ -0,0 +1,130 @@
+package org.wjh.http.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.wjh.http.ratelimit.RateLimitWebFilter.LIMIT;
+import static org.wjh.http.ratelimit.RateLimitWebFilter.REMAINING;
+import static org.wjh.http.ratelimit.RateLimitWebFilter.RESET;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.wjh.http.ratelimit.RateLimitWebFilter.KeyPart;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class RateLimitWebFilterTests {
+
+    /** One token per 10s, so that no token is refilled while a test runs. */
+    private static final double RATE = 0.1;
+    private static final int BURST = 2;
+
+    private final AtomicInteger chained = new AtomicInteger();
+    private final WebFilterChain chain = exchange -> {
+        chained.incrementAndGet();
+        return Mono.empty();
+    };
+
+    private RateLimitWebFilter filter;
+
+    @AfterEach
+    void destroyFilter() {
+        if (filter != null) {
+            filter.destroy();
+        }
+    }
+
+    @Test
+    void givenRequestsWithinBurst_whenFiltered_thenAllowedWithRateLimitHeaders() {
+        filter = filter(10);
+
+        MockServerWebExchange first = filter("/echo", "10.0.0.1");
+        MockServerWebExchange second = filter("/echo", "10.0.0.1");
+
+        assertThat(chained.get()).isEqualTo(2);
+        assertThat(first.getResponse().getStatusCode()).isNull();
+        HttpHeaders headers = first.getResponse().getHeaders();
+        assertThat(headers.getFirst(LIMIT)).isEqualTo("2");
+        assertThat(headers.getFirst(REMAINING)).isEqualTo("1");
+        assertThat(Long.parseLong(headers.getFirst(RESET))).isBetween(1L, 20L);
+        assertThat(headers).doesNotContainKey(HttpHeaders.RETRY_AFTER);
+        assertThat(second.getResponse().getHeaders().getFirst(REMAINING)).isEqualTo("0");
+    }
+
+    @Test
+    void givenBurstExceeded_whenFiltered_thenTooManyRequestsWithRetryAfter() {
+        filter = filter(10);
+
+        filter("/echo", "10.0.0.1");
+        filter("/echo", "10.0.0.1");
+        MockServerWebExchange rejected = filter("/echo", "10.0.0.1");
+
+        assertThat(chained.get()).isEqualTo(2);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        HttpHeaders headers = rejected.getResponse().getHeaders();
+        assertThat(Long.parseLong(headers.getFirst(HttpHeaders.RETRY_AFTER))).isBetween(1L, 10L);
+        assertThat(headers.getFirst(LIMIT)).isEqualTo("2");
+        assertThat(headers.getFirst(REMAINING)).isEqualTo("0");
+
+        // Another client is not limited by the first one
+        assertThat(filter("/echo", "10.0.0.2").getResponse().getStatusCode()).isNull();
+        assertThat(filter.heavyHitters(1).get(0).getKey()).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void givenActuatorPath_whenFilteredOverBurst_thenNeitherLimitedNorCounted() {
+        filter = filter(10);
+
+        for (int i = 0; i <= BURST; i++) {
+            MockServerWebExchange exchange = filter("/actuator/health", "10.0.0.1");
+            assertThat(exchange.getResponse().getStatusCode()).isNull();
+            assertThat(exchange.getResponse().getHeaders()).doesNotContainKeys(LIMIT, REMAINING, RESET);
+        }
+
+        assertThat(chained.get()).isEqualTo(BURST + 1);
+        assertThat(filter.keys()).isZero();
+    }
+
+    @Test
+    void givenMaxKeysReached_whenNewKeysFiltered_thenOverflowBucketShared() {
+        filter = filter(1);
+
+        filter("/echo", "10.0.0.1");
+        assertThat(filter.keys()).isEqualTo(1);
+
+        assertThat(filter("/echo", "10.0.0.2").getResponse().getStatusCode()).isNull();
+        assertThat(filter("/echo", "10.0.0.3").getResponse().getStatusCode()).isNull();
+        assertThat(filter("/echo", "10.0.0.4").getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(filter.keys()).isEqualTo(1);
+
+        // The key with its own bucket is not limited by the overflow
+        assertThat(filter("/echo", "10.0.0.1").getResponse().getStatusCode()).isNull();
+    }
+
+    private MockServerWebExchange filter(String path, String ip) {
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get(path).remoteAddress(new InetSocketAddress(ip, 40000)));
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+
+    private static RateLimitWebFilter filter(int maxKeys) {
+        return new RateLimitWebFilter(new KeyPart[] { KeyPart.IP }, "X-API-Key", new String[0], //@formatter:off
+                new String[] { "/actuator/**" },
+                RATE,
+                BURST,
+                maxKeys,
+                Duration.ofMinutes(1),
+                100,
+                10,
+                new SimpleMeterRegistry()); //@formatter:on
+    }
+}
@@ -0,0 +1,59 @@
+package org.wjh.http.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTests {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void givenFullBucket_whenBurst_thenCapacityAllowedThenWaitOneInterval() {
+        TokenBucket bucket = new TokenBucket(INTERVAL, 3, 0);
+
+        assertThat(bucket.tryAcquire(0)).isEqualTo(2);
+        assertThat(bucket.tryAcquire(0)).isEqualTo(1);
+        assertThat(bucket.tryAcquire(0)).isEqualTo(0);
+        assertThat(bucket.tryAcquire(0)).isEqualTo(-INTERVAL);
+        assertThat(bucket.resetNanos(0)).isEqualTo(3 * INTERVAL);
+
+        assertThat(bucket.tryAcquire(INTERVAL)).isEqualTo(0);
+        assertThat(bucket.tryAcquire(INTERVAL + INTERVAL / 2)).isEqualTo(-INTERVAL / 2);
+    }
+
+    @Test
+    void givenUnusedBucket_whenIdle_thenFullAndIdle() {
+        TokenBucket bucket = new TokenBucket(INTERVAL, 3, 0);
+        bucket.tryAcquire(0);
+
+        assertThat(bucket.idle(INTERVAL, INTERVAL)).isFalse();
+        assertThat(bucket.idle(3 * INTERVAL, INTERVAL)).isTrue();
+        assertThat(bucket.tryAcquire(1000 * INTERVAL)).isEqualTo(2);
+    }
+
+    @Test
+    void givenConcurrentCallers_whenAcquired_thenNoMoreThanCapacity() throws Exception {
+        TokenBucket bucket = new TokenBucket(TimeUnit.HOURS.toNanos(1), 1000, 0);
+        AtomicInteger acquired = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (bucket.tryAcquire(0) >= 0) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(acquired).hasValue(1000);
+    }
+}
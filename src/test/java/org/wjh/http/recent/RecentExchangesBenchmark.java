@@ -0,0 +1,66 @@
+package org.wjh.http.recent;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.wjh.http.recent.RecentExchanges.Side;
+
+/**
+ * Measures the cost of recording an exchange summary, by 4 writers racing with a reader: the GC profiler is expected
+ * to show no allocation by the writers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class RecentExchangesBenchmark {
+
+    private static final URI ECHO_URI = URI.create("http://localhost:8080/echo?input=hello");
+    private static final byte[] REQUEST_BODY = "input=hello".getBytes(UTF_8);
+    private static final byte[] RESPONSE_BODY = "SOLE::hello".getBytes(UTF_8);
+
+    private final RecentExchanges recent = new RecentExchanges(1024, 256);
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(4)
+    public void record() {
+        recent.record(Side.SERVER, 1580000000000L, 1_000_000, "POST", ECHO_URI, 200, REQUEST_BODY.length, RESPONSE_BODY.length,
+                "5af7183fb1d4cf5f", HttpHeaders.EMPTY, REQUEST_BODY, HttpHeaders.EMPTY, RESPONSE_BODY);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public List<ExchangeSummary> slowest() {
+        return recent.slowest(10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(RecentExchangesBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
@@ -0,0 +1,121 @@
+package org.wjh.http.recent;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.wjh.http.logging.impl.Redactor;
+import org.wjh.http.recent.RecentExchanges.Side;
+
+class RecentExchangesTests {
+
+    private static final URI ECHO_URI = URI.create("http://localhost:8080/echo?input=hello");
+
+    @Test
+    void givenMoreExchangesThanSlots_whenLatest_thenNewestKeptNewestFirst() {
+        RecentExchanges recent = new RecentExchanges(3, 4);
+        assertThat(recent.capacity()).isEqualTo(4);
+
+        for (int i = 0; i < 10; i++) {
+            record(recent, i, 200, "trace-" + i);
+        }
+
+        assertThat(recent.latest(100)).extracting(ExchangeSummary::getTraceId).containsExactly("trace-9", "trace-8", "trace-7", "trace-6");
+        assertThat(recent.latest(2)).extracting(ExchangeSummary::getTraceId).containsExactly("trace-9", "trace-8");
+    }
+
+    @Test
+    void givenExchanges_whenFiltered_thenSlowestErrorsAndTraceSelected() {
+        RecentExchanges recent = new RecentExchanges(16, 4);
+        record(recent, 5, 200, "a");
+        record(recent, 50, 503, "b");
+        record(recent, 20, 404, "a");
+        record(recent, 1, 200, null);
+
+        assertThat(recent.slowest(2)).extracting(ExchangeSummary::getDurationNanos).containsExactly(50L, 20L);
+        assertThat(recent.errors(10)).extracting(ExchangeSummary::getStatus).containsExactly(404, 503);
+        assertThat(recent.byTraceId("a")).extracting(ExchangeSummary::getDurationNanos).containsExactly(20L, 5L);
+    }
+
+    @Test
+    void givenLongBodies_whenRecorded_thenTruncatedToLimit() {
+        RecentExchanges recent = new RecentExchanges(1, 4);
+        recent.record(Side.CLIENT, 0, 1, "POST", ECHO_URI, 200, 11, -1, null, HttpHeaders.EMPTY, "input=hello".getBytes(UTF_8),
+                HttpHeaders.EMPTY, new byte[0]);
+
+        ExchangeSummary summary = recent.latest(1).get(0);
+        assertThat(summary.getRequestBody()).isEqualTo("inpu");
+        assertThat(summary.getRequestSize()).isEqualTo(11);
+        assertThat(summary.getResponseBody()).isEmpty();
+        assertThat(summary.getResponseSize()).isEqualTo(-1);
+    }
+
+    @Test
+    void givenExchangeOnlySummarized_whenRecorded_thenBodiesKeptRedacted() {
+        // In the triggered body mode, a fast exchange is logged as a summary only: nothing else redacts its bodies
+        Redactor redactor = new Redactor(new String[0], new String[0], new String[] { "password" });
+        RecentExchanges recent = new RecentExchanges(1, 64, redactor);
+        HttpHeaders form = new HttpHeaders();
+        form.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        HttpHeaders gzipped = new HttpHeaders();
+        gzipped.setContentType(MediaType.APPLICATION_JSON);
+        gzipped.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        byte[] body = "input=hello&password=s3cr3t-value".getBytes(UTF_8);
+
+        recent.record(Side.SERVER, 0, 1, "POST", ECHO_URI, 200, body.length, 42, null, form, body, gzipped, new byte[42]);
+
+        ExchangeSummary summary = recent.latest(1).get(0);
+        assertThat(summary.getRequestBody()).isEqualTo("input=hello&password=***");
+        assertThat(summary.getResponseBody()).isEmpty();
+        assertThat(new String(body, UTF_8)).isEqualTo("input=hello&password=s3cr3t-value");
+    }
+
+    @Test
+    void givenConcurrentWritersAndReaders_whenRun_thenNoTornSummary() throws Exception {
+        RecentExchanges recent = new RecentExchanges(8, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < 3; w++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        // The body, status and trace ID are all derived from the duration
+                        String body = Integer.toString(i % 1000);
+                        recent.record(Side.SERVER, 0, i, "GET", ECHO_URI, 200 + i % 100, body.length(), 0, body, HttpHeaders.EMPTY,
+                                body.getBytes(UTF_8), HttpHeaders.EMPTY, new byte[0]);
+                    }
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    for (ExchangeSummary summary : recent.latest(8)) {
+                        String body = Long.toString(summary.getDurationNanos() % 1000);
+                        assertThat(summary.getRequestBody()).isEqualTo(body);
+                        assertThat(summary.getTraceId()).isEqualTo(body);
+                        assertThat(summary.getStatus()).isEqualTo(200 + (int) (summary.getDurationNanos() % 100));
+                    }
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void record(RecentExchanges recent, long durationNanos, int status, String traceId) {
+        recent.record(Side.SERVER, System.currentTimeMillis(), durationNanos, "GET", ECHO_URI, status, 0, 5, traceId, HttpHeaders.EMPTY,
+                new byte[0], HttpHeaders.EMPTY, "hello".getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,162 @@
+package org.wjh.http.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.BeanUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.wjh.http.logging.LoggingControl;
+import org.wjh.http.logging.Protocol;
+import org.wjh.http.logging.impl.DefaultHttpLogger;
+import org.wjh.http.server.ServerHttpLoggingHandler.LoggingServerHttpRequest;
+import org.wjh.http.slo.LatencySlo;
+import org.wjh.http.stats.TrafficStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Allocation profile of the server logging stage, run with the GC profiler: compare {@code gc.alloc.rate.norm} (bytes
+ * per exchange) of the {@code disabled} (switched off at runtime) and {@code notLogged} fast paths and the {@code logged}
+ * path against the bare {@code baseline}.
+ * <p>
+ * The {@code *Counted} variants are wired as by the {@link HttpHandlerBeanPostProcessor} with
+ * {@code http.stats.enabled=true} and {@code http.slo.enabled=true}: the exchanges which are not logged are still timed
+ * and recorded into the statistics and against the SLO, which is the allocation these fast paths pay in production.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerHttpLoggingHandlerBenchmark {
+
+    private static final byte[] BODY = "SOLE::benchmark".getBytes(UTF_8);
+
+    /**
+     * Echo handler, which also triggers the request logging as the tracing filter does.
+     */
+    private static final HttpHandler ECHO_HANDLER = (request, response) -> {
+        if (request instanceof LoggingServerHttpRequest) {
+            ((LoggingServerHttpRequest) request).getExchange().triggerRequestLogging(null);
+        }
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(BODY)));
+    };
+
+    private final HttpHandler logged = new ServerHttpLoggingHandler(ECHO_HANDLER, new SilentHttpLogger(true));
+    private final HttpHandler notLogged = new ServerHttpLoggingHandler(ECHO_HANDLER, new SilentHttpLogger(false));
+    private final HttpHandler disabled = new ServerHttpLoggingHandler(ECHO_HANDLER, new SilentHttpLogger(true),
+            LoggingControl.of(LoggingControl.Mode.OFF, LoggingControl.Mode.OFF), null, null, null, null);
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final TrafficStats trafficStats = newInstance(TrafficStats.class, //@formatter:off
+            new Class<?>[] { String[].class, MeterRegistry.class },
+            new String[] { "GET /echo", "POST /echo", "/echo/**" }, registry);
+    private final LatencySlo latencySlo = newInstance(LatencySlo.class,
+            new Class<?>[] { String[].class, Duration.class, double.class, Duration.class, long.class, MeterRegistry.class },
+            new String[] { "GET /echo=800ms", "/echo/**=1s" }, Duration.ofMillis(500), 0.99, Duration.ofMinutes(1), 100L, registry); //@formatter:on
+
+    private final HttpHandler notLoggedCounted = new ServerHttpLoggingHandler(ECHO_HANDLER, new SilentHttpLogger(false),
+            LoggingControl.of(LoggingControl.Mode.BODIES, LoggingControl.Mode.BODIES), null, null, trafficStats, latencySlo);
+    private final HttpHandler disabledCounted = new ServerHttpLoggingHandler(ECHO_HANDLER, new SilentHttpLogger(true),
+            LoggingControl.of(LoggingControl.Mode.OFF, LoggingControl.Mode.OFF), null, null, trafficStats, latencySlo);
+
+    @Benchmark
+    public MockServerHttpResponse baseline() {
+        return handle(ECHO_HANDLER);
+    }
+
+    @Benchmark
+    public MockServerHttpResponse disabled() {
+        return handle(disabled);
+    }
+
+    @Benchmark
+    public MockServerHttpResponse notLogged() {
+        return handle(notLogged);
+    }
+
+    @Benchmark
+    public MockServerHttpResponse logged() {
+        return handle(logged);
+    }
+
+    @Benchmark
+    public MockServerHttpResponse disabledCounted() {
+        return handle(disabledCounted);
+    }
+
+    @Benchmark
+    public MockServerHttpResponse notLoggedCounted() {
+        return handle(notLoggedCounted);
+    }
+
+    private MockServerHttpResponse handle(HttpHandler handler) {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        handler.handle(MockServerHttpRequest.get("/echo?input=benchmark").build(), response).subscribe();
+        return response;
+    }
+
+    /**
+     * The stats and the SLO are instantiated as by the container, through their (package-private) injection constructor.
+     */
+    private static <T> T newInstance(Class<T> type, Class<?>[] parameterTypes, Object... args) {
+        try {
+            return BeanUtils.instantiateClass(type.getDeclaredConstructor(parameterTypes), args);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class SilentHttpLogger extends DefaultHttpLogger {
+
+        private final boolean shouldLog;
+
+        SilentHttpLogger(boolean shouldLog) {
+            this.shouldLog = shouldLog;
+        }
+
+        @Override
+        public boolean shouldLog(HttpMethod method, URI uri) {
+            return shouldLog;
+        }
+
+        @Override
+        public void logRequest(MessageDirection dir, String httpMethod, URI url, Protocol protocol, HttpHeaders headers, byte[] body) {
+        }
+
+        @Override
+        public void logResponse(MessageDirection dir, Protocol protocol, int statusCode, String statusText, HttpHeaders headers,
+                byte[] body) {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(ServerHttpLoggingHandlerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
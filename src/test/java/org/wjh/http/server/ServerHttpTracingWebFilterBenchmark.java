@@ -0,0 +1,101 @@
+package org.wjh.http.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import brave.Span;
+import brave.Tracer.SpanInScope;
+import brave.Tracing;
+import reactor.core.publisher.Mono;
+
+/**
+ * Measures the overhead the trace filter adds to the filter chain, with and without a current span.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerHttpTracingWebFilterBenchmark {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    private static final WebFilter NO_FILTER = (exchange, chain) -> chain.filter(exchange);
+
+    private Tracing tracing;
+    private Span span;
+
+    private WebFilter b3Filter;
+    private WebFilter b3AndW3cFilter;
+
+    @Setup
+    public void setup() {
+        tracing = Tracing.newBuilder().build();
+        span = tracing.tracer().nextSpan().start();
+
+        b3Filter = new ServerHttpTracingWebFilter(tracing.tracer(), new String[] { "b3" });
+        b3AndW3cFilter = new ServerHttpTracingWebFilter(tracing.tracer(), new String[] { "b3", "w3c" });
+    }
+
+    @TearDown
+    public void tearDown() {
+        span.finish();
+        tracing.close();
+    }
+
+    @Benchmark
+    public ServerWebExchange baseline() {
+        return filter(NO_FILTER, span);
+    }
+
+    @Benchmark
+    public ServerWebExchange b3() {
+        return filter(b3Filter, span);
+    }
+
+    @Benchmark
+    public ServerWebExchange b3AndW3c() {
+        return filter(b3AndW3cFilter, span);
+    }
+
+    @Benchmark
+    public ServerWebExchange noSpan() {
+        return filter(b3Filter, null);
+    }
+
+    private ServerWebExchange filter(WebFilter filter, Span span) {
+        ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/echo?input=benchmark"));
+        try (SpanInScope ws = tracing.tracer().withSpanInScope(span)) {
+            filter.filter(exchange, CHAIN).subscribe();
+        }
+        return exchange;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(ServerHttpTracingWebFilterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
@@ -0,0 +1,132 @@
+package org.wjh.http.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.wjh.http.logging.ExchangeState.REQUEST;
+import static org.wjh.http.server.ServerHttpTracingWebFilter.TRACEPARENT;
+import static org.wjh.http.server.ServerHttpTracingWebFilter.TRACE_ID;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.wjh.http.logging.impl.DefaultHttpLogger;
+import org.wjh.http.server.ServerHttpLoggingHandler.LoggingExchange;
+import org.wjh.http.server.ServerHttpLoggingHandler.LoggingServerHttpRequest;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracer.SpanInScope;
+import brave.Tracing;
+import reactor.core.publisher.Mono;
+
+class ServerHttpTracingWebFilterTests {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    private Tracing tracing;
+    private Tracer tracer;
+
+    @BeforeEach
+    void startTracing() {
+        tracing = Tracing.newBuilder().build();
+        tracer = tracing.tracer();
+    }
+
+    @AfterEach
+    void stopTracing() {
+        tracing.close();
+    }
+
+    @Test
+    void givenNoSpan_whenFiltered_thenNoTraceHeaders() {
+        ServerWebExchange exchange = exchange();
+
+        new ServerHttpTracingWebFilter(tracer, new String[] { "b3", "w3c" }).filter(exchange, CHAIN).block();
+
+        assertThat(exchange.getResponse().getHeaders()).doesNotContainKeys(TRACE_ID, TRACEPARENT);
+    }
+
+    @Test
+    void givenSpanAndB3_whenFiltered_thenTraceIdSetOnce() {
+        ServerWebExchange exchange = exchange();
+        exchange.getResponse().getHeaders().add(TRACE_ID, "stale");
+        Span span = tracer.nextSpan().start();
+
+        filterInScope(new ServerHttpTracingWebFilter(tracer, new String[] { "b3" }), exchange, span);
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.get(TRACE_ID)).containsExactly(span.context().traceIdString());
+        assertThat(headers).doesNotContainKey(TRACEPARENT);
+    }
+
+    @Test
+    void givenSpanAndW3c_whenFiltered_thenTraceparentFormatted() {
+        ServerWebExchange exchange = exchange();
+        Span span = tracer.nextSpan().start();
+
+        filterInScope(new ServerHttpTracingWebFilter(tracer, new String[] { "w3c" }), exchange, span);
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        String traceId = span.context().traceIdString();
+        assertThat(headers.get(TRACEPARENT)).hasSize(1);
+        assertThat(headers.getFirst(TRACEPARENT)).matches("00-[0-9a-f]{32}-[0-9a-f]{16}-0[01]")
+                .endsWith(traceId + "-" + span.context().spanIdString() + "-01");
+        assertThat(headers).doesNotContainKey(TRACE_ID);
+    }
+
+    @Test
+    void givenSpanAndBothFormats_whenFiltered_thenBothHeaders() {
+        ServerWebExchange exchange = exchange();
+        Span span = tracer.nextSpan().start();
+
+        filterInScope(new ServerHttpTracingWebFilter(tracer, new String[] { "b3", " W3C " }), exchange, span);
+
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        assertThat(headers.getFirst(TRACE_ID)).isEqualTo(span.context().traceIdString());
+        assertThat(headers.getFirst(TRACEPARENT)).contains(span.context().traceIdString());
+    }
+
+    @Test
+    void givenLoggingRequest_whenFiltered_thenRequestLoggedAndCachedTraceIdReused() {
+        ServerHttpTracingWebFilter filter = new ServerHttpTracingWebFilter(tracer, new String[] { "b3", "w3c" });
+        AtomicReference<LoggingExchange> logging = new AtomicReference<>();
+        AtomicReference<ServerWebExchange> filtered = new AtomicReference<>();
+        ServerHttpLoggingHandler handler = new ServerHttpLoggingHandler((request, response) -> {
+            logging.set(((LoggingServerHttpRequest) request).getExchange());
+            filtered.set(exchange().mutate().request(request).build());
+            return filter.filter(filtered.get(), CHAIN);
+        }, new DefaultHttpLogger());
+        Span span = tracer.nextSpan().start();
+
+        try (SpanInScope scope = tracer.withSpanInScope(span)) {
+            handler.handle(MockServerHttpRequest.get("/echo?input=hello").build(), new MockServerHttpResponse()).block();
+        } finally {
+            span.finish();
+        }
+
+        assertThat(logging.get().span).isSameAs(span);
+        assertThat(logging.get().isLogged(REQUEST)).isTrue();
+        HttpHeaders headers = filtered.get().getResponse().getHeaders();
+        assertThat(headers.getFirst(TRACE_ID)).isSameAs(logging.get().traceId());
+        assertThat(headers.getFirst(TRACEPARENT)).contains(logging.get().traceId());
+    }
+
+    private void filterInScope(ServerHttpTracingWebFilter filter, ServerWebExchange exchange, Span span) {
+        try (SpanInScope scope = tracer.withSpanInScope(span)) {
+            filter.filter(exchange, CHAIN).block();
+        } finally {
+            span.finish();
+        }
+    }
+
+    private static ServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/echo?input=hello"));
+    }
+}
@@ -0,0 +1,113 @@
+package org.wjh.http.slo;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.wjh.http.logging.HttpLogger.MessageDirection.Inbound;
+import static org.wjh.http.logging.HttpLogger.MessageDirection.Outbound;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LatencySloTests {
+
+    private static final URI ECHO = URI.create("http://localhost:8080/echo?input=hello");
+    private static final URI BATCH = URI.create("http://localhost:8080/echo/batch");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void givenRouteThresholds_whenRecorded_thenSlowAsPerMatchingRoute() {
+        LatencySlo slo = slo("GET /echo=50ms", "/echo/**=200ms");
+
+        assertThat(slo.isSlow(Inbound, HttpMethod.GET, ECHO, millis(60))).isTrue();
+        assertThat(slo.isSlow(Inbound, HttpMethod.POST, ECHO, millis(60))).isFalse(); // the default, 500ms
+        assertThat(slo.isSlow(Inbound, HttpMethod.POST, BATCH, millis(150))).isFalse();
+        assertThat(slo.isSlow(Inbound, HttpMethod.POST, BATCH, millis(250))).isTrue();
+        assertThat(slo.isSlow(Outbound, HttpMethod.GET, ECHO, millis(60))).isFalse(); // the client route
+
+        slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(60));
+        slo.record(Inbound, HttpMethod.POST, ECHO, 200, millis(60));
+
+        assertThat(registry.get("http.slo.requests").tag("route", "GET /echo").tag("outcome", "slow").counter().count()).isEqualTo(1);
+        assertThat(registry.get("http.slo.requests").tag("route", "other").tag("outcome", "good").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void givenClosedWindow_whenRecorded_thenSlowOverAdaptiveP99() {
+        LatencySlo slo = slo();
+        for (int i = 1; i <= 100; i++) {
+            slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(i));
+        }
+        // Nothing is over the 500ms default yet
+        assertThat(slo.isSlow(Inbound, HttpMethod.GET, ECHO, millis(120))).isFalse();
+
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(10));
+
+        assertThat(slo.isSlow(Inbound, HttpMethod.GET, ECHO, millis(10))).isFalse();
+        assertThat(slo.isSlow(Inbound, HttpMethod.GET, ECHO, millis(120))).isTrue();
+        assertThat(registry.get("http.slo.adaptive.threshold").tag("route", "other").gauge().value()).isBetween(0.099, 0.113);
+    }
+
+    @Test
+    void givenBadExchanges_whenWindowClosed_thenBurnRateAgainstBudget() {
+        LatencySlo slo = slo();
+        for (int i = 0; i < 96; i++) {
+            slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(1));
+        }
+        slo.record(Inbound, HttpMethod.GET, ECHO, 503, millis(1));
+        slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(600));
+        slo.record(Inbound, HttpMethod.GET, ECHO, 404, millis(1)); // a client error does not burn the budget
+        slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(1));
+
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(1));
+
+        // 2 bad out of 100, against a budget of 1%
+        assertThat(registry.get("http.slo.burn.rate").tag("route", "other").gauge().value()).isCloseTo(2.0, offset(1e-9));
+    }
+
+    @Test
+    void givenSteadyLoad_whenSecondWindowClosed_thenNoBudgetBurntOverAdaptiveP99() {
+        LatencySlo slo = slo();
+        for (int window = 0; window < 3; window++) {
+            for (int i = 1; i <= 1000; i++) {
+                slo.record(Inbound, HttpMethod.GET, ECHO, 200, MILLISECONDS.toNanos(1) * i / 10);
+            }
+            clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        }
+        slo.record(Inbound, HttpMethod.GET, ECHO, 200, millis(1));
+
+        // About 1% of the exchanges are over the adaptive p99 of each window, yet all of them are within the threshold
+        assertThat(registry.get("http.slo.adaptive.threshold").tag("route", "other").gauge().value()).isLessThan(0.5);
+        assertThat(registry.get("http.slo.burn.rate").tag("route", "other").gauge().value()).isZero();
+        assertThat(registry.get("http.slo.requests").tag("route", "other").tag("outcome", "slow").counter().count()).isZero();
+    }
+
+    @Test
+    void givenLatencies_whenIndexed_thenWithinBucketBounds() {
+        for (long micros : new long[] { 0, 7, 8, 15, 16, 17, 1000, 123_456_789, 1L << 40, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.index(micros);
+            assertThat(index).isBetween(0, LatencyHistogram.BUCKETS - 1);
+            if (micros < 1L << 41) {
+                assertThat(LatencyHistogram.upperBound(index)).isGreaterThanOrEqualTo(micros).isLessThanOrEqualTo(micros + micros / 8);
+            }
+        }
+    }
+
+    private LatencySlo slo(String... routes) {
+        return new LatencySlo(routes, Duration.ofMillis(500), 0.99, Duration.ofMinutes(1), 100, registry, clock::get);
+    }
+
+    private static long millis(long millis) {
+        return MILLISECONDS.toNanos(millis);
+    }
+}
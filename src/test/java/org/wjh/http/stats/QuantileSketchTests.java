@@ -0,0 +1,98 @@
+package org.wjh.http.stats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.wjh.http.stats.QuantileSketch.Snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class QuantileSketchTests {
+
+    @Test
+    void givenLogNormalValues_whenQueried_thenQuantilesWithinRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch();
+        long[] values = logNormal(100_000);
+        for (long value : values) {
+            sketch.record(value);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : new double[] { 0.5, 0.9, 0.99, 1 }) {
+            long exact = values[(int) (quantile * (values.length - 1))];
+            assertThat(sketch.quantile(quantile)).isCloseTo(exact, within(exact * QuantileSketch.RELATIVE_ACCURACY));
+        }
+        assertThat(sketch.count()).isEqualTo(values.length);
+        assertThat(new QuantileSketch().quantile(0.5)).isNaN();
+    }
+
+    @Test
+    void givenValuesRecordedFromSeveralThreads_whenSnapshot_thenStripesAddedUp() throws InterruptedException {
+        QuantileSketch sketch = new QuantileSketch();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    sketch.record(100);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(sketch.count()).isEqualTo(80_000);
+        assertThat(sketch.snapshot().getCounts()).containsExactly(80_000);
+        assertThat(QuantileSketch.stripes(1)).isEqualTo(1);
+        assertThat(QuantileSketch.stripes(6)).isEqualTo(8);
+        assertThat(QuantileSketch.stripes(64)).isEqualTo(QuantileSketch.MAX_STRIPES);
+    }
+
+    @Test
+    void givenSketchesOfTwoNodes_whenMerged_thenAsIfRecordedIntoOne() {
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch main = new QuantileSketch();
+        QuantileSketch sub = new QuantileSketch();
+        long[] values = logNormal(10_000);
+        for (int i = 0; i < values.length; i++) {
+            all.record(values[i]);
+            (i % 3 == 0 ? main : sub).record(values[i]);
+        }
+
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(main.snapshot());
+        merged.merge(sub.snapshot());
+
+        assertThat(merged.snapshot().getOffset()).isEqualTo(all.snapshot().getOffset());
+        assertThat(merged.snapshot().getCounts()).containsExactly(all.snapshot().getCounts());
+    }
+
+    @Test
+    void givenSnapshot_whenJsonRoundTrip_thenSameQuantiles() throws Exception {
+        QuantileSketch sketch = new QuantileSketch();
+        for (long value : logNormal(1_000)) {
+            sketch.record(value);
+        }
+        ObjectMapper mapper = new ObjectMapper();
+
+        Snapshot snapshot = mapper.readValue(mapper.writeValueAsBytes(sketch.snapshot()), Snapshot.class);
+
+        assertThat(snapshot.quantile(0.99)).isEqualTo(sketch.quantile(0.99));
+        assertThatIllegalArgumentException().isThrownBy(() -> sketch.merge(new Snapshot(0.02, 0, new long[1])));
+    }
+
+    private static long[] logNormal(int count) {
+        Random random = new Random(42);
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (long) Math.exp(random.nextGaussian() * 2 + 8);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,67 @@
+package org.wjh.http.stats;
+
+import java.net.URI;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpMethod;
+import org.wjh.http.logging.HttpLogger.MessageDirection;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Cost of recording an exchange into the traffic statistics from 4 threads (striped status counter, three striped
+ * sketches): {@code gc.alloc.rate.norm} should be about 0 bytes per operation {@code unrouted}, and the parsed path
+ * only {@code routed}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TrafficStatsBenchmark {
+
+    private static final URI ECHO = URI.create("http://localhost:8080/echo?input=hello");
+
+    private final TrafficStats routed = new TrafficStats(new String[] { "GET /echo", "/echo/**" }, new SimpleMeterRegistry());
+    private final TrafficStats unrouted = new TrafficStats(new String[0], new SimpleMeterRegistry());
+
+    @Benchmark
+    public void routed() {
+        record(routed);
+    }
+
+    @Benchmark
+    public void unrouted() {
+        record(unrouted);
+    }
+
+    private static void record(TrafficStats stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        stats.record(MessageDirection.Inbound, HttpMethod.GET, ECHO, 200, random.nextLong(100_000, 10_000_000), 0,
+                random.nextLong(16, 4096));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(TrafficStatsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
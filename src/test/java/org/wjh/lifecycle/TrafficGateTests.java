@@ -0,0 +1,53 @@
+package org.wjh.lifecycle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class TrafficGateTests {
+
+    @Test
+    void givenWarmUp_whenReady_thenStatesInOrder() {
+        TrafficGate gate = new TrafficGate(true, new SimpleMeterRegistry());
+        assertThat(gate.state()).isEqualTo(TrafficGate.State.WARMING_UP);
+
+        gate.ready();
+        assertThat(gate.state()).isEqualTo(TrafficGate.State.READY);
+
+        gate.drain();
+        gate.ready();
+        assertThat(gate.state()).isEqualTo(TrafficGate.State.DRAINING);
+    }
+
+    @Test
+    void givenRequestInFlight_whenRefusing_thenCountedUntilCompleteAndNewOnesRefused() {
+        TrafficGate gate = new TrafficGate(false, new SimpleMeterRegistry());
+        CompletableFuture<Void> handling = new CompletableFuture<>();
+
+        CompletableFuture<Void> inFlight = gate.filter(exchange(), e -> Mono.fromFuture(handling)).toFuture();
+        assertThat(gate.inFlight()).isEqualTo(1);
+
+        gate.drain();
+        gate.refuse();
+        MockServerWebExchange refused = exchange();
+        gate.filter(refused, e -> Mono.empty()).block();
+        assertThat(refused.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(refused.getResponse().getHeaders().getConnection()).containsExactly("close");
+
+        handling.complete(null);
+        assertThat(inFlight).isDone();
+        assertThat(gate.inFlight()).isZero();
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/echo?input=hello"));
+    }
+}
@@ -0,0 +1,105 @@
+package org.wjh.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Overhead per signal of capturing a publisher: the {@link Capture} operator versus the chain of {@code doOnNext},
+ * {@code doOnError}, {@code doOnCancel} and {@code doOnComplete} it replaces, over a synchronous source of
+ * {@value #SIGNALS} values, consumed as is or {@code fused} (polled by a {@code publishOn}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CaptureBenchmark {
+
+    private static final int SIGNALS = 1000;
+
+    private final Flux<Integer> source = Flux.range(0, SIGNALS);
+
+    private final CountingSink sink = new CountingSink();
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void baseline(Blackhole blackhole) {
+        source.subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void chain(Blackhole blackhole) {
+        chained().subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void operator(Blackhole blackhole) {
+        Capture.tap(source, sink).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void chainFused(Blackhole blackhole) {
+        chained().publishOn(Schedulers.immediate()).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void operatorFused(Blackhole blackhole) {
+        Capture.tap(source, sink).publishOn(Schedulers.immediate()).subscribe(blackhole::consume);
+    }
+
+    private Flux<Integer> chained() {
+        return source//@formatter:off
+                .doOnNext(sink::onNext)
+                .doOnError(e -> sink.onTerminate(SignalType.ON_ERROR, e))
+                .doOnCancel(() -> sink.onTerminate(SignalType.CANCEL, null))
+                .doOnComplete(() -> sink.onTerminate(SignalType.ON_COMPLETE, null));//@formatter:on
+    }
+
+    private static class CountingSink implements CaptureSink<Integer> {
+
+        long sum;
+        long terminals;
+
+        @Override
+        public void onNext(Integer value) {
+            sum += value;
+        }
+
+        @Override
+        public void onTerminate(SignalType signal, @Nullable Throwable error) {
+            terminals++;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(CaptureBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
@@ -0,0 +1,141 @@
+package org.wjh.reactor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.lang.Nullable;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+class CaptureTests {
+
+    private final DefaultDataBufferFactory factory = new DefaultDataBufferFactory();
+
+    @Test
+    void givenCompletingSource_whenSubscribed_thenValuesCapturedAndTerminatedOnce() {
+        RecordingSink sink = new RecordingSink();
+
+        assertThat(Capture.tap(Flux.just(1, 2, 3), sink).collectList().block()).containsExactly(1, 2, 3);
+        assertThat(sink.values).containsExactly(1, 2, 3);
+        assertThat(sink.terminals).containsExactly(SignalType.ON_COMPLETE);
+    }
+
+    @Test
+    void givenFailingOrCancelledSource_whenSubscribed_thenTerminatedOnceWithSignal() {
+        RecordingSink failed = new RecordingSink();
+        assertThatThrownBy(() -> Capture.tap(Flux.concat(Flux.just(1), Flux.error(new IllegalStateException("boom"))), failed).blockLast())
+                .hasMessage("boom");
+        assertThat(failed.values).containsExactly(1);
+        assertThat(failed.terminals).containsExactly(SignalType.ON_ERROR);
+
+        RecordingSink cancelled = new RecordingSink();
+        assertThat(Capture.tap(Flux.range(1, 10), cancelled).take(2).collectList().block()).containsExactly(1, 2);
+        assertThat(cancelled.values).containsExactly(1, 2);
+        assertThat(cancelled.terminals).containsExactly(SignalType.CANCEL);
+    }
+
+    @Test
+    void givenSynchronousSource_whenFused_thenValuesCapturedAsPolled() {
+        RecordingSink sink = new RecordingSink();
+
+        List<Integer> values = Capture.tap(Flux.range(1, 3), sink).publishOn(Schedulers.immediate()).collectList().block();
+
+        assertThat(values).containsExactly(1, 2, 3);
+        assertThat(sink.values).containsExactly(1, 2, 3);
+        assertThat(sink.terminals).containsExactly(SignalType.ON_COMPLETE);
+    }
+
+    @Test
+    void givenBufferSinks_whenCaptured_thenBoundedAndDigested() throws Exception {
+        AtomicReference<byte[]> captured = new AtomicReference<>();
+        AtomicReference<byte[]> digest = new AtomicReference<>();
+        long[] length = new long[1];
+
+        Flux<DataBuffer> body = Flux.just("Hello, ", "wiretap", "!").map(s -> factory.wrap(s.getBytes(UTF_8)));
+        Capture.tap(Capture.tap(body, new BufferCaptureSink(-1, 10, captured::set)), new DigestCaptureSink("SHA-256", (d, l) -> {
+            digest.set(d);
+            length[0] = l;
+        })).blockLast();
+
+        assertThat(new String(captured.get(), UTF_8)).isEqualTo("Hello, wir");
+        assertThat(digest.get()).isEqualTo(MessageDigest.getInstance("SHA-256").digest("Hello, wiretap!".getBytes(UTF_8)));
+        assertThat(length[0]).isEqualTo(15);
+    }
+
+    @Test
+    void givenTerminateRacingWithValue_whenSerialized_thenNeverOverlappingAndTerminatedOnce() throws Exception {
+        for (int i = 0; i < 10_000; i++) {
+            AtomicBoolean handing = new AtomicBoolean();
+            AtomicBoolean overlapped = new AtomicBoolean();
+            AtomicInteger terminals = new AtomicInteger();
+            SerializedCaptureSink<Integer> sink = new SerializedCaptureSink<>(new CaptureSink<Integer>() {
+
+                @Override
+                public void onNext(Integer value) {
+                    handing.set(true);
+                    Thread.yield();
+                    handing.set(false);
+                }
+
+                @Override
+                public void onTerminate(SignalType signal, @Nullable Throwable error) {
+                    overlapped.compareAndSet(false, handing.get());
+                    terminals.incrementAndGet();
+                }
+            });
+
+            CyclicBarrier start = new CyclicBarrier(2);
+            CompletableFuture<Void> values = CompletableFuture.runAsync(() -> {
+                await(start);
+                for (int value = 0; value < 10; value++) {
+                    sink.onNext(value);
+                }
+            });
+            await(start);
+            sink.onTerminate(SignalType.CANCEL, null);
+            values.get();
+
+            assertThat(overlapped).isFalse();
+            assertThat(terminals).hasValue(1);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class RecordingSink implements CaptureSink<Integer> {
+
+        final List<Integer> values = new ArrayList<>();
+        final List<SignalType> terminals = new ArrayList<>();
+
+        @Override
+        public void onNext(Integer value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onTerminate(SignalType signal, @Nullable Throwable error) {
+            terminals.add(signal);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.wjh.reactor;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,8 +12,15 @@ import org.springframework.util.Assert;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.MonoProcessor;
-
+import reactor.core.publisher.SignalType;
+
+/**
+ * Tap into a Publisher of strings with a {@link Capture}, and provide the concatenated content once the publisher
+ * terminates (whatever was captured so far on a cancel), or its error.
+ * <p>
+ * Each subscription to the publisher is captured into a sink of its own: the content is the one of the first
+ * subscription to terminate.
+ */
 class Wiretap {
 
     private static final Logger logger = LoggerFactory.getLogger(Wiretap.class);
@@ -17,25 +28,15 @@ class Wiretap {
     @Nullable
     private final Flux<? extends String> publisher;
 
-    private final StringBuilder buffer = new StringBuilder();
-
-    private final MonoProcessor<String> content = MonoProcessor.create();
+    private final CompletableFuture<String> content = new CompletableFuture<>();
 
-    private volatile boolean hasContentConsumer;
+    private final AtomicBoolean terminated = new AtomicBoolean();
 
-    public Wiretap(@Nullable Publisher<? extends String> publisher) {
-
-        this.publisher = publisher == null ? null : //@formatter:off
-                Flux.from(publisher)
-                        .doOnSubscribe(s -> this.hasContentConsumer = true)
-                        .doOnNext(this::handleOnNext)
-                        .doOnError(this::handleOnError)
-                        .doOnCancel(this::handleOnComplete)
-                        .doOnComplete(this::handleOnComplete)
-                ; //@formatter:on
+    Wiretap(@Nullable Publisher<? extends String> publisher) {
+        this.publisher = publisher == null ? null : Flux.defer(() -> Capture.tap(publisher, new ContentSink()));
 
         if (publisher == null) {
-            this.content.onComplete();
+            this.content.complete(null);
         }
     }
 
@@ -46,47 +47,40 @@ class Wiretap {
         return publisher;
     }
 
+    /**
+     * @return the content, once the publisher (if any) is consumed and terminated
+     */
     public Mono<String> getContent() {
         logger.trace("Calling getContent() ...");
 
-        return Mono.defer(() -> {
-            if (content.isTerminated()) {
-                return content;
-            }
-            if (!hasContentConsumer) {
-                // Couple of possible cases:
-                // 1. Mock server never consumed request body (e.g. error before read)
-                // 2. FluxExchangeResult: getResponseBodyContent called before getResponseBody
-                // noinspection ConstantConditions
-                publisher //@formatter:off
-                        .onErrorMap(ex -> new IllegalStateException("Content has not been consumed, and an error was raised while attempting to produce it.", ex))
-                        //.subscribe()
-                        ; //@formatter:on
-            }
-            return content;
-        });
+        // A stage of its own per subscription, so that a cancelled read (e.g. a blocking read timed out) leaves the content as is
+        return Mono.defer(() -> Mono.fromFuture(content.thenApply(Function.identity())));
     }
 
-    private void handleOnNext(String value) {
-        logger.trace("Calling handleOnNext({}) ...", value);
+    private class ContentSink implements CaptureSink<String> {
 
-        buffer.append(value);
-    }
+        private final StringBuilder buffer = new StringBuilder();
 
-    private void handleOnError(Throwable ex) {
-        logger.trace("Calling handleOnError({}) ...", ex);
+        @Override
+        public void onNext(String value) {
+            logger.trace("Calling onNext({}) ...", value);
 
-        if (!content.isTerminated()) {
-            content.onError(ex);
+            buffer.append(value);
         }
-    }
 
-    private void handleOnComplete() {
-        logger.trace("Calling handleOnComplete() ...");
+        @Override
+        public void onTerminate(SignalType signal, @Nullable Throwable error) {
+            logger.trace("Calling onTerminate({}, {}) ...", signal, error);
 
-        if (!content.isTerminated()) {
-            content.onNext(buffer.toString());
-            content.onComplete();
+            if (!terminated.compareAndSet(false, true)) {
+                // Another subscription terminated first
+                return;
+            }
+            if (error != null) {
+                content.completeExceptionally(error);
+            } else {
+                content.complete(buffer.toString());
+            }
         }
     }
 }
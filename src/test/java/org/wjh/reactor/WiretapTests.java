@@ -45,6 +45,18 @@ class WiretapTests {
         assertThat(wiretap.getContent().block()).isEqualTo("ABC");
     }
 
+    @Test
+    void givenConcurrentSubscriptions_whenSubscribe_thenEmitConcatOfOneOnly() {
+        Publisher<String> publisher = Flux.just("A", "B", "C").delayElements(ofMillis(10L));
+
+        Wiretap wiretap = new Wiretap(publisher);
+        Flux.from(wiretap.getPublisher()).subscribe();
+        Flux.from(wiretap.getPublisher()).subscribe();
+
+        logger.debug("Subscribing to the wiretap content ...");
+        assertThat(wiretap.getContent().block(ofMillis(1000L))).isEqualTo("ABC");
+    }
+
     private Publisher<String> coldPublisher() {
         return Flux.just("A", "B", "C");
     }
@@ -0,0 +1,102 @@
+package org.wjh.rest;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.MediaType.APPLICATION_CBOR;
+import static org.springframework.http.MediaType.APPLICATION_XML;
+import static org.wjh.http.codec.BinaryCodecsConfiguration.APPLICATION_SMILE;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.wjh.service.EchoMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The binary JSON formats end to end on {@code /echo/message} and {@code /echo/batch}, for the API of each subclass:
+ * the payloads are (de)serialized by the test itself, so that the bytes on the wire are checked to be the format
+ * negotiated, rather than whatever the client codecs would make of them.
+ */
+abstract class AbstractEchoCodecsIT {
+
+    static final String PREFIX = "CODECS::";
+
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+    private static final TypeReference<List<EchoMessage>> MESSAGES = new TypeReference<List<EchoMessage>>() {
+    };
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void givenCborMessage_whenEchoed_thenCborEcho() throws IOException {
+        assertThat(echo(APPLICATION_CBOR, CBOR_MAPPER, "hello cbor")).isEqualTo(PREFIX + "hello cbor");
+    }
+
+    @Test
+    void givenSmileMessage_whenEchoed_thenSmileEcho() throws IOException {
+        assertThat(echo(APPLICATION_SMILE, SMILE_MAPPER, "hello smile")).isEqualTo(PREFIX + "hello smile");
+    }
+
+    @Test
+    void givenCborBatch_whenEchoed_thenCborEchoes() throws IOException {
+        assertThat(echoAll(APPLICATION_CBOR, CBOR_MAPPER)).containsExactly(PREFIX + "first", PREFIX + "second");
+    }
+
+    @Test
+    void givenSmileBatch_whenEchoed_thenSmileEchoes() throws IOException {
+        assertThat(echoAll(APPLICATION_SMILE, SMILE_MAPPER)).containsExactly(PREFIX + "first", PREFIX + "second");
+    }
+
+    @Test
+    void givenUnsupportedAccept_whenEchoed_thenNotAcceptable() throws IOException {
+        webTestClient.post().uri("/echo/message")//@formatter:off
+                .contentType(APPLICATION_CBOR)
+                .accept(APPLICATION_XML)
+                .bodyValue(CBOR_MAPPER.writeValueAsBytes(new EchoMessage("hello xml")))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE);//@formatter:on
+
+        webTestClient.post().uri("/echo/batch")//@formatter:off
+                .contentType(APPLICATION_SMILE)
+                .accept(APPLICATION_XML)
+                .bodyValue(SMILE_MAPPER.writeValueAsBytes(asList(new EchoMessage("hello xml"))))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE);//@formatter:on
+    }
+
+    private String echo(MediaType format, ObjectMapper mapper, String text) throws IOException {
+        byte[] echo = webTestClient.post().uri("/echo/message")//@formatter:off
+                .contentType(format)
+                .accept(format)
+                .bodyValue(mapper.writeValueAsBytes(new EchoMessage(text)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(format)
+                .expectBody(byte[].class).returnResult().getResponseBody();//@formatter:on
+        return mapper.readValue(echo, EchoMessage.class).getText();
+    }
+
+    private String[] echoAll(MediaType format, ObjectMapper mapper) throws IOException {
+        byte[] echoes = webTestClient.post().uri("/echo/batch")//@formatter:off
+                .contentType(format)
+                .accept(format)
+                .bodyValue(mapper.writeValueAsBytes(asList(new EchoMessage("first"), new EchoMessage("second"))))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(format)
+                .expectBody(byte[].class).returnResult().getResponseBody();//@formatter:on
+        return mapper.readValue(echoes, MESSAGES).stream().map(EchoMessage::getText).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,76 @@
+package org.wjh.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+
+import reactor.core.publisher.Flux;
+
+class BodyFieldReaderTests {
+
+    private static final DefaultDataBufferFactory FACTORY = new DefaultDataBufferFactory();
+
+    @Test
+    void givenFormSplitWithinEscapes_whenRead_thenFieldDecoded() {
+        MockServerHttpRequest request = request(MediaType.APPLICATION_FORM_URLENCODED, //@formatter:off
+                "test=x&inp", "ut=SUB%3", "A%3Ahello+world", "&input=second"); //@formatter:on
+
+        assertThat(BodyFieldReader.read(request, "input", 1024).block()).isEqualTo("SUB::hello world");
+    }
+
+    @Test
+    void givenFormWithoutField_whenRead_thenEmpty() {
+        MockServerHttpRequest request = request(MediaType.APPLICATION_FORM_URLENCODED, "inputs=a&put=b&in");
+
+        assertThat(BodyFieldReader.read(request, "input", 1024).blockOptional()).isEmpty();
+    }
+
+    @Test
+    void givenFormWithBadEscape_whenRead_thenInvalidInput() {
+        MockServerHttpRequest request = request(MediaType.APPLICATION_FORM_URLENCODED, "input=%G1");
+
+        assertThatThrownBy(() -> BodyFieldReader.read(request, "input", 1024).block()).isInstanceOf(ServerWebInputException.class);
+    }
+
+    @Test
+    void givenJsonSplitWithinValue_whenRead_thenTopLevelFieldTaken() {
+        MockServerHttpRequest request = request(MediaType.APPLICATION_JSON, //@formatter:off
+                "{\"nested\":{\"input\":\"no\"},\"list\":[{\"input\":1}],\"in", "put\":\"hel", "lo\"}"); //@formatter:on
+
+        assertThat(BodyFieldReader.read(request, "input", 1024).block()).isEqualTo("hello");
+    }
+
+    @Test
+    void givenTooLargeBody_whenRead_thenRejectedWith413() {
+        MockServerHttpRequest declared = MockServerHttpRequest.post("/echo").contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .contentLength(2048).body(Flux.never());
+        MockServerHttpRequest streamed = request(MediaType.APPLICATION_FORM_URLENCODED, "input=0123456789", "0123456789");
+
+        for (MockServerHttpRequest request : new MockServerHttpRequest[] { declared, streamed }) {
+            assertThatThrownBy(() -> BodyFieldReader.read(request, "input", 16).block()) //@formatter:off
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE)); //@formatter:on
+        }
+    }
+
+    @Test
+    void givenOtherContentType_whenRead_thenEmpty() {
+        MockServerHttpRequest request = request(MediaType.TEXT_PLAIN, "input=hello");
+
+        assertThat(BodyFieldReader.read(request, "input", 1024).blockOptional()).isEmpty();
+    }
+
+    private MockServerHttpRequest request(MediaType contentType, String... chunks) {
+        Flux<DataBuffer> body = Flux.just(chunks).map(chunk -> FACTORY.wrap(chunk.getBytes(UTF_8)));
+        return MockServerHttpRequest.post("/echo").contentType(contentType).body(body);
+    }
+}
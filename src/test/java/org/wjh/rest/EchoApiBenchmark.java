@@ -0,0 +1,121 @@
+package org.wjh.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.wjh.service.EchoMessage;
+import org.wjh.service.MessageService;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Compares the annotated {@link EchoApi} with the functional {@link EchoRouter} for {@code GET /echo}, through the
+ * same mock HTTP exchange, with a message service echoing locally without any delay: the throughput gives the req/s,
+ * and the sample time the p99.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EchoApiBenchmark {
+
+    private static final String URI = "/echo?input=hello+benchmark&other=value";
+
+    private WebTestClient annotated;
+    private WebTestClient functional;
+
+    @Setup
+    public void setup() {
+        MessageService messageService = new LocalMessageService("SOLE::");
+
+        EchoApi api = new EchoApi();
+        ReflectionTestUtils.setField(api, "messageService", messageService);
+        ReflectionTestUtils.setField(api, "maxBodySize", 65536);
+        annotated = WebTestClient.bindToController(api).build();
+
+        functional = WebTestClient.bindToRouterFunction(new EchoRouter(messageService, 65536, null).routes()).build();
+    }
+
+    @Benchmark
+    public byte[] annotated() {
+        return get(annotated);
+    }
+
+    @Benchmark
+    public byte[] functional() {
+        return get(functional);
+    }
+
+    private byte[] get(WebTestClient client) {
+        return client.get().uri(URI).exchange().expectBody().returnResult().getResponseBody();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(EchoApiBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+
+    /**
+     * Echoes as the sole/sub instances do, without the simulated processing delay.
+     */
+    private static class LocalMessageService implements MessageService {
+
+        private final String prefix;
+        private final byte[] prefixBytes;
+
+        LocalMessageService(String prefix) {
+            this.prefix = prefix;
+            this.prefixBytes = prefix.getBytes(UTF_8);
+        }
+
+        @Override
+        public Mono<String> get(String input) {
+            return Mono.just(prefix + input);
+        }
+
+        @Override
+        public Mono<DataBuffer> getInto(String input, DataBufferFactory bufferFactory) {
+            byte[] inputBytes = input.getBytes(UTF_8);
+            return Mono.just(bufferFactory.allocateBuffer(prefixBytes.length + inputBytes.length).write(prefixBytes).write(inputBytes));
+        }
+
+        @Override
+        public Mono<String> post(String input) {
+            return get(input);
+        }
+
+        @Override
+        public Mono<EchoMessage> echo(EchoMessage message) {
+            return Mono.just(new EchoMessage(prefix + message.getText()));
+        }
+
+        @Override
+        public Mono<List<EchoMessage>> echoAll(List<EchoMessage> messages) {
+            return Mono.just(messages);
+        }
+    }
+}
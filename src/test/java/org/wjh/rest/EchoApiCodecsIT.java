@@ -0,0 +1,14 @@
+package org.wjh.rest;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+
+/**
+ * The binary JSON formats on the annotated {@link EchoApi}.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = { //@formatter:off
+        EchoRouterInitializer.API_PROPERTY + "=annotated",
+        "echo.prefix=" + AbstractEchoCodecsIT.PREFIX,
+        "echo.remoteUrl=-" }) //@formatter:on
+class EchoApiCodecsIT extends AbstractEchoCodecsIT {
+}
@@ -0,0 +1,122 @@
+package org.wjh.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wjh.service.EchoMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Measures the encode/decode CPU of the echo messages per format, single and batch; the payload sizes are logged at
+ * the setup of each trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EchoCodecBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(EchoCodecBenchmark.class);
+
+    private static final TypeReference<List<EchoMessage>> MESSAGES = new TypeReference<List<EchoMessage>>() {
+    };
+
+    @Param({ "form", "json", "cbor", "smile" })
+    public String format;
+
+    @Param({ "1", "100" })
+    public int batchSize;
+
+    private ObjectMapper mapper;
+    private List<EchoMessage> messages;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (format) {
+        case "cbor":
+            mapper = new ObjectMapper(new CBORFactory());
+            break;
+        case "smile":
+            mapper = new ObjectMapper(new SmileFactory());
+            break;
+        default:
+            mapper = new ObjectMapper();
+        }
+
+        messages = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            messages.add(new EchoMessage("value #" + i + " contains = & $ special chars."));
+        }
+        payload = encode();
+
+        logger.info("{} x {}: {} byte(s)", format, batchSize, payload.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        if ("form".equals(format)) {
+            // A form carries the batch as repeated fields
+            StringBuilder builder = new StringBuilder();
+            for (EchoMessage message : messages) {
+                builder.append(builder.length() == 0 ? "" : "&").append("input=").append(URLEncoder.encode(message.getText(), "UTF-8"));
+            }
+            return builder.toString().getBytes(UTF_8);
+        }
+        return mapper.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public List<EchoMessage> decode() throws IOException {
+        if ("form".equals(format)) {
+            return decodeForm();
+        }
+        return mapper.readValue(payload, MESSAGES);
+    }
+
+    private List<EchoMessage> decodeForm() throws UnsupportedEncodingException {
+        List<EchoMessage> decoded = new ArrayList<>(batchSize);
+        for (String field : new String(payload, UTF_8).split("&")) {
+            int eq = field.indexOf('=');
+            decoded.add(new EchoMessage(URLDecoder.decode(field.substring(eq + 1), "UTF-8")));
+        }
+        return decoded;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(EchoCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
@@ -0,0 +1,14 @@
+package org.wjh.rest;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+
+/**
+ * The binary JSON formats on the functional {@link EchoRouter}.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = { //@formatter:off
+        EchoRouterInitializer.API_PROPERTY + "=functional",
+        "echo.prefix=" + AbstractEchoCodecsIT.PREFIX,
+        "echo.remoteUrl=-" }) //@formatter:on
+class EchoRouterCodecsIT extends AbstractEchoCodecsIT {
+}
@@ -0,0 +1,16 @@
+package org.wjh.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class EchoRouterTests {
+
+    @Test
+    void givenRawQuery_whenQueryParam_thenFirstValueDecoded() {
+        assertThat(EchoRouter.queryParam("inputs=x&input=a+b%26c&input=second", "input")).isEqualTo("a b&c");
+        assertThat(EchoRouter.queryParam("input", "input")).isEmpty();
+        assertThat(EchoRouter.queryParam("other=input&", "input")).isNull();
+        assertThat(EchoRouter.queryParam(null, "input")).isNull();
+    }
+}
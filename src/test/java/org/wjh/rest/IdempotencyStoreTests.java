@@ -0,0 +1,149 @@
+package org.wjh.rest;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class IdempotencyStoreTests {
+
+    private static final String CLIENT = "10.0.0.1";
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final Function<String, Mono<String>> echo = input -> {
+        calls.incrementAndGet();
+        return Mono.just("MAIN::" + input);
+    };
+
+    @Test
+    void givenCallInFlight_whenRetried_thenJoined() throws Exception {
+        IdempotencyStore store = store(10, null);
+        CompletableFuture<String> remote = new CompletableFuture<>();
+        Function<String, Mono<String>> call = input -> {
+            calls.incrementAndGet();
+            return Mono.fromFuture(remote);
+        };
+
+        Mono<String> first = store.execute(CLIENT, "key", "hello", call);
+        Mono<String> retry = store.execute(CLIENT, "key", "hello", call);
+        CompletableFuture<String> firstResult = first.toFuture();
+        CompletableFuture<String> retryResult = retry.toFuture();
+        remote.complete("MAIN::hello");
+
+        assertThat(firstResult.get(5, SECONDS)).isEqualTo("MAIN::hello");
+        assertThat(retryResult.get(5, SECONDS)).isEqualTo("MAIN::hello");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void givenCompletedCall_whenRetried_thenReplayedUntilExpired() throws Exception {
+        IdempotencyStore store = store(10, null);
+        assertThat(store.execute(CLIENT, "key", "hello", echo).block()).isEqualTo("MAIN::hello");
+
+        now.addAndGet(Duration.ofMinutes(10).toMillis());
+        assertThat(store.execute(CLIENT, "key", "hello", echo).block()).isEqualTo("MAIN::hello");
+        assertThat(calls).hasValue(1);
+
+        now.incrementAndGet();
+        assertThat(store.execute(CLIENT, "key", "hello", echo).block()).isEqualTo("MAIN::hello");
+        assertThat(calls).hasValue(2);
+        assertThat(store.execute(CLIENT, null, "hello", echo).block()).isEqualTo("MAIN::hello");
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void givenFailedCall_whenRetried_thenRunAgain() throws Exception {
+        IdempotencyStore store = store(10, null);
+        Function<String, Mono<String>> failing = input -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalStateException("remote down"));
+        };
+
+        assertThatThrownBy(() -> store.execute(CLIENT, "key", "hello", failing).block()).hasMessageContaining("remote down");
+        assertThat(store.execute(CLIENT, "key", "hello", echo).block()).isEqualTo("MAIN::hello");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void givenKeyInUse_whenOtherInput_thenConflict() throws Exception {
+        IdempotencyStore store = store(10, null);
+        store.execute(CLIENT, "key", "hello", echo).block();
+
+        assertThatThrownBy(() -> store.execute(CLIENT, "key", "other", echo).block()).isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+    }
+
+    @Test
+    void givenKeyInUse_whenOtherClient_thenRunOnItsOwn() throws Exception {
+        IdempotencyStore store = store(10, null);
+        store.execute(CLIENT, "key", "hello", echo).block();
+
+        assertThat(store.execute("10.0.0.2", "key", "other", echo).block()).isEqualTo("MAIN::other");
+        assertThat(store.execute("10.0.0.2", "key", "other", echo).block()).isEqualTo("MAIN::other");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void givenApiKey_whenClient_thenScopedByItsFingerprintElseByIp() throws Exception {
+        IdempotencyStore store = store(10, null);
+        InetSocketAddress address = new InetSocketAddress("10.0.0.1", 40000);
+
+        String first = store.client(MockServerHttpRequest.post("/echo").remoteAddress(address).header("X-API-Key", "s3cr3t").build());
+        String second = store.client(MockServerHttpRequest.post("/echo").remoteAddress(address).header("X-API-Key", "other").build());
+
+        assertThat(first).startsWith("key:").doesNotContain("s3cr3t").isNotEqualTo(second);
+        assertThat(store.client(MockServerHttpRequest.post("/echo").remoteAddress(address).build())).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void givenMoreKeysThanEntries_whenExecuted_thenOldestEvicted() throws Exception {
+        IdempotencyStore store = store(2, null);
+        store.execute(CLIENT, "a", "hello", echo).block();
+        store.execute(CLIENT, "b", "hello", echo).block();
+        store.execute(CLIENT, "c", "hello", echo).block();
+        assertThat(store.size()).isEqualTo(2);
+
+        store.execute(CLIENT, "a", "hello", echo).block();
+        assertThat(calls).hasValue(4);
+    }
+
+    @Test
+    void givenJournal_whenRestarted_thenLiveCallsReplayed(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("idempotency.journal");
+        IdempotencyStore store = store(10, file);
+        store.execute(CLIENT, "old", "hello", echo).block();
+        now.addAndGet(Duration.ofMinutes(5).toMillis());
+        store.execute(CLIENT, "new", "hello", echo).block();
+        store.destroy();
+
+        now.addAndGet(Duration.ofMinutes(6).toMillis());
+        IdempotencyStore restarted = store(10, file);
+        assertThat(restarted.size()).isEqualTo(1);
+        assertThat(restarted.execute(CLIENT, "new", "hello", echo).block()).isEqualTo("MAIN::hello");
+        assertThat(calls).hasValue(2);
+        assertThat(IdempotencyJournal.read(file)).extracting(record -> record.key).containsExactly(CLIENT + " new");
+        restarted.destroy();
+    }
+
+    private IdempotencyStore store(int maxEntries, Path file) throws Exception {
+        return new IdempotencyStore(maxEntries, Duration.ofMinutes(10), file, 100, "X-API-Key", new SimpleMeterRegistry(), now::get);
+    }
+}
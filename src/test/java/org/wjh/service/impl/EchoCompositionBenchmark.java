@@ -0,0 +1,104 @@
+package org.wjh.service.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+
+/**
+ * Composition of the MAIN echo of a large remote echo, as read off the connection in 8 KB chunks: decoded into a
+ * string, prefixed and encoded again ({@code string}), versus composed behind the prefix buffer as is
+ * ({@code composite}); compare {@code gc.alloc.rate.norm}, i.e. the copies of the payload.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EchoCompositionBenchmark {
+
+    private static final int CHUNK = 8192;
+    private static final String PREFIX = "MAIN::";
+    private static final byte[] PREFIX_BYTES = PREFIX.getBytes(UTF_8);
+
+    @Param({ "1024", "65536", "1048576" })
+    public int size;
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = new byte[size];
+        Arrays.fill(payload, (byte) 'x');
+        System.arraycopy("SUB::".getBytes(UTF_8), 0, payload, 0, 5);
+    }
+
+    @Benchmark
+    public int string() {
+        String remote = DataBufferUtils.join(remoteBody()).map(buffer -> {
+            String decoded = buffer.toString(UTF_8);
+            DataBufferUtils.release(buffer);
+            return decoded;
+        }).block();
+        DataBuffer echo = bufferFactory.wrap((PREFIX + remote).getBytes(UTF_8));
+        return release(echo);
+    }
+
+    @Benchmark
+    public int composite() {
+        DataBuffer echo = MessageServiceImpl.prefixed(bufferFactory.wrap(PREFIX_BYTES), remoteBody()).block();
+        return release(echo);
+    }
+
+    /**
+     * The remote echo in pooled chunks, as a Netty connection would read it.
+     */
+    private Flux<DataBuffer> remoteBody() {
+        List<DataBuffer> chunks = new ArrayList<>(size / CHUNK + 1);
+        for (int offset = 0; offset < size; offset += CHUNK) {
+            int length = Math.min(CHUNK, size - offset);
+            chunks.add(bufferFactory.allocateBuffer(length).write(payload, offset, length));
+        }
+        return Flux.fromIterable(chunks);
+    }
+
+    private static int release(DataBuffer echo) {
+        int length = echo.readableByteCount();
+        DataBufferUtils.release(echo);
+        return length;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(EchoCompositionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run(); //@formatter:on
+    }
+}
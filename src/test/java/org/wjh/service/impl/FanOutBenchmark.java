@@ -0,0 +1,72 @@
+package org.wjh.service.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wjh.service.impl.FanOut.Combine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * The tail amplification of the scatter-gather: each branch takes 1 ms, but 1 in 100 takes 20 ms, so that waiting for
+ * all of N branches hits the slow tail with a probability of {@code 1 - 0.99^N}, while a quorum or the first N rides
+ * over it; compare the p50, p99 and p99.9 per combine mode and number of branches.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+
+    @Param({ "1", "4", "16" })
+    public int branches;
+
+    @Param({ "ALL", "QUORUM" })
+    public Combine combine;
+
+    private FanOut fanOut;
+
+    @Setup
+    public void setup() {
+        String[] urls = new String[branches];
+        for (int i = 0; i < branches; i++) {
+            urls[i] = "http://localhost:" + (8081 + i) + "/echo";
+        }
+        fanOut = new FanOut(urls, combine, 1, Duration.ofSeconds(1), branches, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public List<String> scatter() {
+        return fanOut.scatter(FanOutBenchmark::branch).block();
+    }
+
+    private static Mono<String> branch(String url) {
+        long millis = ThreadLocalRandom.current().nextInt(100) == 0 ? 20 : 1;
+        return Mono.delay(Duration.ofMillis(millis)).map(tick -> url);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(FanOutBenchmark.class.getSimpleName())
+                .build()).run(); //@formatter:on
+    }
+}
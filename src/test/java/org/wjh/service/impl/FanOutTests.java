@@ -0,0 +1,63 @@
+package org.wjh.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.wjh.service.impl.FanOut.Combine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class FanOutTests {
+
+    private static final String[] URLS = { "http://one", "http://two", "http://three" };
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Map<String, Mono<String>> branches = new HashMap<>();
+
+    @Test
+    void givenAll_whenOneBranchFails_thenPartialResultInBranchOrder() {
+        branches.put("http://one", Mono.delay(Duration.ofMillis(50)).map(tick -> "one"));
+        branches.put("http://two", Mono.error(new IllegalStateException("down")));
+        branches.put("http://three", Mono.just("three"));
+
+        assertThat(fanOut(Combine.ALL, 1).scatter(branches::get).block()).containsExactly("one", "three");
+        assertThat(registry.get("echo.fanout.branches").tag("outcome", "failed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void givenQuorum_whenMajorityEchoed_thenSlowBranchCancelled() {
+        branches.put("http://one", Mono.never());
+        branches.put("http://two", Mono.just("two"));
+        branches.put("http://three", Mono.delay(Duration.ofMillis(20)).map(tick -> "three"));
+
+        FanOut fanOut = fanOut(Combine.QUORUM, 1);
+
+        assertThat(fanOut.required()).isEqualTo(2);
+        assertThat(fanOut.scatter(branches::get).block(Duration.ofSeconds(1))).containsExactly("two", "three");
+        assertThat(registry.get("echo.fanout.branches").tag("outcome", "cancelled").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void givenFirstN_whenTooFewEchoedInTime_thenGatewayTimeout() {
+        branches.put("http://one", Mono.never());
+        branches.put("http://two", Mono.never());
+        branches.put("http://three", Mono.just("three"));
+
+        assertThatThrownBy(() -> fanOut(Combine.FIRST_N, 2).scatter(branches::get).block(Duration.ofSeconds(5))) //@formatter:off
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.GATEWAY_TIMEOUT)); //@formatter:on
+        assertThat(registry.get("echo.fanout.branches").tag("outcome", "timed-out").counter().count()).isEqualTo(2);
+    }
+
+    private FanOut fanOut(Combine combine, int firstN) {
+        return new FanOut(URLS, combine, firstN, Duration.ofMillis(200), 8, registry);
+    }
+}
@@ -0,0 +1,79 @@
+package org.wjh.service.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wjh.service.impl.ServiceExecutor.Strategy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+/**
+ * Measures the latency of a burst of concurrent service tasks per execution strategy, for a blocking task (1 ms park,
+ * standing for I/O) and a CPU task: the inline strategy serializes the burst on the calling thread, the pools trade a
+ * hand-off for concurrency.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceExecutorBenchmark {
+
+    private static final int BURST = 64;
+
+    @Param({ "INLINE", "BOUNDED_ELASTIC", "PARALLEL", "VIRTUAL" })
+    public Strategy strategy;
+
+    @Param({ "blocking", "cpu" })
+    public String workload;
+
+    private ServiceExecutor executor;
+
+    @Setup
+    public void setup() {
+        executor = new ServiceExecutor(strategy, 0, 1000, new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.destroy();
+    }
+
+    @Benchmark
+    public Long burst() {
+        return Flux.range(0, BURST).flatMap(i -> executor.execute(this::work), BURST).count().block();
+    }
+
+    private long work() {
+        if ("blocking".equals(workload)) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            return 0;
+        }
+        Blackhole.consumeCPU(100_000);
+        return 1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder() //@formatter:off
+                .include(ServiceExecutorBenchmark.class.getSimpleName())
+                .build()).run(); //@formatter:on
+    }
+}
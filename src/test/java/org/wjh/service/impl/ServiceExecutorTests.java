@@ -0,0 +1,73 @@
+package org.wjh.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.wjh.service.impl.ServiceExecutor.Strategy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+
+class ServiceExecutorTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void givenInline_whenExecute_thenOnCallingThread() {
+        ServiceExecutor executor = new ServiceExecutor(Strategy.INLINE, 0, 0, registry);
+
+        assertThat(executor.execute(() -> Thread.currentThread().getName()).block()).isEqualTo(Thread.currentThread().getName());
+        executor.destroy();
+    }
+
+    @Test
+    void givenBoundedElastic_whenExecute_thenOffloadedAndMetered() {
+        ServiceExecutor executor = new ServiceExecutor(Strategy.BOUNDED_ELASTIC, 2, 10, registry);
+
+        assertThat(executor.execute(() -> Thread.currentThread().getName()).block()).startsWith("echo-service");
+        assertThat(registry.get("echo.service.tasks.wait").tag("strategy", "bounded-elastic").timer().count()).isEqualTo(1);
+        assertThat(registry.get("echo.service.tasks.queued").gauge().value()).isZero();
+        assertThat(registry.get("echo.service.tasks.active").gauge().value()).isZero();
+        executor.destroy();
+    }
+
+    @Test
+    void givenFullQueue_whenExecute_thenRejectedWith503() throws InterruptedException {
+        ServiceExecutor executor = new ServiceExecutor(Strategy.BOUNDED_ELASTIC, 1, 1, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+
+        Disposable busy = executor.execute(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }).subscribe();
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        Disposable queued = executor.execute(() -> true).subscribe();
+
+        assertThatThrownBy(() -> executor.execute(() -> true).block(Duration.ofSeconds(5))) //@formatter:off
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)); //@formatter:on
+        assertThat(registry.get("echo.service.tasks.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        busy.dispose();
+        queued.dispose();
+        executor.destroy();
+    }
+
+    @Test
+    void givenVirtualOnOlderJdk_whenCreate_thenFallbackOrVirtual() {
+        ServiceExecutor executor = new ServiceExecutor(Strategy.VIRTUAL, 0, 10, registry);
+
+        assertThat(executor.getStrategy()).isIn(Strategy.VIRTUAL, Strategy.BOUNDED_ELASTIC);
+        assertThat(executor.execute(() -> "done").block()).isEqualTo("done");
+        executor.destroy();
+    }
+}